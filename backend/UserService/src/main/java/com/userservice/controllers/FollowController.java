@@ -1,6 +1,5 @@
 package com.userservice.controllers;
 
-import com.userservice.models.User;
 import com.userservice.services.FollowService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -8,7 +7,6 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -82,23 +80,34 @@ public class FollowController {
     }
 
     /**
-     * Lấy danh sách người đang follow
-     * GET /api/follow/{userId}/following
+     * Lấy danh sách người đang follow (phân trang keyset)
+     * GET /api/follow/{userId}/following?cursor=&limit=
      */
     @GetMapping("/{userId}/following")
-    public ResponseEntity<List<User>> getFollowing(@PathVariable Long userId) {
-        List<User> following = followService.getFollowing(userId);
-        return ResponseEntity.ok(following);
+    public ResponseEntity<Map<String, Object>> getFollowing(
+            @PathVariable Long userId,
+            @RequestParam(required = false) Long cursor,
+            @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(toBody(followService.getFollowing(userId, cursor, limit)));
     }
 
     /**
-     * Lấy danh sách followers
-     * GET /api/follow/{userId}/followers
+     * Lấy danh sách followers (phân trang keyset)
+     * GET /api/follow/{userId}/followers?cursor=&limit=
      */
     @GetMapping("/{userId}/followers")
-    public ResponseEntity<List<User>> getFollowers(@PathVariable Long userId) {
-        List<User> followers = followService.getFollowers(userId);
-        return ResponseEntity.ok(followers);
+    public ResponseEntity<Map<String, Object>> getFollowers(
+            @PathVariable Long userId,
+            @RequestParam(required = false) Long cursor,
+            @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(toBody(followService.getFollowers(userId, cursor, limit)));
+    }
+
+    private static Map<String, Object> toBody(FollowService.FollowPage page) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("users", page.users());
+        body.put("nextCursor", page.nextCursor());
+        return body;
     }
 
     /**
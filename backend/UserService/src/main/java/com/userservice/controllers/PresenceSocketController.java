@@ -0,0 +1,44 @@
+package com.userservice.controllers;
+
+import com.userservice.services.PresenceService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+/**
+ * Presence qua STOMP: CONNECT (header userId) = online, client gửi "ping" tới
+ * /app/presence.ping định kỳ, DISCONNECT của session cuối = offline.
+ */
+@Controller
+@RequiredArgsConstructor
+@Slf4j
+public class PresenceSocketController {
+
+    private final PresenceService presenceService;
+
+    @MessageMapping("/presence.ping")
+    public void ping(@Header("simpSessionId") String sessionId) {
+        presenceService.ping(sessionId);
+    }
+
+    @EventListener
+    public void onConnected(SessionConnectedEvent event) {
+        if (event.getUser() == null) return;
+        try {
+            Long userId = Long.valueOf(event.getUser().getName());
+            presenceService.sessionConnected((String) event.getMessage().getHeaders().get("simpSessionId"), userId);
+        } catch (Exception e) {
+            log.warn("⚠️ Presence connect ignored for {}: {}", event.getUser().getName(), e.getMessage());
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        presenceService.sessionClosed(event.getSessionId());
+    }
+}
@@ -1,10 +1,12 @@
 package com.userservice.controllers;
 
-import com.userservice.models.UserStatus;
+import com.userservice.dtos.PresenceDTO;
 import com.userservice.services.StatusService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
+
 @RestController
 @RequestMapping("/api/users/status")
 public class StatusController {
@@ -15,14 +17,32 @@ public class StatusController {
     }
 
     @PutMapping("/{userId}")
-    public ResponseEntity<UserStatus> updateStatus(
+    public ResponseEntity<PresenceDTO> updateStatus(
             @PathVariable Long userId,
             @RequestParam boolean online) {
         return ResponseEntity.ok(service.updateStatus(userId, online));
     }
 
+    /**
+     * Heartbeat qua REST (cho client không giữ WebSocket)
+     * POST /api/users/status/{userId}/ping
+     */
+    @PostMapping("/{userId}/ping")
+    public ResponseEntity<PresenceDTO> ping(@PathVariable Long userId) {
+        return ResponseEntity.ok(service.updateStatus(userId, true));
+    }
+
     @GetMapping("/{userId}")
-    public ResponseEntity<UserStatus> getStatus(@PathVariable Long userId) {
+    public ResponseEntity<PresenceDTO> getStatus(@PathVariable Long userId) {
         return ResponseEntity.ok(service.getStatus(userId));
     }
+
+    /**
+     * Trạng thái của nhiều user trong một lần gọi, không truy vấn DB
+     * POST /api/users/status/bulk  body: [1, 2, 3]
+     */
+    @PostMapping("/bulk")
+    public ResponseEntity<List<PresenceDTO>> getStatuses(@RequestBody List<Long> userIds) {
+        return ResponseEntity.ok(service.getStatuses(userIds));
+    }
 }
@@ -10,6 +10,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/users")
@@ -61,6 +62,19 @@ public class UserController {
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    /**
+     * 🔹 Hồ sơ gọn + trạng thái online của nhiều user (render danh sách chat)
+     * POST /api/users/batch  body: [1, 2, 3]
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<?> getSummaries(@RequestBody List<Long> userIds) {
+        try {
+            return ResponseEntity.ok(service.getSummaries(userIds));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
     /**
      * 🔹 Cập nhật hồ sơ người dùng
      */
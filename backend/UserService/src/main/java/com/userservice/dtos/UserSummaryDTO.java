@@ -0,0 +1,18 @@
+package com.userservice.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserSummaryDTO {
+    private Long id;
+    private String fullName;
+    private String photoUrl;
+    private boolean online;
+    private LocalDateTime lastSeen;
+}
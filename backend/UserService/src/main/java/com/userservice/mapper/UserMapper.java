@@ -18,9 +18,9 @@ public class UserMapper {
         dto.setInterests(user.getInterests());
         dto.setPhotoUrl(user.getPhotoUrl());
 
-        // Đếm follower/following an toàn
-        dto.setFollowersCount(user.getFollowers() != null ? user.getFollowers().size() : 0);
-        dto.setFollowingCount(user.getFollowing() != null ? user.getFollowing().size() : 0);
+        // Đọc từ cột đếm, không chạm vào collection followers/following
+        dto.setFollowersCount(user.getFollowersCount());
+        dto.setFollowingCount(user.getFollowingCount());
 
         if (user.getCreatedAt() != null) {
             dto.setCreatedAt(user.getCreatedAt()
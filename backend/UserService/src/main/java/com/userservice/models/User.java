@@ -45,12 +45,22 @@ public class User {
     @JsonManagedReference
     private UserStatus status;
 
+    // 🔹 Bộ đếm denormalized, cập nhật cùng transaction với user_following
+    // (FollowCounterReconciler sửa lệch định kỳ)
+    @Column(name = "followers_count", nullable = false, columnDefinition = "INT NOT NULL DEFAULT 0")
+    private int followersCount;
+
+    @Column(name = "following_count", nullable = false, columnDefinition = "INT NOT NULL DEFAULT 0")
+    private int followingCount;
+
     // 🔹 Người này đang theo dõi ai
     @ManyToMany
     @JoinTable(
             name = "user_following",
             joinColumns = @JoinColumn(name = "follower_id"),
-            inverseJoinColumns = @JoinColumn(name = "following_id")
+            inverseJoinColumns = @JoinColumn(name = "following_id"),
+            // PK (follower_id, following_id) phục vụ danh sách following; index này cho danh sách followers
+            indexes = @Index(name = "idx_user_following_following", columnList = "following_id, follower_id")
     )
     private Set<User> following = new HashSet<>();
 
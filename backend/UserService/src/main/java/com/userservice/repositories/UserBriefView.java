@@ -0,0 +1,10 @@
+package com.userservice.repositories;
+
+/**
+ * Projection gọn của User (không chạm followers/following/status).
+ */
+public interface UserBriefView {
+    Long getId();
+    String getFullName();
+    String getPhotoUrl();
+}
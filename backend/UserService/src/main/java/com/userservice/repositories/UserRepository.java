@@ -7,6 +7,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -18,6 +19,12 @@ public interface UserRepository extends JpaRepository<User,Long> {
 
     Optional<User> findByEmail(String email);
 
+    /**
+     * ✅ Lấy thông tin gọn của nhiều user trong một câu IN (không load entity graph)
+     */
+    @Query("SELECT u.id AS id, u.fullName AS fullName, u.photoUrl AS photoUrl FROM User u WHERE u.id IN :ids")
+    List<UserBriefView> findBriefsByIdIn(@Param("ids") Collection<Long> ids);
+
     /**
      * ✅ Kiểm tra user có đang follow user khác không (dùng query trực tiếp - FAST)
      * Tránh lazy loading N+1 problem
@@ -31,20 +38,83 @@ public interface UserRepository extends JpaRepository<User,Long> {
     /**
      * ✅ Thêm follow relationship trực tiếp vào bảng join (tránh lazy loading)
      * CRITICAL: Dùng native query để insert trực tiếp, không trigger lazy loading
+     * @return 1 nếu đã thêm, 0 nếu quan hệ đã tồn tại (INSERT IGNORE - an toàn khi race)
      */
     @Modifying
-    @Query(value = "INSERT INTO user_following (follower_id, following_id) VALUES (:followerId, :followingId)", 
+    @Query(value = "INSERT IGNORE INTO user_following (follower_id, following_id) VALUES (:followerId, :followingId)",
            nativeQuery = true)
-    void insertFollowing(@Param("followerId") Long followerId, 
+    int insertFollowing(@Param("followerId") Long followerId,
                         @Param("followingId") Long followingId);
-    
+
     /**
      * ✅ Xóa follow relationship trực tiếp (tránh lazy loading)
+     * @return số dòng đã xóa (0 hoặc 1)
      */
     @Modifying
-    @Query(value = "DELETE FROM user_following WHERE follower_id = :followerId AND following_id = :followingId", 
+    @Query(value = "DELETE FROM user_following WHERE follower_id = :followerId AND following_id = :followingId",
            nativeQuery = true)
-    void deleteFollowing(@Param("followerId") Long followerId, 
+    int deleteFollowing(@Param("followerId") Long followerId,
                         @Param("followingId") Long followingId);
-}
 
+    /**
+     * ✅ Cộng dồn bộ đếm của cả hai phía trong một câu UPDATE (delta = +1 / -1)
+     */
+    @Modifying
+    @Query(value = "UPDATE users SET " +
+                   "following_count = CASE WHEN id = :followerId THEN GREATEST(following_count + :delta, 0) ELSE following_count END, " +
+                   "followers_count = CASE WHEN id = :followingId THEN GREATEST(followers_count + :delta, 0) ELSE followers_count END " +
+                   "WHERE id IN (:followerId, :followingId)",
+           nativeQuery = true)
+    int adjustFollowCounters(@Param("followerId") Long followerId,
+                             @Param("followingId") Long followingId,
+                             @Param("delta") int delta);
+
+    /**
+     * ✅ Một trang "đang follow" (keyset theo following_id), đọc thẳng bảng join
+     */
+    @Query(value = "SELECT u.id AS id, u.full_name AS fullName, u.photo_url AS photoUrl " +
+                   "FROM user_following f JOIN users u ON u.id = f.following_id " +
+                   "WHERE f.follower_id = :userId AND f.following_id > :afterId " +
+                   "ORDER BY f.following_id LIMIT :limit",
+           nativeQuery = true)
+    List<UserBriefView> findFollowingPage(@Param("userId") Long userId,
+                                          @Param("afterId") long afterId,
+                                          @Param("limit") int limit);
+
+    /**
+     * ✅ Một trang followers (keyset theo follower_id, dùng idx_user_following_following)
+     */
+    @Query(value = "SELECT u.id AS id, u.full_name AS fullName, u.photo_url AS photoUrl " +
+                   "FROM user_following f JOIN users u ON u.id = f.follower_id " +
+                   "WHERE f.following_id = :userId AND f.follower_id > :afterId " +
+                   "ORDER BY f.follower_id LIMIT :limit",
+           nativeQuery = true)
+    List<UserBriefView> findFollowersPage(@Param("userId") Long userId,
+                                          @Param("afterId") long afterId,
+                                          @Param("limit") int limit);
+
+    @Query("SELECT u.followersCount FROM User u WHERE u.id = :userId")
+    Optional<Integer> findFollowersCount(@Param("userId") Long userId);
+
+    @Query("SELECT u.followingCount FROM User u WHERE u.id = :userId")
+    Optional<Integer> findFollowingCount(@Param("userId") Long userId);
+
+    @Query("SELECT COALESCE(MAX(u.id), 0) FROM User u")
+    long findMaxId();
+
+    /**
+     * ✅ Tính lại bộ đếm từ user_following cho một khoảng id, chỉ ghi các dòng bị lệch
+     * @return số user đã được sửa
+     */
+    @Modifying
+    @Query(value = "UPDATE users u " +
+                   "LEFT JOIN (SELECT following_id AS uid, COUNT(*) AS c FROM user_following " +
+                   "           WHERE following_id BETWEEN :fromId AND :toId GROUP BY following_id) fr ON fr.uid = u.id " +
+                   "LEFT JOIN (SELECT follower_id AS uid, COUNT(*) AS c FROM user_following " +
+                   "           WHERE follower_id BETWEEN :fromId AND :toId GROUP BY follower_id) fg ON fg.uid = u.id " +
+                   "SET u.followers_count = COALESCE(fr.c, 0), u.following_count = COALESCE(fg.c, 0) " +
+                   "WHERE u.id BETWEEN :fromId AND :toId " +
+                   "AND (u.followers_count <> COALESCE(fr.c, 0) OR u.following_count <> COALESCE(fg.c, 0))",
+           nativeQuery = true)
+    int reconcileFollowCounters(@Param("fromId") long fromId, @Param("toId") long toId);
+}
@@ -0,0 +1,75 @@
+package com.userservice.services;
+
+import com.userservice.repositories.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sửa lệch followers_count / following_count so với bảng user_following.
+ * Chạy theo từng khoảng id (mỗi khoảng một transaction ngắn) để không khóa cả bảng users.
+ * Lần chạy khi khởi động cũng là backfill cho dữ liệu có sẵn trước khi thêm cột đếm;
+ * lần này chạy trên thread riêng để không giữ startup chờ quét hết bảng users.
+ */
+@Service
+@Slf4j
+public class FollowCounterReconciler {
+
+    private final UserRepository userRepository;
+    private final TransactionTemplate tx;
+    private final int chunkSize;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public FollowCounterReconciler(UserRepository userRepository,
+                                   PlatformTransactionManager transactionManager,
+                                   @Value("${follow.reconcile.chunk-size:1000}") int chunkSize) {
+        this.userRepository = userRepository;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.chunkSize = chunkSize;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        Thread.ofVirtual().name("follow-reconcile").start(() -> {
+            try {
+                reconcile();
+            } catch (Exception e) {
+                log.error("❌ Đối soát bộ đếm follow lúc khởi động lỗi: {}", e.getMessage(), e);
+            }
+        });
+    }
+
+    @Scheduled(cron = "${follow.reconcile.cron:0 30 3 * * *}")
+    public void reconcile() {
+        // Lần khởi động còn chạy thì cron bỏ qua
+        if (!running.compareAndSet(false, true)) return;
+        try {
+            reconcileAll();
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private void reconcileAll() {
+        long maxId = userRepository.findMaxId();
+        int fixed = 0;
+        for (long from = 1; from <= maxId; from += chunkSize) {
+            long start = from;
+            long end = from + chunkSize - 1;
+            Integer n = tx.execute(status -> userRepository.reconcileFollowCounters(start, end));
+            fixed += n != null ? n : 0;
+        }
+        if (fixed > 0) {
+            log.warn("⚠️ Đã sửa bộ đếm follow cho {} user", fixed);
+        } else {
+            log.info("✅ Bộ đếm follow khớp với user_following");
+        }
+    }
+}
@@ -1,6 +1,6 @@
 package com.userservice.services;
 
-import com.userservice.models.User;
+import com.userservice.repositories.UserBriefView;
 import com.userservice.repositories.UserRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -9,7 +9,6 @@ import org.springframework.transaction.annotation.Transactional;
 
 import jakarta.persistence.EntityManager;
 import java.util.List;
-import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -49,7 +48,11 @@ public class FollowService {
         log.debug("All checks passed, inserting follow relationship");
 
         // ✅ CRITICAL FIX: Insert trực tiếp vào bảng join, tránh lazy loading
-        userRepository.insertFollowing(followerId, followingId);
+        // Bộ đếm chỉ tăng khi thực sự thêm dòng (cùng transaction)
+        if (userRepository.insertFollowing(followerId, followingId) == 0) {
+            throw new IllegalStateException("Already following this user");
+        }
+        userRepository.adjustFollowCounters(followerId, followingId, 1);
         
         // ✅ Flush để đảm bảo data được persist
         entityManager.flush();
@@ -90,7 +93,10 @@ public class FollowService {
         }
 
         // ✅ Thực hiện unfollow bằng native query
-        userRepository.deleteFollowing(followerId, followingId);
+        if (userRepository.deleteFollowing(followerId, followingId) == 0) {
+            throw new IllegalStateException("Not following this user");
+        }
+        userRepository.adjustFollowCounters(followerId, followingId, -1);
         
         // ✅ Flush ngay
         entityManager.flush();
@@ -108,24 +114,40 @@ public class FollowService {
         log.info("==> END unfollowUser: {} -> {}", followerId, followingId);
     }
 
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 200;
+
+    /**
+     * Một trang danh sách follow; nextCursor = id cuối trang, null nếu đã hết
+     */
+    public record FollowPage(List<UserBriefView> users, Long nextCursor) {}
+
     /**
-     * Lấy danh sách người đang follow
+     * Lấy danh sách người đang follow (keyset, mỗi trang một query)
      */
     @Transactional(readOnly = true)
-    public List<User> getFollowing(Long userId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("User not found: " + userId));
-        return user.getFollowing().stream().collect(Collectors.toList());
+    public FollowPage getFollowing(Long userId, Long cursor, Integer limit) {
+        int size = pageSize(limit);
+        return toPage(userRepository.findFollowingPage(userId, cursor != null ? cursor : 0L, size), size);
     }
 
     /**
-     * Lấy danh sách followers
+     * Lấy danh sách followers (keyset, mỗi trang một query)
      */
     @Transactional(readOnly = true)
-    public List<User> getFollowers(Long userId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("User not found: " + userId));
-        return user.getFollowers().stream().collect(Collectors.toList());
+    public FollowPage getFollowers(Long userId, Long cursor, Integer limit) {
+        int size = pageSize(limit);
+        return toPage(userRepository.findFollowersPage(userId, cursor != null ? cursor : 0L, size), size);
+    }
+
+    private static int pageSize(Integer limit) {
+        if (limit == null || limit <= 0) return DEFAULT_PAGE_SIZE;
+        return Math.min(limit, MAX_PAGE_SIZE);
+    }
+
+    private static FollowPage toPage(List<UserBriefView> users, int size) {
+        Long next = users.size() == size ? users.get(users.size() - 1).getId() : null;
+        return new FollowPage(users, next);
     }
 
     /**
@@ -133,9 +155,8 @@ public class FollowService {
      */
     @Transactional(readOnly = true)
     public long countFollowing(Long userId) {
-        User user = userRepository.findById(userId)
+        return userRepository.findFollowingCount(userId)
                 .orElseThrow(() -> new RuntimeException("User not found: " + userId));
-        return user.getFollowing().size();
     }
 
     /**
@@ -143,9 +164,8 @@ public class FollowService {
      */
     @Transactional(readOnly = true)
     public long countFollowers(Long userId) {
-        User user = userRepository.findById(userId)
+        return userRepository.findFollowersCount(userId)
                 .orElseThrow(() -> new RuntimeException("User not found: " + userId));
-        return user.getFollowers().size();
     }
 
     /**
@@ -0,0 +1,218 @@
+package com.userservice.services;
+
+import com.userservice.dtos.PresenceDTO;
+import com.userservice.repositories.FriendRepository;
+import com.userservice.repositories.UserRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Presence trong bộ nhớ: heartbeat cập nhật map userId -> lần ping cuối, quá TTL thì
+ * coi như offline. Chỉ khi trạng thái đổi (online <-> offline) mới đọc DB (danh sách bạn)
+ * và push sự kiện presence; last_seen được ghi xuống user_status theo lô định kỳ.
+ */
+@Service
+@Slf4j
+public class PresenceService {
+
+    private static final String UPSERT_STATUS_SQL =
+            "INSERT INTO user_status (user_id, is_online, last_seen) VALUES (?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE is_online = VALUES(is_online), last_seen = VALUES(last_seen)";
+
+    private record Pending(boolean online, long lastSeenMillis) {}
+
+    private final UserRepository userRepository;
+    private final FriendRepository friendRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final long ttlMillis;
+
+    // userId -> thời điểm heartbeat cuối (chỉ chứa user đang online)
+    private final Map<Long, Long> lastBeat = new ConcurrentHashMap<>();
+    // userId -> last seen đã biết kể từ khi service chạy (kể cả offline)
+    private final Map<Long, Long> lastSeen = new ConcurrentHashMap<>();
+    // Thay đổi chưa ghi xuống DB
+    private final Map<Long, Pending> dirty = new ConcurrentHashMap<>();
+    // STOMP sessionId -> userId
+    private final Map<String, Long> sessions = new ConcurrentHashMap<>();
+    // userId -> số session STOMP đang mở
+    private final Map<Long, Integer> sessionCounts = new ConcurrentHashMap<>();
+
+    public PresenceService(UserRepository userRepository,
+                           FriendRepository friendRepository,
+                           JdbcTemplate jdbcTemplate,
+                           SimpMessagingTemplate messagingTemplate,
+                           @Value("${presence.ttl-seconds:45}") long ttlSeconds) {
+        this.userRepository = userRepository;
+        this.friendRepository = friendRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.messagingTemplate = messagingTemplate;
+        this.ttlMillis = ttlSeconds * 1000;
+    }
+
+    /**
+     * Ping từ client. Chỉ chạm DB khi user vừa chuyển sang online.
+     */
+    public PresenceDTO heartbeat(Long userId) {
+        long now = System.currentTimeMillis();
+        Long previous = lastBeat.get(userId);
+        boolean cameOnline = previous == null || now - previous > ttlMillis;
+        if (cameOnline && !userRepository.existsById(userId)) {
+            throw new RuntimeException("User not found");
+        }
+
+        lastBeat.put(userId, now);
+        lastSeen.put(userId, now);
+        if (cameOnline) {
+            dirty.put(userId, new Pending(true, now));
+            publish(userId, true);
+        }
+        return toDto(userId, true, now);
+    }
+
+    public PresenceDTO goOffline(Long userId) {
+        // User đã từng heartbeat thì đã được kiểm tra khi online
+        if (!lastSeen.containsKey(userId) && !userRepository.existsById(userId)) {
+            throw new RuntimeException("User not found");
+        }
+        long now = System.currentTimeMillis();
+        boolean wasOnline = lastBeat.remove(userId) != null;
+        lastSeen.put(userId, now);
+        dirty.put(userId, new Pending(false, now));
+        if (wasOnline) {
+            publish(userId, false);
+        }
+        return toDto(userId, false, now);
+    }
+
+    public Optional<PresenceDTO> find(Long userId) {
+        Long seen = lastSeen.get(userId);
+        if (seen == null) return Optional.empty();
+        return Optional.of(toDto(userId, isOnline(userId), seen));
+    }
+
+    /**
+     * Trạng thái của cả danh sách (vd. danh sách bạn) chỉ từ bộ nhớ.
+     * User chưa từng ping từ khi service khởi động: offline, lastSeen = null.
+     */
+    public List<PresenceDTO> findAll(Collection<Long> userIds) {
+        List<PresenceDTO> result = new ArrayList<>(userIds.size());
+        for (Long userId : new LinkedHashSet<>(userIds)) {
+            Long seen = lastSeen.get(userId);
+            result.add(seen == null
+                    ? new PresenceDTO(userId, false, null)
+                    : toDto(userId, isOnline(userId), seen));
+        }
+        return result;
+    }
+
+    private boolean isOnline(Long userId) {
+        Long beat = lastBeat.get(userId);
+        return beat != null && System.currentTimeMillis() - beat <= ttlMillis;
+    }
+
+    // Hết TTL mà không ping -> offline
+    @Scheduled(fixedDelayString = "${presence.sweep-interval-ms:5000}")
+    public void expire() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Long, Long> e : lastBeat.entrySet()) {
+            long beat = e.getValue();
+            if (now - beat > ttlMillis && lastBeat.remove(e.getKey(), beat)) {
+                dirty.put(e.getKey(), new Pending(false, beat));
+                publish(e.getKey(), false);
+            }
+        }
+    }
+
+    // Ghi last_seen theo lô thay vì mỗi lần ping
+    @Scheduled(fixedDelayString = "${presence.flush-interval-ms:30000}")
+    @PreDestroy
+    public void flush() {
+        if (dirty.isEmpty()) return;
+        Map<Long, Pending> batch = new HashMap<>();
+        for (Long userId : new ArrayList<>(dirty.keySet())) {
+            Pending p = dirty.remove(userId);
+            if (p != null) batch.put(userId, p);
+        }
+
+        List<Object[]> rows = new ArrayList<>(batch.size());
+        batch.forEach((userId, p) ->
+                rows.add(new Object[]{userId, p.online(), new Timestamp(p.lastSeenMillis())}));
+        try {
+            jdbcTemplate.batchUpdate(UPSERT_STATUS_SQL, rows);
+            log.debug("Flushed {} presence rows", rows.size());
+        } catch (Exception e) {
+            log.warn("⚠️ Presence batch flush failed ({} rows), retrying row by row: {}", rows.size(), e.getMessage());
+            flushRowByRow(rows);
+        }
+    }
+
+    // Một dòng hỏng (vd. user đã bị xoá) không được làm cả lô lỗi mãi: dòng nào vẫn lỗi thì bỏ
+    private void flushRowByRow(List<Object[]> rows) {
+        int dropped = 0;
+        for (Object[] row : rows) {
+            try {
+                jdbcTemplate.update(UPSERT_STATUS_SQL, row);
+            } catch (Exception e) {
+                dropped++;
+                log.error("❌ Presence row for user {} dropped: {}", row[0], e.getMessage());
+            }
+        }
+        if (dropped > 0) {
+            log.error("❌ Presence flush dropped {} of {} rows", dropped, rows.size());
+        }
+    }
+
+    // ---------- session STOMP ----------
+
+    public void sessionConnected(String sessionId, Long userId) {
+        heartbeat(userId);
+        if (sessions.putIfAbsent(sessionId, userId) == null) {
+            sessionCounts.merge(userId, 1, Integer::sum);
+        }
+    }
+
+    public void sessionClosed(String sessionId) {
+        Long userId = sessions.remove(sessionId);
+        if (userId == null) return;
+        // Session cuối của user đóng -> offline
+        if (sessionCounts.computeIfPresent(userId, (id, n) -> n > 1 ? n - 1 : null) == null) {
+            goOffline(userId);
+        }
+    }
+
+    public void ping(String sessionId) {
+        Long userId = sessions.get(sessionId);
+        if (userId != null) heartbeat(userId);
+    }
+
+    private void publish(Long userId, boolean online) {
+        try {
+            Map<String, Object> event = new HashMap<>();
+            event.put("userId", userId.toString());
+            event.put("status", online ? "online" : "offline");
+            for (Long friendId : friendRepository.findAllFriendIdsByUserId(userId)) {
+                messagingTemplate.convertAndSendToUser(friendId.toString(), "/queue/presence", event);
+            }
+        } catch (Exception e) {
+            log.error("❌ Presence push failed for user {}: {}", userId, e.getMessage());
+        }
+    }
+
+    private static PresenceDTO toDto(Long userId, boolean online, long millis) {
+        return new PresenceDTO(userId, online,
+                LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault()));
+    }
+}
@@ -1,39 +1,35 @@
 package com.userservice.services;
 
-import com.userservice.models.User;
-import com.userservice.models.UserStatus;
+import com.userservice.dtos.PresenceDTO;
 import com.userservice.repositories.UserStatusRepository;
-import com.userservice.repositories.UserRepository;
 import org.springframework.stereotype.Service;
 
-import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 
 @Service
 public class StatusService {
-    private final UserRepository userRepository;
     private final UserStatusRepository userStatusRepository;
+    private final PresenceService presenceService;
 
-    public StatusService(UserRepository userRepository, UserStatusRepository userStatusRepository) {
-        this.userRepository = userRepository;
+    public StatusService(UserStatusRepository userStatusRepository, PresenceService presenceService) {
         this.userStatusRepository = userStatusRepository;
+        this.presenceService = presenceService;
     }
 
-    public UserStatus updateStatus(Long userId, boolean online) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-
-        UserStatus status = userStatusRepository.findById(userId)
-                .orElse(new UserStatus());
-
-        status.setUser(user);
-        status.setOnline(online);
-        status.setLastSeen(LocalDateTime.now());
+    // Online/offline đi qua presence trong bộ nhớ, last_seen được flush theo lô
+    public PresenceDTO updateStatus(Long userId, boolean online) {
+        return online ? presenceService.heartbeat(userId) : presenceService.goOffline(userId);
+    }
 
-        return userStatusRepository.save(status);
+    public PresenceDTO getStatus(Long userId) {
+        return presenceService.find(userId)
+                .orElseGet(() -> userStatusRepository.findById(userId)
+                        .map(s -> new PresenceDTO(userId, false, s.getLastSeen()))
+                        .orElseThrow(() -> new RuntimeException("User status not found")));
     }
 
-    public UserStatus getStatus(Long userId) {
-        return userStatusRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("User status not found"));
+    public List<PresenceDTO> getStatuses(Collection<Long> userIds) {
+        return presenceService.findAll(userIds);
     }
 }
@@ -0,0 +1,76 @@
+package com.userservice.services;
+
+import com.userservice.repositories.UserBriefView;
+import com.userservice.repositories.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Cache LRU (có TTL) cho (id, fullName, photoUrl). Các id chưa có trong cache
+ * được nạp bằng một câu IN duy nhất.
+ */
+@Component
+public class UserBriefCache {
+
+    public record Brief(Long id, String fullName, String photoUrl) {}
+
+    private record Entry(Brief brief, long expiresAt) {}
+
+    private final UserRepository userRepository;
+    private final long ttlMillis;
+    private final Map<Long, Entry> cache;
+
+    public UserBriefCache(UserRepository userRepository,
+                          @Value("${users.brief-cache.max-size:50000}") int maxSize,
+                          @Value("${users.brief-cache.ttl-seconds:300}") long ttlSeconds) {
+        this.userRepository = userRepository;
+        this.ttlMillis = ttlSeconds * 1000;
+        this.cache = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return brief theo id (id không tồn tại sẽ không có trong map)
+     */
+    public Map<Long, Brief> getAll(Collection<Long> ids) {
+        long now = System.currentTimeMillis();
+        Map<Long, Brief> result = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+
+        synchronized (cache) {
+            for (Long id : ids) {
+                Entry e = cache.get(id);
+                if (e != null && e.expiresAt() > now) {
+                    result.put(id, e.brief());
+                } else {
+                    missing.add(id);
+                }
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            List<UserBriefView> rows = userRepository.findBriefsByIdIn(missing);
+            synchronized (cache) {
+                for (UserBriefView row : rows) {
+                    Brief brief = new Brief(row.getId(), row.getFullName(), row.getPhotoUrl());
+                    cache.put(row.getId(), new Entry(brief, now + ttlMillis));
+                    result.put(row.getId(), brief);
+                }
+            }
+        }
+        return result;
+    }
+
+    public void evict(Long id) {
+        if (id == null) return;
+        synchronized (cache) {
+            cache.remove(id);
+        }
+    }
+}
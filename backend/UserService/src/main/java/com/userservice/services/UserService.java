@@ -1,21 +1,54 @@
 package com.userservice.services;
 
+import com.userservice.dtos.PresenceDTO;
 import com.userservice.dtos.UserProfileDto;
+import com.userservice.dtos.UserSummaryDTO;
 import com.userservice.mapper.UserMapper;
 import com.userservice.models.User;
 import com.userservice.repositories.UserRepository;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
 
 @Service
 public class UserService {
+    public static final int MAX_BATCH_SIZE = 500;
+
     private final UserRepository userRepository;
+    private final UserBriefCache briefCache;
+    private final PresenceService presenceService;
 
-    public UserService(UserRepository userRepository) {
+    public UserService(UserRepository userRepository, UserBriefCache briefCache, PresenceService presenceService) {
         this.userRepository = userRepository;
+        this.briefCache = briefCache;
+        this.presenceService = presenceService;
+    }
+
+    /**
+     * Hồ sơ gọn + trạng thái của nhiều user (render danh sách chat):
+     * profile từ cache / một câu IN, presence từ bộ nhớ. Giữ thứ tự ids, bỏ id không tồn tại.
+     */
+    public List<UserSummaryDTO> getSummaries(List<Long> userIds) {
+        if (userIds.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("Tối đa " + MAX_BATCH_SIZE + " user mỗi lần");
+        }
+        List<Long> ids = new ArrayList<>(new LinkedHashSet<>(userIds));
+        Map<Long, UserBriefCache.Brief> briefs = briefCache.getAll(ids);
+        Map<Long, PresenceDTO> presence = new HashMap<>();
+        for (PresenceDTO p : presenceService.findAll(ids)) {
+            presence.put(p.getUserId(), p);
+        }
+
+        List<UserSummaryDTO> result = new ArrayList<>(briefs.size());
+        for (Long id : ids) {
+            UserBriefCache.Brief brief = briefs.get(id);
+            if (brief == null) continue;
+            PresenceDTO p = presence.get(id);
+            result.add(new UserSummaryDTO(id, brief.fullName(), brief.photoUrl(),
+                    p != null && p.isOnline(), p != null ? p.getLastSeen() : null));
+        }
+        return result;
     }
 
     /**
@@ -53,7 +86,9 @@ public class UserService {
         if (updated.getEmail() != null) user.setEmail(updated.getEmail()); // ✅ cập nhật email
 
         user.setUpdatedAt(LocalDateTime.now());
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        briefCache.evict(saved.getId());
+        return saved;
     }
 
     /**
@@ -71,6 +106,7 @@ public class UserService {
                     if (newUser.getEmail() != null) existing.setEmail(newUser.getEmail());
                     if (newUser.getFullName() != null) existing.setFullName(newUser.getFullName());
                     existing.setUpdatedAt(LocalDateTime.now());
+                    briefCache.evict(existing.getId());
                     return userRepository.save(existing);
                 })
                 .orElseGet(() -> {
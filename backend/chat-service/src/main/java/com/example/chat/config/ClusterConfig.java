@@ -0,0 +1,30 @@
+package com.example.chat.config;
+
+import com.example.chat.service.ClusterRouter;
+import com.example.chat.service.MembershipCacheInvalidator;
+import com.example.chat.service.RecentCacheInvalidator;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+@Configuration
+@ConditionalOnProperty(name = "chat.cluster.enabled", havingValue = "true")
+public class ClusterConfig {
+
+    // Mỗi node chỉ nghe kênh của chính nó, cộng các kênh chung báo bỏ cache (tin gần nhất, thành viên)
+    @Bean
+    public RedisMessageListenerContainer clusterListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                  ClusterRouter router,
+                                                                  RecentCacheInvalidator cacheInvalidator,
+                                                                  MembershipCacheInvalidator membershipInvalidator) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(router, new ChannelTopic(router.channel()));
+        container.addMessageListener(cacheInvalidator, new ChannelTopic(RecentCacheInvalidator.CHANNEL));
+        container.addMessageListener(membershipInvalidator, new ChannelTopic(MembershipCacheInvalidator.CHANNEL));
+        return container;
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.chat.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.ConsumerFactory;
+
+@Configuration
+@ConditionalOnProperty(name = "chat.pipeline.mode", havingValue = "kafka")
+public class KafkaConsumerConfig {
+
+    /**
+     * Listener nhận cả lô record mỗi lần poll; số consumer thread đặt ở từng
+     * @KafkaListener (không vượt quá số partition của topic).
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<Object, Object> messageBatchListenerFactory(
+            ConsumerFactory<Object, Object> consumerFactory) {
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory);
+        factory.setBatchListener(true);
+        return factory;
+    }
+}
@@ -2,19 +2,12 @@ package com.example.chat.config;
 
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
-import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
 
-    @Override
-    public void addResourceHandlers(ResourceHandlerRegistry registry) {
-        // Cho phép truy cập file ảnh qua URL /uploads/**
-        // Ví dụ: http://localhost:8081/uploads/images/abc123.jpg
-        registry.addResourceHandler("/uploads/**")
-                .addResourceLocations("file:uploads/");
-    }
+    // File trong /uploads/** do MediaController phục vụ (ETag, Range, cache immutable, sendfile)
 
     @Override
     public void addCorsMappings(CorsRegistry registry) {
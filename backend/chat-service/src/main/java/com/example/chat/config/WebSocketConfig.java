@@ -1,18 +1,43 @@
 package com.example.chat.config;
 
+import com.example.chat.service.WireCodec;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.util.List;
+import java.util.Map;
 
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    private static final String[] ALLOWED_ORIGINS = {
+            "http://localhost:3000",
+            "http://127.0.0.1:3000"
+    };
+
+    private final WireCodec wireCodec;
+
+    public WebSocketConfig(WireCodec wireCodec) {
+        this.wireCodec = wireCodec;
+    }
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
         // Enable a simple memory-based message broker
+        // (chỉ phục vụ session trên node này; fan-out giữa các node do ClusterRouter đảm nhận)
         config.enableSimpleBroker("/topic", "/queue");
 
         // Prefix for messages from client to server
@@ -27,10 +52,52 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         // WebSocket endpoint
         registry.addEndpoint("/ws")
                 // Liệt kê các origin cụ thể của frontend
-                .setAllowedOriginPatterns(
-                        "http://localhost:3000",
-                        "http://127.0.0.1:3000"
-                )
+                .setAllowedOriginPatterns(ALLOWED_ORIGINS)
                 .withSockJS();
+
+        // WebSocket thuần (không SockJS) cho client muốn payload CBOR: SockJS chỉ truyền text
+        registry.addEndpoint("/ws-binary")
+                .setAllowedOriginPatterns(ALLOWED_ORIGINS)
+                .addInterceptors(new HandshakeInterceptor() {
+                    @Override
+                    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+                        attributes.put(WireCodec.BINARY_ATTRIBUTE, Boolean.TRUE);
+                        return true;
+                    }
+
+                    @Override
+                    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                               WebSocketHandler wsHandler, Exception exception) {
+                    }
+                });
+    }
+
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        // Payload object được encode (JSON / CBOR) theo từng session ở outbound channel
+        messageConverters.add(0, wireCodec.messageConverter());
+        return true;
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.interceptors(new ChannelInterceptor() {
+            @Override
+            public Message<?> preSend(Message<?> message, MessageChannel channel) {
+                wireCodec.onInbound(message);
+                return message;
+            }
+        });
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.interceptors(new ChannelInterceptor() {
+            @Override
+            public Message<?> preSend(Message<?> message, MessageChannel channel) {
+                return wireCodec.onOutbound(message);
+            }
+        });
     }
 }
@@ -0,0 +1,39 @@
+package com.example.chat.config;
+
+import com.example.chat.model.MessageCreatedEvent;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Đọc MessageCreatedEvent từ message.created theo header content-type của record:
+ * application/cbor thì giải CBOR, còn lại (kể cả record JSON cũ không có header) đọc JSON.
+ */
+public class WireEventDeserializer implements Deserializer<MessageCreatedEvent> {
+
+    @Override
+    public MessageCreatedEvent deserialize(String topic, byte[] data) {
+        return read(data, false);
+    }
+
+    @Override
+    public MessageCreatedEvent deserialize(String topic, Headers headers, byte[] data) {
+        Header contentType = headers != null ? headers.lastHeader(WireEventSerializer.CONTENT_TYPE_HEADER) : null;
+        boolean cbor = contentType != null && WireEventSerializer.CBOR.equals(
+                new String(contentType.value(), StandardCharsets.US_ASCII));
+        return read(data, cbor);
+    }
+
+    private MessageCreatedEvent read(byte[] data, boolean cbor) {
+        if (data == null) return null;
+        try {
+            return (cbor ? WireEventSerializer.CBOR_MAPPER : WireEventSerializer.JSON_MAPPER)
+                    .readValue(data, MessageCreatedEvent.class);
+        } catch (Exception e) {
+            throw new SerializationException("Could not deserialize message.created record", e);
+        }
+    }
+}
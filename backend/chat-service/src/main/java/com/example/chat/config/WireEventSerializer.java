@@ -0,0 +1,69 @@
+package com.example.chat.config;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Serializer cho value của topic message.created (MessageCreatedEvent).
+ *
+ * Định dạng chọn bằng producer property chat.wire.format (json | cbor) và ghi vào header
+ * content-type của record để consumer (WireEventDeserializer) đọc đúng; chỉ bật cbor khi
+ * mọi consumer đã dùng WireEventDeserializer. CBOR giữ thời gian dạng số, đủ nano giây.
+ */
+public class WireEventSerializer implements Serializer<Object> {
+
+    public static final String FORMAT_CONFIG = "chat.wire.format";
+    public static final String CONTENT_TYPE_HEADER = "content-type";
+    public static final String JSON = "application/json";
+    public static final String CBOR = "application/cbor";
+
+    static final ObjectMapper JSON_MAPPER = JsonMapper.builder()
+            .findAndAddModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .build();
+    static final ObjectMapper CBOR_MAPPER = CBORMapper.builder()
+            .findAndAddModules()
+            .enable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .enable(SerializationFeature.WRITE_DATE_TIMESTAMPS_AS_NANOSECONDS)
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .build();
+
+    private ObjectMapper mapper = JSON_MAPPER;
+    private byte[] contentType = JSON.getBytes(StandardCharsets.US_ASCII);
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        Object format = configs.get(FORMAT_CONFIG);
+        if (format != null && "cbor".equalsIgnoreCase(format.toString())) {
+            mapper = CBOR_MAPPER;
+            contentType = CBOR.getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    @Override
+    public byte[] serialize(String topic, Object data) {
+        if (data == null) return null;
+        try {
+            return mapper.writeValueAsBytes(data);
+        } catch (Exception e) {
+            throw new SerializationException("Could not serialize " + data.getClass().getSimpleName(), e);
+        }
+    }
+
+    @Override
+    public byte[] serialize(String topic, Headers headers, Object data) {
+        headers.remove(CONTENT_TYPE_HEADER);
+        headers.add(CONTENT_TYPE_HEADER, contentType);
+        return serialize(topic, data);
+    }
+}
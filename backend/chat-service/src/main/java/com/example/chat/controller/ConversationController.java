@@ -1,111 +1,92 @@
 package com.example.chat.controller;
 
-import com.example.chat.model.Message;
-import com.example.chat.service.MessageService;
+import com.example.chat.model.Conversation;
+import com.example.chat.model.InboxEntry;
+import com.example.chat.model.MessageStatus;
+import com.example.chat.service.ConversationService;
+import com.example.chat.service.InboxService;
+import com.example.chat.service.MessageFanoutService;
+import com.example.chat.service.ReceiptService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/conversations")
 public class ConversationController {
 
-    private final MessageService messageService;
-
-    public ConversationController(MessageService messageService) {
-        this.messageService = messageService;
+    private final InboxService inboxService;
+    private final ReceiptService receiptService;
+    private final ConversationService conversationService;
+    private final MessageFanoutService fanoutService;
+
+    public ConversationController(InboxService inboxService,
+                                  ReceiptService receiptService,
+                                  ConversationService conversationService,
+                                  MessageFanoutService fanoutService) {
+        this.inboxService = inboxService;
+        this.receiptService = receiptService;
+        this.conversationService = conversationService;
+        this.fanoutService = fanoutService;
     }
 
     @GetMapping("/{userId}")
-    public ResponseEntity<?> getUserConversations(@PathVariable String userId) {
+    public ResponseEntity<?> getUserConversations(
+            @PathVariable String userId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "" + InboxService.DEFAULT_PAGE_SIZE) int limit
+    ) {
         try {
-            // ✅ Lấy TẤT CẢ tin nhắn mà user này tham gia (gửi HOẶC nhận)
-            List<Message> allMessages = messageService.getMessagesForUser(userId);
-
-            if (allMessages.isEmpty()) {
-                // ✅ Trả về empty array thay vì 404
-                return ResponseEntity.ok(Collections.emptyList());
-            }
+            // ✅ Đọc thẳng từ inbox read model (range scan theo user_id, last_time DESC)
+            InboxService.InboxPage page = inboxService.getInbox(userId, cursor, limit);
 
-            // ✅ Group messages theo conversationId
-            Map<String, List<Message>> groupedByConversation = allMessages.stream()
-                    .collect(Collectors.groupingBy(Message::getConversationId));
+            // ✅ Thành viên của cả trang trong một lần tra (cache / một query IN)
+            Map<String, List<String>> members = conversationService.participants(
+                    page.entries().stream().map(InboxEntry::getConversationId).toList());
 
-            // ✅ Build conversation list
             List<Map<String, Object>> conversations = new ArrayList<>();
+            for (InboxEntry entry : page.entries()) {
+                String conversationId = entry.getConversationId();
 
-            for (Map.Entry<String, List<Message>> entry : groupedByConversation.entrySet()) {
-                String conversationId = entry.getKey();
-                List<Message> messages = entry.getValue();
-
-                // Get last message (newest)
-                Message lastMessage = messages.stream()
-                        .max(Comparator.comparing(Message::getCreatedAt))
-                        .orElse(null);
+                // User hiện tại đứng đầu danh sách
+                List<String> participants = new ArrayList<>();
+                participants.add(userId);
+                for (String member : members.getOrDefault(conversationId, List.of())) {
+                    if (!member.equals(userId)) participants.add(member);
+                }
 
-                if (lastMessage == null) continue;
-
-                // ✅ Extract participants từ conversationId
-                // Format: "user1-user2-chat" hoặc "bella-tommy-chat"
-                List<String> participants = extractParticipants(conversationId, userId);
-
-                // ✅ Build conversation object
                 Map<String, Object> conversation = new HashMap<>();
                 conversation.put("conversationId", conversationId);
                 conversation.put("participants", participants);
 
                 // Last message info
                 Map<String, Object> lastMsgInfo = new HashMap<>();
-                lastMsgInfo.put("id", lastMessage.getId());
-                lastMsgInfo.put("senderId", lastMessage.getSenderId());
-                lastMsgInfo.put("content", lastMessage.isRecalled()
+                lastMsgInfo.put("id", entry.getLastMessageId());
+                lastMsgInfo.put("senderId", entry.getLastSenderId());
+                lastMsgInfo.put("content", entry.isLastRecalled()
                         ? "Tin nhắn đã được thu hồi"
-                        : lastMessage.getContent());
-                lastMsgInfo.put("type", lastMessage.getType());
-                lastMsgInfo.put("createdAt", lastMessage.getCreatedAt());
-                lastMsgInfo.put("recalled", lastMessage.isRecalled());
+                        : entry.getLastMessage());
+                lastMsgInfo.put("type", entry.getLastType());
+                lastMsgInfo.put("createdAt", entry.getLastTime());
+                lastMsgInfo.put("recalled", entry.isLastRecalled());
 
                 conversation.put("lastMessage", lastMsgInfo);
-
-                // ✅ Calculate unread count (messages where receiverId = userId and status != read)
-                long unreadCount = messages.stream()
-                        .filter(msg -> {
-                            // Nếu message có receiverId và = userId và chưa đọc
-                            String receiverId = msg.getReceiverId();
-                            if (receiverId != null && receiverId.equals(userId)) {
-                                String status = msg.getStatus();
-                                return status == null || !status.equals("read");
-                            }
-                            // Nếu không có receiverId riêng, check senderId
-                            // Message không phải của mình = chưa đọc
-                            return !msg.getSenderId().equals(userId);
-                        })
-                        .count();
-
-                conversation.put("unreadCount", (int) unreadCount);
+                conversation.put("unreadCount", entry.getUnreadCount());
 
                 conversations.add(conversation);
             }
 
-            // ✅ Sort by last message time (newest first)
-            conversations.sort((a, b) -> {
-                @SuppressWarnings("unchecked")
-                Map<String, Object> lastMsgA = (Map<String, Object>) a.get("lastMessage");
-                @SuppressWarnings("unchecked")
-                Map<String, Object> lastMsgB = (Map<String, Object>) b.get("lastMessage");
-
-                String timeA = lastMsgA.get("createdAt").toString();
-                String timeB = lastMsgB.get("createdAt").toString();
-
-                return timeB.compareTo(timeA); // Descending
-            });
-
-            System.out.println("✅ Found " + conversations.size() + " conversations for user: " + userId);
-
-            return ResponseEntity.ok(conversations);
+            Map<String, Object> body = new HashMap<>();
+            body.put("conversations", conversations);
+            body.put("nextCursor", page.nextCursor());
+            return ResponseEntity.ok(body);
 
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "error", e.getMessage()
+            ));
         } catch (Exception e) {
             System.err.println("❌ Error fetching conversations for user: " + userId);
             e.printStackTrace();
@@ -114,31 +95,64 @@ public class ConversationController {
         }
     }
 
-    /**
-     * Extract participants from conversationId
-     * Format: "user1-user2-chat" or "bella-tommy-chat"
-     */
-    private List<String> extractParticipants(String conversationId, String currentUserId) {
-        List<String> participants = new ArrayList<>();
+    // ✅ Đánh dấu đã đọc hết hội thoại: ghi mốc read (unreadCount reset khi receipts flush)
+    @PostMapping("/{userId}/{conversationId}/read")
+    public ResponseEntity<?> markRead(@PathVariable String userId, @PathVariable String conversationId) {
+        try {
+            boolean accepted = receiptService.ack(conversationId, userId, MessageStatus.READ, null);
+            return ResponseEntity.ok(Map.of("success", accepted));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "error", e.getMessage()
+            ));
+        }
+    }
 
-        // Add current user first
-        participants.add(currentUserId);
+    // 👥 Tạo nhóm: body {"name": "...", "creatorId": "u1", "members": ["u2", "u3"]}
+    public record CreateGroupRequest(String name, String creatorId, List<String> members) {}
 
-        // Parse conversationId to find other participant
-        String[] parts = conversationId.split("-");
+    @PostMapping
+    public ResponseEntity<?> createGroup(@RequestBody CreateGroupRequest request) {
+        try {
+            Conversation conversation = conversationService.createGroup(
+                    request.name(), request.creatorId(), request.members());
+            return ResponseEntity.ok(Map.of(
+                    "success", true,
+                    "conversation", conversation,
+                    "participants", conversationService.participants(conversation.getId())
+            ));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("success", false, "error", e.getMessage()));
+        }
+    }
 
-        if (parts.length >= 2) {
-            String user1 = parts[0];
-            String user2 = parts[1];
+    @GetMapping("/{conversationId}/participants")
+    public ResponseEntity<?> getParticipants(@PathVariable String conversationId) {
+        return ResponseEntity.ok(conversationService.participants(conversationId));
+    }
 
-            // Add the other user (not current user)
-            if (!user1.equals(currentUserId)) {
-                participants.add(user1);
-            } else if (!user2.equals(currentUserId)) {
-                participants.add(user2);
-            }
+    @PostMapping("/{conversationId}/participants")
+    public ResponseEntity<?> addParticipants(@PathVariable String conversationId, @RequestBody List<String> userIds) {
+        try {
+            return ResponseEntity.ok(conversationService.addParticipants(conversationId, userIds));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("success", false, "error", e.getMessage()));
+        }
+    }
+
+    @DeleteMapping("/{conversationId}/participants/{userId}")
+    public ResponseEntity<?> removeParticipant(@PathVariable String conversationId, @PathVariable String userId) {
+        try {
+            return ResponseEntity.ok(conversationService.removeParticipant(conversationId, userId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("success", false, "error", e.getMessage()));
         }
+    }
 
-        return participants;
+    // 📊 Chi phí gửi tin theo kích thước hội thoại
+    @GetMapping("/stats/fanout")
+    public ResponseEntity<?> fanoutStats() {
+        return ResponseEntity.ok(fanoutService.getDeliveryStats());
     }
-}
\ No newline at end of file
+}
@@ -1,39 +1,56 @@
 package com.example.chat.controller;
 
 import com.example.chat.model.Message;
+import com.example.chat.model.PurgeJob;
+import com.example.chat.service.AttachmentStore;
+import com.example.chat.service.ConversationPurgeService;
+import com.example.chat.service.ImageVariantService;
+import com.example.chat.service.MessageExportService;
+import com.example.chat.service.MessageSearchService;
 import com.example.chat.service.MessageService;
 import com.example.chat.service.MessageService.MessageResponse;
+import com.example.chat.service.RecentMessageCache;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
+import java.util.Objects;
 
 @RestController
 @RequestMapping("/api/messages")
 public class MessageController {
 
     private final MessageService messageService;
+    private final MessageExportService exportService;
+    private final MessageSearchService searchService;
+    private final AttachmentStore attachmentStore;
+    private final ImageVariantService imageVariantService;
+    private final ConversationPurgeService purgeService;
+    private final RecentMessageCache recentCache;
 
-    // Đường dẫn lưu ảnh (có thể config trong application.properties)
-    private static final String UPLOAD_DIR = "uploads/images/";
-
-    public MessageController(MessageService messageService) {
+    public MessageController(MessageService messageService,
+                             MessageExportService exportService,
+                             MessageSearchService searchService,
+                             AttachmentStore attachmentStore,
+                             ImageVariantService imageVariantService,
+                             ConversationPurgeService purgeService,
+                             RecentMessageCache recentCache) {
         this.messageService = messageService;
-        // Tạo thư mục uploads nếu chưa tồn tại
-        try {
-            Files.createDirectories(Paths.get(UPLOAD_DIR));
-        } catch (IOException e) {
-            System.err.println("Could not create upload directory: " + e.getMessage());
-        }
+        this.exportService = exportService;
+        this.searchService = searchService;
+        this.attachmentStore = attachmentStore;
+        this.imageVariantService = imageVariantService;
+        this.purgeService = purgeService;
+        this.recentCache = recentCache;
     }
 
     // ✨ THÊM ENDPOINT NÀY ĐỂ XỬ LÝ UPLOAD IMAGE
@@ -53,6 +70,17 @@ public class MessageController {
                 ));
             }
 
+            // Retry của request đã thành công: trả lại tin cũ, không lưu file lần nữa
+            Message previous = messageService.findSent(senderId, tempId);
+            if (previous != null) {
+                return ResponseEntity.ok(Map.of(
+                        "success", true,
+                        "message", previous,
+                        "tempId", tempId,
+                        "imageUrl", previous.getContent()
+                ));
+            }
+
             // Kiểm tra loại file
             String contentType = file.getContentType();
             if (contentType == null || !contentType.startsWith("image/")) {
@@ -62,19 +90,9 @@ public class MessageController {
                 ));
             }
 
-            // Tạo tên file unique
-            String originalFilename = file.getOriginalFilename();
-            String extension = originalFilename != null && originalFilename.contains(".")
-                    ? originalFilename.substring(originalFilename.lastIndexOf("."))
-                    : ".jpg";
-            String filename = UUID.randomUUID().toString() + extension;
-
-            // Lưu file
-            Path filePath = Paths.get(UPLOAD_DIR + filename);
-            Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
-
-            // Tạo URL để truy cập ảnh
-            String imageUrl = "/uploads/images/" + filename;
+            // ✅ Lưu theo nội dung (hash khi đang ghi); ảnh trùng không ghi thêm lên đĩa
+            AttachmentStore.StoredFile stored = attachmentStore.storeImage(file.getInputStream(), contentType);
+            String imageUrl = stored.url();
 
             // Tạo message với type "image"
             Message message = new Message();
@@ -83,8 +101,28 @@ public class MessageController {
             message.setContent(imageUrl); // URL của ảnh
             message.setType("image");
 
-            // Lưu message vào database
-            MessageResponse saved = messageService.save(message, tempId);
+            // Lưu message vào database (lỗi thì trả lại tham chiếu file vừa giữ)
+            MessageResponse saved;
+            try {
+                saved = messageService.save(message, tempId);
+            } catch (RuntimeException e) {
+                attachmentStore.release(imageUrl);
+                throw e;
+            }
+            // Request trùng chạy song song đã thắng: tin trả về trỏ tới file của bên thắng,
+            // tham chiếu vừa giữ ở trên không thuộc tin nào
+            if (!Objects.equals(saved.getMessage().getId(), message.getId())) {
+                attachmentStore.release(imageUrl);
+                return ResponseEntity.ok(Map.of(
+                        "success", true,
+                        "message", saved.getMessage(),
+                        "tempId", saved.getTempId(),
+                        "imageUrl", saved.getMessage().getContent()
+                ));
+            }
+
+            // Thumbnail/variant chạy nền, xong sẽ đẩy /queue/message.updated
+            imageVariantService.submit(saved.getMessage(), stored);
 
             return ResponseEntity.ok(Map.of(
                     "success", true,
@@ -125,6 +163,11 @@ public class MessageController {
                         "error", "Message not found"
                 ));
             }
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of(
+                    "success", false,
+                    "error", e.getMessage()
+            ));
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
                     "success", false,
@@ -152,10 +195,40 @@ public class MessageController {
         }
     }
 
+    // 📦 Gửi nhiều tin trong một request (dùng bởi websocket-gateway, gom theo cửa sổ thời gian)
+    @PostMapping("/batch")
+    public ResponseEntity<?> sendBatch(@RequestBody List<MessageService.SendRequest> batch) {
+        List<Map<String, Object>> results = new ArrayList<>(batch.size());
+        for (MessageService.SendRequest item : batch) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("tempId", item.tempId());
+            try {
+                if (item.message() == null) {
+                    throw new IllegalArgumentException("message không được null");
+                }
+                MessageResponse saved = messageService.save(item.message(), item.tempId());
+                result.put("tempId", saved.getTempId());
+                result.put("message", saved.getMessage());
+                result.put("success", true);
+            } catch (Exception e) {
+                result.put("success", false);
+                result.put("error", e.getMessage());
+            }
+            results.add(result);
+        }
+        return ResponseEntity.ok(results);
+    }
+
     @GetMapping("/history/{conversationId}")
-    public ResponseEntity<?> history(@PathVariable String conversationId) {
+    public ResponseEntity<?> history(
+            @PathVariable String conversationId,
+            @RequestParam(required = false) String before,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "" + MessageService.DEFAULT_HISTORY_PAGE_SIZE) int limit
+    ) {
         try {
-            List<Message> messages = messageService.getHistory(conversationId)
+            MessageService.HistoryPage page = messageService.getHistory(conversationId, before, after, limit);
+            List<Message> messages = page.messages()
                     .stream()
                     .peek(msg -> {
                         if (msg.isRecalled()) {
@@ -164,7 +237,17 @@ public class MessageController {
                     })
                     .toList();
 
-            return ResponseEntity.ok(messages);
+            Map<String, Object> body = new HashMap<>();
+            body.put("messages", messages);
+            body.put("olderCursor", page.olderCursor());
+            body.put("newerCursor", page.newerCursor());
+            return ResponseEntity.ok(body);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "error", e.getMessage(),
+                    "conversationId", conversationId
+            ));
         } catch (Exception e) {
             System.err.println("Error fetching history for: " + conversationId);
             e.printStackTrace();
@@ -176,6 +259,42 @@ public class MessageController {
         }
     }
 
+    // 📊 Hit ratio + bộ nhớ ước lượng của cache trang lịch sử đầu tiên
+    @GetMapping("/stats/cache")
+    public ResponseEntity<?> cacheStats() {
+        return ResponseEntity.ok(recentCache.getStats());
+    }
+
+    // 🔍 Tìm tin nhắn theo nội dung trong các hội thoại của user (mới nhất trước)
+    @GetMapping("/search")
+    public ResponseEntity<?> search(
+            @RequestParam String userId,
+            @RequestParam("q") String query,
+            @RequestParam(required = false) String conversationId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "" + MessageSearchService.DEFAULT_PAGE_SIZE) int limit
+    ) {
+        try {
+            MessageSearchService.SearchPage page = searchService.search(userId, query, conversationId, cursor, limit);
+            Map<String, Object> body = new HashMap<>();
+            body.put("messages", page.messages());
+            body.put("nextCursor", page.nextCursor());
+            return ResponseEntity.ok(body);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "error", e.getMessage()
+            ));
+        } catch (Exception e) {
+            System.err.println("Error searching messages for user: " + userId);
+            e.printStackTrace();
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
+                    "success", false,
+                    "error", e.getMessage()
+            ));
+        }
+    }
+
     @GetMapping("/{userId}")
     public ResponseEntity<?> messagesByUser(@PathVariable String userId) {
         try {
@@ -191,9 +310,24 @@ public class MessageController {
         }
     }
 
+    // 📤 EXPORT NDJSON (stream, lọc theo conversationId và/hoặc khoảng thời gian [from, to))
     @GetMapping
-    public ResponseEntity<List<Message>> getAllMessages() {
-        return ResponseEntity.ok(messageService.getAllMessages());
+    public ResponseEntity<?> exportMessages(
+            @RequestParam(required = false) String conversationId,
+            @RequestParam(required = false) Instant from,
+            @RequestParam(required = false) Instant to
+    ) {
+        if (from != null && to != null && !from.isBefore(to)) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "error", "from phải nhỏ hơn to"
+            ));
+        }
+
+        StreamingResponseBody body = out -> exportService.export(conversationId, from, to, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(body);
     }
 
     @DeleteMapping("/{messageId}")
@@ -211,6 +345,11 @@ public class MessageController {
                         "error", "Message not found"
                 ));
             }
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of(
+                    "success", false,
+                    "error", e.getMessage()
+            ));
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
                     "success", false,
@@ -218,22 +357,16 @@ public class MessageController {
             ));
         }
     }
-    // 🗑️ DELETE ALL MESSAGES IN A CONVERSATION
+    // 🗑️ Xoá cả hội thoại: chạy nền theo khúc, trả jobId để theo dõi tiến độ
     @DeleteMapping("/conversation/{conversationId}")
     public ResponseEntity<?> deleteAllMessages(@PathVariable String conversationId) {
         try {
-            boolean deleted = messageService.deleteAllByConversationId(conversationId);
-            if (deleted) {
-                return ResponseEntity.ok(Map.of(
-                        "success", true,
-                        "message", "All messages deleted successfully"
-                ));
-            } else {
-                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of(
-                        "success", false,
-                        "error", "No messages found for this conversation"
-                ));
-            }
+            PurgeJob job = purgeService.start(conversationId);
+            return ResponseEntity.accepted().body(Map.of(
+                    "success", true,
+                    "jobId", job.getJobId(),
+                    "cutoff", job.getCutoff()
+            ));
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
                     "success", false,
@@ -241,4 +374,16 @@ public class MessageController {
             ));
         }
     }
-}
\ No newline at end of file
+
+    @GetMapping("/conversation/purge/{jobId}")
+    public ResponseEntity<?> purgeStatus(@PathVariable String jobId) {
+        PurgeJob job = purgeService.getJob(jobId);
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of(
+                    "success", false,
+                    "error", "Job not found"
+            ));
+        }
+        return ResponseEntity.ok(job);
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.chat.controller;
+
+import com.example.chat.model.MessageStatus;
+import com.example.chat.service.ReceiptService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.web.bind.annotation.*;
+
+import java.security.Principal;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/receipts")
+public class ReceiptController {
+
+    /**
+     * Ack từ client (xem websocket-events.json "read"). Có principal thì userId lấy từ principal
+     * (userId trong body phải trùng hoặc bỏ trống); không có thì userId trong body phải là
+     * thành viên hội thoại (ReceiptService kiểm tra).
+     */
+    public record AckRequest(String conversationId, String userId, List<String> messageIds) {}
+
+    private final ReceiptService receiptService;
+
+    public ReceiptController(ReceiptService receiptService) {
+        this.receiptService = receiptService;
+    }
+
+    // 📩 STOMP: /app/read và /app/delivered
+    @MessageMapping("/read")
+    public void readFrame(@Payload AckRequest request, Principal principal) {
+        ackFrame(request, principal, MessageStatus.READ);
+    }
+
+    @MessageMapping("/delivered")
+    public void deliveredFrame(@Payload AckRequest request, Principal principal) {
+        ackFrame(request, principal, MessageStatus.DELIVERED);
+    }
+
+    private void ackFrame(AckRequest request, Principal principal, String status) {
+        String userId = resolveUser(request, principal);
+        if (userId == null || request.conversationId() == null) {
+            System.err.println("Receipt frame thiếu userId/conversationId hoặc userId không khớp principal");
+            return;
+        }
+        try {
+            receiptService.ack(request.conversationId(), userId, status, request.messageIds());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Receipt frame bị từ chối: " + e.getMessage());
+        }
+    }
+
+    @PostMapping("/{conversationId}/{status}")
+    public ResponseEntity<?> ack(
+            @PathVariable String conversationId,
+            @PathVariable String status,
+            @RequestBody AckRequest request,
+            Principal principal
+    ) {
+        String userId = resolveUser(request, principal);
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of(
+                    "success", false,
+                    "error", "userId không khớp người dùng đã xác thực"
+            ));
+        }
+        try {
+            boolean accepted = receiptService.ack(conversationId, userId, status, request.messageIds());
+            return ResponseEntity.accepted().body(Map.of("success", accepted));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "error", e.getMessage()
+            ));
+        }
+    }
+
+    // Principal là nguồn tin cậy; userId trong body chỉ dùng khi không có principal
+    private static String resolveUser(AckRequest request, Principal principal) {
+        if (principal == null) return request.userId();
+        if (request.userId() != null && !request.userId().equals(principal.getName())) return null;
+        return principal.getName();
+    }
+
+    // Mốc delivered/read của mọi người trong hội thoại; client tự suy trạng thái từng tin
+    @GetMapping("/{conversationId}")
+    public ResponseEntity<?> statuses(@PathVariable String conversationId) {
+        return ResponseEntity.ok(receiptService.getStatuses(conversationId));
+    }
+}
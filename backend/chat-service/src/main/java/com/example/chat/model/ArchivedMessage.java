@@ -0,0 +1,36 @@
+package com.example.chat.model;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+
+/**
+ * Dấu vết của tin đã chuyển sang archive (MessageArchiveService): id -> hội thoại + thời điểm,
+ * đủ để tìm đúng segment/block qua sparse index. Ghi cùng câu lệnh DELETE khỏi messages.
+ */
+@Entity
+@Table(name = "archived_messages", indexes = {
+        @Index(name = "idx_archived_messages_conv", columnList = "conversation_id")
+})
+public class ArchivedMessage {
+
+    @Id
+    @Column(name = "id")
+    private String id;
+
+    @Column(name = "conversation_id", nullable = false)
+    private String conversationId;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    public ArchivedMessage() {}
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getConversationId() { return conversationId; }
+    public void setConversationId(String conversationId) { this.conversationId = conversationId; }
+
+    public Instant getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
+}
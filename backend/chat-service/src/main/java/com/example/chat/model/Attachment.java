@@ -0,0 +1,52 @@
+package com.example.chat.model;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+
+/**
+ * Chỉ mục của kho file theo nội dung: sha-256 -> file trên đĩa + số tin nhắn đang tham chiếu.
+ */
+@Entity
+@Table(name = "attachments")
+public class Attachment {
+
+    @Id
+    @Column(name = "hash", length = 64)
+    private String hash;
+
+    // Đường dẫn tương đối trong thư mục uploads, ví dụ images/ab/abcd....jpg
+    @Column(name = "path", nullable = false)
+    private String path;
+
+    @Column(name = "size_bytes", nullable = false)
+    private long sizeBytes;
+
+    @Column(name = "content_type")
+    private String contentType;
+
+    @Column(name = "ref_count", nullable = false)
+    private int refCount;
+
+    @Column(name = "created_at")
+    private Instant createdAt;
+
+    public Attachment() {}
+
+    public String getHash() { return hash; }
+    public void setHash(String hash) { this.hash = hash; }
+
+    public String getPath() { return path; }
+    public void setPath(String path) { this.path = path; }
+
+    public long getSizeBytes() { return sizeBytes; }
+    public void setSizeBytes(long sizeBytes) { this.sizeBytes = sizeBytes; }
+
+    public String getContentType() { return contentType; }
+    public void setContentType(String contentType) { this.contentType = contentType; }
+
+    public int getRefCount() { return refCount; }
+    public void setRefCount(int refCount) { this.refCount = refCount; }
+
+    public Instant getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
+}
@@ -1,42 +1,54 @@
 package com.example.chat.model;
 
-import jakarta.persistence.Entity;
-import jakarta.persistence.Id;
+import jakarta.persistence.*;
 import java.time.Instant;
 
+/**
+ * Hội thoại (1:1 hoặc nhóm). Thành viên nằm ở bảng participants; tin cuối / unread
+ * theo từng user nằm ở inbox_entries.
+ */
 @Entity
+@Table(name = "conversations")
 public class Conversation {
 
     @Id
     private String id;
 
-    private String user1;
-    private String user2;
+    @Column(name = "is_group", nullable = false)
+    private boolean group;
 
-    private String lastMessage;
-    private Instant lastTime;
+    // Tên nhóm (null với hội thoại 1:1)
+    @Column(name = "name")
+    private String name;
+
+    @Column(name = "created_by")
+    private String createdBy;
+
+    @Column(name = "created_at")
+    private Instant createdAt;
 
     public Conversation() {}
 
-    public Conversation(String id, String user1, String user2) {
+    public Conversation(String id, boolean group, String name, String createdBy) {
         this.id = id;
-        this.user1 = user1;
-        this.user2 = user2;
-        this.lastTime = Instant.now();
+        this.group = group;
+        this.name = name;
+        this.createdBy = createdBy;
+        this.createdAt = Instant.now();
     }
 
     public String getId() { return id; }
     public void setId(String id) { this.id = id; }
 
-    public String getUser1() { return user1; }
-    public void setUser1(String user1) { this.user1 = user1; }
+    public boolean isGroup() { return group; }
+    public void setGroup(boolean group) { this.group = group; }
 
-    public String getUser2() { return user2; }
-    public void setUser2(String user2) { this.user2 = user2; }
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
 
-    public String getLastMessage() { return lastMessage; }
-    public void setLastMessage(String lastMessage) { this.lastMessage = lastMessage; }
+    public String getCreatedBy() { return createdBy; }
+    public void setCreatedBy(String createdBy) { this.createdBy = createdBy; }
 
-    public Instant getLastTime() { return lastTime; }
-    public void setLastTime(Instant lastTime) { this.lastTime = lastTime; }
+    public Instant getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
 }
@@ -0,0 +1,102 @@
+package com.example.chat.model;
+
+import jakarta.persistence.*;
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * Read model cho danh sách hội thoại: mỗi (user, conversation) một dòng,
+ * được MessageService cập nhật khi gửi / thu hồi / xoá tin nhắn.
+ */
+@Entity
+@IdClass(InboxEntry.Key.class)
+@Table(name = "inbox_entries", indexes = {
+        @Index(name = "idx_inbox_user_last_time", columnList = "user_id, last_time DESC, conversation_id DESC")
+})
+public class InboxEntry {
+
+    @Id
+    @Column(name = "user_id", nullable = false)
+    private String userId;
+
+    @Id
+    @Column(name = "conversation_id", nullable = false)
+    private String conversationId;
+
+    @Column(name = "last_message_id")
+    private String lastMessageId;
+
+    @Column(name = "last_sender_id")
+    private String lastSenderId;
+
+    @Column(name = "last_message", columnDefinition = "text")
+    private String lastMessage;
+
+    @Column(name = "last_type")
+    private String lastType;
+
+    @Column(name = "last_time")
+    private Instant lastTime;
+
+    @Column(name = "last_recalled", nullable = false)
+    private boolean lastRecalled;
+
+    @Column(name = "unread_count", nullable = false)
+    private int unreadCount;
+
+    public InboxEntry() {}
+
+    public String getUserId() { return userId; }
+    public void setUserId(String userId) { this.userId = userId; }
+
+    public String getConversationId() { return conversationId; }
+    public void setConversationId(String conversationId) { this.conversationId = conversationId; }
+
+    public String getLastMessageId() { return lastMessageId; }
+    public void setLastMessageId(String lastMessageId) { this.lastMessageId = lastMessageId; }
+
+    public String getLastSenderId() { return lastSenderId; }
+    public void setLastSenderId(String lastSenderId) { this.lastSenderId = lastSenderId; }
+
+    public String getLastMessage() { return lastMessage; }
+    public void setLastMessage(String lastMessage) { this.lastMessage = lastMessage; }
+
+    public String getLastType() { return lastType; }
+    public void setLastType(String lastType) { this.lastType = lastType; }
+
+    public Instant getLastTime() { return lastTime; }
+    public void setLastTime(Instant lastTime) { this.lastTime = lastTime; }
+
+    public boolean isLastRecalled() { return lastRecalled; }
+    public void setLastRecalled(boolean lastRecalled) { this.lastRecalled = lastRecalled; }
+
+    public int getUnreadCount() { return unreadCount; }
+    public void setUnreadCount(int unreadCount) { this.unreadCount = unreadCount; }
+
+    // Khoá chính kép (user_id, conversation_id)
+    public static class Key implements Serializable {
+        private String userId;
+        private String conversationId;
+
+        public Key() {}
+
+        public Key(String userId, String conversationId) {
+            this.userId = userId;
+            this.conversationId = conversationId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key other)) return false;
+            return Objects.equals(userId, other.userId)
+                    && Objects.equals(conversationId, other.conversationId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(userId, conversationId);
+        }
+    }
+}
@@ -11,6 +11,9 @@ import java.util.UUID;
 @Entity
 @Table(name = "messages", indexes = {
         @Index(columnList = "conversation_id, created_at")
+}, uniqueConstraints = {
+        // Gửi lại cùng x-temp-id không tạo dòng mới (NULL không bị ràng buộc)
+        @UniqueConstraint(name = "uk_messages_sender_temp_id", columnNames = {"sender_id", "client_temp_id"})
 })
 public class Message {
 
@@ -38,6 +41,10 @@ public class Message {
     @Column(name = "status")
     private String status;
 
+    // x-temp-id của client, dùng cho gửi idempotent
+    @Column(name = "client_temp_id")
+    private String clientTempId;
+
     // getter
     public String getStatus() { return status; }
 
@@ -86,6 +93,9 @@ public class Message {
     public String getAttachmentUrl() { return attachmentUrl; }
     public void setAttachmentUrl(String attachmentUrl) { this.attachmentUrl = attachmentUrl; }
 
+    public String getClientTempId() { return clientTempId; }
+    public void setClientTempId(String clientTempId) { this.clientTempId = clientTempId; }
+
     public Instant getCreatedAt() { return createdAt; }
     public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
 
@@ -0,0 +1,52 @@
+package com.example.chat.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.time.Instant;
+
+/**
+ * Sự kiện "tin mới" trên WebSocket và topic Kafka message.created, tách khỏi entity JPA.
+ *
+ * v là phiên bản schema: thêm field thì giữ nguyên v (consumer bỏ qua field lạ),
+ * đổi nghĩa hoặc bỏ field thì tăng SCHEMA_VERSION. Record cũ (entity Message dạng JSON,
+ * không có v) vẫn đọc được với v = 0.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record MessageCreatedEvent(int v,
+                                  String id,
+                                  String conversationId,
+                                  String senderId,
+                                  String receiverId,
+                                  String type,
+                                  String content,
+                                  String attachmentUrl,
+                                  String status,
+                                  String clientTempId,
+                                  Instant createdAt) {
+
+    public static final int SCHEMA_VERSION = 1;
+
+    public static MessageCreatedEvent of(Message m) {
+        return new MessageCreatedEvent(SCHEMA_VERSION, m.getId(), m.getConversationId(), m.getSenderId(),
+                m.getReceiverId(), m.getType(), m.getContent(), m.getAttachmentUrl(), m.getStatus(),
+                m.getClientTempId(), m.getCreatedAt());
+    }
+
+    public Message toMessage() {
+        Message m = new Message();
+        m.setId(id);
+        m.setConversationId(conversationId);
+        m.setSenderId(senderId);
+        m.setReceiverId(receiverId);
+        m.setType(type);
+        m.setContent(content);
+        m.setAttachmentUrl(attachmentUrl);
+        m.setStatus(status);
+        m.setClientTempId(clientTempId);
+        m.setCreatedAt(createdAt);
+        m.setRecalled(false);
+        return m;
+    }
+}
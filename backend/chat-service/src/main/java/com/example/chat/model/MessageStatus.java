@@ -0,0 +1,67 @@
+package com.example.chat.model;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+
+/**
+ * Mốc đã nhận / đã đọc của một user trong một hội thoại: mọi tin có
+ * (created_at, id) <= (message_time, message_id) được coi là đã ở trạng thái này.
+ * Mỗi (conversation, user, status) chỉ một dòng nên đọc 500 tin = cập nhật 1 dòng.
+ */
+@Entity
+@Table(name = "message_status", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_message_status_conv_user_status",
+                columnNames = {"conversation_id", "user_id", "status"})
+})
+public class MessageStatus {
+
+    public static final String DELIVERED = "delivered";
+    public static final String READ = "read";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "conversation_id")
+    private String conversationId;
+
+    @Column(name = "user_id")
+    private String userId;
+
+    // delivered | read
+    @Column(name = "status")
+    private String status;
+
+    // Tin mới nhất đã đạt trạng thái này
+    @Column(name = "message_id")
+    private String messageId;
+
+    @Column(name = "message_time")
+    private Instant messageTime;
+
+    @Column(name = "updated_at")
+    private Instant updatedAt;
+
+    public MessageStatus() {}
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public String getConversationId() { return conversationId; }
+    public void setConversationId(String conversationId) { this.conversationId = conversationId; }
+
+    public String getUserId() { return userId; }
+    public void setUserId(String userId) { this.userId = userId; }
+
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+
+    public String getMessageId() { return messageId; }
+    public void setMessageId(String messageId) { this.messageId = messageId; }
+
+    public Instant getMessageTime() { return messageTime; }
+    public void setMessageTime(Instant messageTime) { this.messageTime = messageTime; }
+
+    public Instant getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(Instant updatedAt) { this.updatedAt = updatedAt; }
+}
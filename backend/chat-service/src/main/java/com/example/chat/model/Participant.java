@@ -0,0 +1,75 @@
+package com.example.chat.model;
+
+import jakarta.persistence.*;
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * Thành viên của hội thoại. Khoá chính (conversation_id, user_id) phục vụ lấy danh sách
+ * thành viên; index theo user_id phục vụ tra các hội thoại của một user.
+ */
+@Entity
+@IdClass(Participant.Key.class)
+@Table(name = "participants", indexes = {
+        @Index(name = "idx_participants_user", columnList = "user_id")
+})
+public class Participant {
+
+    public static final String OWNER = "owner";
+    public static final String MEMBER = "member";
+
+    @Id
+    @Column(name = "conversation_id", nullable = false)
+    private String conversationId;
+
+    @Id
+    @Column(name = "user_id", nullable = false)
+    private String userId;
+
+    @Column(name = "role")
+    private String role;
+
+    @Column(name = "joined_at")
+    private Instant joinedAt;
+
+    public Participant() {}
+
+    public String getConversationId() { return conversationId; }
+    public void setConversationId(String conversationId) { this.conversationId = conversationId; }
+
+    public String getUserId() { return userId; }
+    public void setUserId(String userId) { this.userId = userId; }
+
+    public String getRole() { return role; }
+    public void setRole(String role) { this.role = role; }
+
+    public Instant getJoinedAt() { return joinedAt; }
+    public void setJoinedAt(Instant joinedAt) { this.joinedAt = joinedAt; }
+
+    // Khoá chính kép (conversation_id, user_id)
+    public static class Key implements Serializable {
+        private String conversationId;
+        private String userId;
+
+        public Key() {}
+
+        public Key(String conversationId, String userId) {
+            this.conversationId = conversationId;
+            this.userId = userId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key other)) return false;
+            return Objects.equals(conversationId, other.conversationId)
+                    && Objects.equals(userId, other.userId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(conversationId, userId);
+        }
+    }
+}
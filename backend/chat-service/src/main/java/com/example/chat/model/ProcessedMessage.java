@@ -0,0 +1,27 @@
+package com.example.chat.model;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+
+/**
+ * Đánh dấu message.created đã được consumer xử lý (idempotency theo message id).
+ */
+@Entity
+@Table(name = "processed_messages")
+public class ProcessedMessage {
+
+    @Id
+    @Column(name = "message_id")
+    private String messageId;
+
+    @Column(name = "processed_at", nullable = false)
+    private Instant processedAt;
+
+    public ProcessedMessage() {}
+
+    public String getMessageId() { return messageId; }
+    public void setMessageId(String messageId) { this.messageId = messageId; }
+
+    public Instant getProcessedAt() { return processedAt; }
+    public void setProcessedAt(Instant processedAt) { this.processedAt = processedAt; }
+}
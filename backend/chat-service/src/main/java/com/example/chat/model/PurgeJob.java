@@ -0,0 +1,77 @@
+package com.example.chat.model;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+
+/**
+ * Job xoá cả hội thoại (ConversationPurgeService). Lưu trong Postgres để node nào
+ * cũng trả lời được GET /conversation/purge/{jobId}, không chỉ node đang chạy job.
+ */
+@Entity
+@Table(name = "conversation_purge_jobs", indexes = {
+        @Index(name = "idx_purge_jobs_conv_state", columnList = "conversation_id, state")
+})
+public class PurgeJob {
+
+    public enum State { RUNNING, DONE, FAILED }
+
+    @Id
+    @Column(name = "job_id")
+    private String jobId;
+
+    @Column(name = "conversation_id", nullable = false)
+    private String conversationId;
+
+    // Mọi tin có created_at <= cutoff bị xoá
+    @Column(name = "cutoff", nullable = false)
+    private Instant cutoff;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "state", nullable = false)
+    private State state;
+
+    @Column(name = "deleted", nullable = false)
+    private long deleted;
+
+    @Column(name = "started_at", nullable = false)
+    private Instant startedAt;
+
+    // Cập nhật sau mỗi khúc: job RUNNING lâu không đổi là của node đã chết
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+
+    @Column(name = "finished_at")
+    private Instant finishedAt;
+
+    @Column(name = "error", columnDefinition = "TEXT")
+    private String error;
+
+    public PurgeJob() {}
+
+    public String getJobId() { return jobId; }
+    public void setJobId(String jobId) { this.jobId = jobId; }
+
+    public String getConversationId() { return conversationId; }
+    public void setConversationId(String conversationId) { this.conversationId = conversationId; }
+
+    public Instant getCutoff() { return cutoff; }
+    public void setCutoff(Instant cutoff) { this.cutoff = cutoff; }
+
+    public State getState() { return state; }
+    public void setState(State state) { this.state = state; }
+
+    public long getDeleted() { return deleted; }
+    public void setDeleted(long deleted) { this.deleted = deleted; }
+
+    public Instant getStartedAt() { return startedAt; }
+    public void setStartedAt(Instant startedAt) { this.startedAt = startedAt; }
+
+    public Instant getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(Instant updatedAt) { this.updatedAt = updatedAt; }
+
+    public Instant getFinishedAt() { return finishedAt; }
+    public void setFinishedAt(Instant finishedAt) { this.finishedAt = finishedAt; }
+
+    public String getError() { return error; }
+    public void setError(String error) { this.error = error; }
+}
@@ -0,0 +1,35 @@
+package com.example.chat.repository;
+
+import com.example.chat.model.Attachment;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface AttachmentRepository extends JpaRepository<Attachment, String> {
+
+    // Thêm mới với ref_count = 1, hoặc tăng ref_count nếu hash đã có
+    @Modifying
+    @Query(value = "INSERT INTO attachments (hash, path, size_bytes, content_type, ref_count, created_at) " +
+                   "VALUES (:hash, :path, :size, :contentType, 1, now()) " +
+                   "ON CONFLICT (hash) DO UPDATE SET ref_count = attachments.ref_count + 1",
+           nativeQuery = true)
+    int acquire(@Param("hash") String hash,
+                @Param("path") String path,
+                @Param("size") long size,
+                @Param("contentType") String contentType);
+
+    @Modifying
+    @Query("UPDATE Attachment a SET a.refCount = a.refCount - 1 WHERE a.path = :path")
+    int decrement(@Param("path") String path);
+
+    @Modifying
+    @Query("DELETE FROM Attachment a WHERE a.path = :path AND a.refCount <= 0")
+    int deleteIfUnreferenced(@Param("path") String path);
+
+    Optional<Attachment> findByPath(String path);
+}
@@ -2,13 +2,31 @@ package com.example.chat.repository;
 
 import com.example.chat.model.Conversation;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
-import java.util.List;
-
 @Repository
 public interface ConversationRepository extends JpaRepository<Conversation, String> {
 
-    List<Conversation> findByUser1OrUser2OrderByLastTimeDesc(String user1, String user2);
+    // Tạo hội thoại nếu chưa có (hai request đầu tiên chạy song song không lỗi)
+    @Modifying
+    @Query(value = "INSERT INTO conversations (id, is_group, name, created_by, created_at) " +
+                   "VALUES (:id, :group, :name, :createdBy, now()) ON CONFLICT (id) DO NOTHING",
+           nativeQuery = true)
+    int insertIfAbsent(@Param("id") String id,
+                       @Param("group") boolean group,
+                       @Param("name") String name,
+                       @Param("createdBy") String createdBy);
 
+    // Hội thoại 1:1 cũ chỉ có trong inbox_entries (xem ParticipantRepository.backfillDirectFromInbox)
+    @Modifying
+    @Query(value = "INSERT INTO conversations (id, is_group, created_at) " +
+                   "SELECT DISTINCT i.conversation_id, false, now() FROM inbox_entries i " +
+                   "WHERE i.conversation_id NOT LIKE 'group\\_%' " +
+                   "AND NOT EXISTS (SELECT 1 FROM conversations c WHERE c.id = i.conversation_id) " +
+                   "ON CONFLICT (id) DO NOTHING",
+           nativeQuery = true)
+    int backfillDirectFromInbox();
 }
@@ -0,0 +1,137 @@
+package com.example.chat.repository;
+
+import com.example.chat.model.InboxEntry;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface InboxEntryRepository extends JpaRepository<InboxEntry, InboxEntry.Key> {
+
+    // Trang đầu tiên: range scan trên index (user_id, last_time DESC, conversation_id DESC)
+    @Query("SELECT e FROM InboxEntry e WHERE e.userId = :userId " +
+           "ORDER BY e.lastTime DESC, e.conversationId DESC")
+    List<InboxEntry> findFirstPage(@Param("userId") String userId, Pageable page);
+
+    // Các trang sau: keyset theo (lastTime, conversationId) của phần tử cuối trang trước
+    @Query("SELECT e FROM InboxEntry e WHERE e.userId = :userId " +
+           "AND (e.lastTime < :lastTime OR (e.lastTime = :lastTime AND e.conversationId < :conversationId)) " +
+           "ORDER BY e.lastTime DESC, e.conversationId DESC")
+    List<InboxEntry> findPageBefore(@Param("userId") String userId,
+                                    @Param("lastTime") Instant lastTime,
+                                    @Param("conversationId") String conversationId,
+                                    Pageable page);
+
+    /**
+     * Upsert khi có tin nhắn mới cho mọi thành viên (bảng participants) trong một câu lệnh.
+     * last_* chỉ bị ghi đè nếu tin mới hơn tin hiện tại,
+     * unread_count luôn được cộng dồn (0 với người gửi, 1 với người nhận).
+     */
+    @Modifying
+    @Query(value = "INSERT INTO inbox_entries (user_id, conversation_id, last_message_id, last_sender_id, " +
+                   "last_message, last_type, last_time, last_recalled, unread_count) " +
+                   "SELECT p.user_id, p.conversation_id, :messageId, :senderId, :content, :type, :createdAt, false, " +
+                   "CASE WHEN p.user_id = :senderId THEN 0 ELSE 1 END " +
+                   "FROM participants p WHERE p.conversation_id = :conversationId " +
+                   "ON CONFLICT (user_id, conversation_id) DO UPDATE SET " +
+                   "last_message_id = CASE WHEN inbox_entries.last_time IS NULL OR inbox_entries.last_time <= EXCLUDED.last_time " +
+                   "  THEN EXCLUDED.last_message_id ELSE inbox_entries.last_message_id END, " +
+                   "last_sender_id = CASE WHEN inbox_entries.last_time IS NULL OR inbox_entries.last_time <= EXCLUDED.last_time " +
+                   "  THEN EXCLUDED.last_sender_id ELSE inbox_entries.last_sender_id END, " +
+                   "last_message = CASE WHEN inbox_entries.last_time IS NULL OR inbox_entries.last_time <= EXCLUDED.last_time " +
+                   "  THEN EXCLUDED.last_message ELSE inbox_entries.last_message END, " +
+                   "last_type = CASE WHEN inbox_entries.last_time IS NULL OR inbox_entries.last_time <= EXCLUDED.last_time " +
+                   "  THEN EXCLUDED.last_type ELSE inbox_entries.last_type END, " +
+                   "last_recalled = CASE WHEN inbox_entries.last_time IS NULL OR inbox_entries.last_time <= EXCLUDED.last_time " +
+                   "  THEN false ELSE inbox_entries.last_recalled END, " +
+                   "last_time = GREATEST(inbox_entries.last_time, EXCLUDED.last_time), " +
+                   "unread_count = inbox_entries.unread_count + EXCLUDED.unread_count",
+           nativeQuery = true)
+    int upsertLastMessage(@Param("conversationId") String conversationId,
+                          @Param("messageId") String messageId,
+                          @Param("senderId") String senderId,
+                          @Param("content") String content,
+                          @Param("type") String type,
+                          @Param("createdAt") Instant createdAt);
+
+    @Modifying
+    @Query("UPDATE InboxEntry e SET e.lastRecalled = true " +
+           "WHERE e.conversationId = :conversationId AND e.lastMessageId = :messageId")
+    int markLastRecalled(@Param("conversationId") String conversationId,
+                         @Param("messageId") String messageId);
+
+    // Trừ unread của những người nhận mà mốc read (message_status) chưa tới tin bị xoá
+    @Modifying
+    @Query(value = "UPDATE inbox_entries e SET unread_count = GREATEST(e.unread_count - 1, 0) " +
+                   "WHERE e.conversation_id = :conversationId AND e.user_id <> :senderId " +
+                   "AND NOT EXISTS (SELECT 1 FROM message_status s " +
+                   "WHERE s.conversation_id = e.conversation_id AND s.user_id = e.user_id AND s.status = 'read' " +
+                   "AND (s.message_time, s.message_id) >= (:createdAt, :messageId))",
+           nativeQuery = true)
+    int decrementUnread(@Param("conversationId") String conversationId,
+                        @Param("senderId") String senderId,
+                        @Param("messageId") String messageId,
+                        @Param("createdAt") Instant createdAt);
+
+    // Thay tin cuối cùng (khi tin cuối bị xoá) bằng tin mới nhất còn lại
+    @Modifying
+    @Query("UPDATE InboxEntry e SET e.lastMessageId = :messageId, e.lastSenderId = :senderId, " +
+           "e.lastMessage = :content, e.lastType = :type, e.lastTime = :createdAt, e.lastRecalled = :recalled " +
+           "WHERE e.conversationId = :conversationId AND e.lastMessageId = :deletedMessageId")
+    int replaceLastMessage(@Param("conversationId") String conversationId,
+                           @Param("deletedMessageId") String deletedMessageId,
+                           @Param("messageId") String messageId,
+                           @Param("senderId") String senderId,
+                           @Param("content") String content,
+                           @Param("type") String type,
+                           @Param("createdAt") Instant createdAt,
+                           @Param("recalled") boolean recalled);
+
+    @Modifying
+    @Query("UPDATE InboxEntry e SET e.unreadCount = 0 " +
+           "WHERE e.userId = :userId AND e.conversationId = :conversationId")
+    int resetUnread(@Param("userId") String userId,
+                    @Param("conversationId") String conversationId);
+
+    @Modifying
+    @Query("DELETE FROM InboxEntry e WHERE e.conversationId = :conversationId")
+    int deleteByConversationId(@Param("conversationId") String conversationId);
+
+    // Thành viên rời nhóm
+    @Modifying
+    @Query("DELETE FROM InboxEntry e WHERE e.userId = :userId AND e.conversationId = :conversationId")
+    int deleteEntry(@Param("userId") String userId,
+                    @Param("conversationId") String conversationId);
+
+    /**
+     * Dựng lại toàn bộ inbox từ bảng messages (chạy một lần khi bảng inbox còn trống).
+     * Người tham gia = sender, receiver, hoặc 2 phần đầu của conversationId ("user1-user2-chat").
+     */
+    @Modifying
+    @Query(value = "WITH participants AS ( " +
+                   "  SELECT conversation_id, sender_id AS user_id FROM messages " +
+                   "  UNION SELECT conversation_id, receiver_id FROM messages WHERE receiver_id IS NOT NULL " +
+                   "  UNION SELECT conversation_id, split_part(conversation_id, '-', 1) FROM messages " +
+                   "    WHERE receiver_id IS NULL AND split_part(conversation_id, '-', 2) <> '' " +
+                   "  UNION SELECT conversation_id, split_part(conversation_id, '-', 2) FROM messages " +
+                   "    WHERE receiver_id IS NULL AND split_part(conversation_id, '-', 2) <> '' " +
+                   "), last_messages AS ( " +
+                   "  SELECT DISTINCT ON (conversation_id) * FROM messages ORDER BY conversation_id, created_at DESC " +
+                   ") " +
+                   "INSERT INTO inbox_entries (user_id, conversation_id, last_message_id, last_sender_id, " +
+                   "last_message, last_type, last_time, last_recalled, unread_count) " +
+                   "SELECT p.user_id, p.conversation_id, l.id, l.sender_id, l.content, l.type, l.created_at, " +
+                   "COALESCE(l.recalled, false), " +
+                   "(SELECT count(*) FROM messages m WHERE m.conversation_id = p.conversation_id " +
+                   "  AND m.sender_id <> p.user_id AND (m.status IS NULL OR m.status <> 'read')) " +
+                   "FROM participants p JOIN last_messages l ON l.conversation_id = p.conversation_id " +
+                   "ON CONFLICT (user_id, conversation_id) DO NOTHING",
+           nativeQuery = true)
+    int rebuildFromMessages();
+}
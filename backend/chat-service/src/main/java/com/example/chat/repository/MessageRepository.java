@@ -1,12 +1,25 @@
 package com.example.chat.repository;
 
 import com.example.chat.model.Message;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import jakarta.persistence.QueryHint;
+
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
 
 @Repository
 public interface MessageRepository extends JpaRepository<Message, String> {
@@ -15,9 +28,110 @@ public interface MessageRepository extends JpaRepository<Message, String> {
 
     List<Message> findTop100ByConversationIdOrderByCreatedAtAsc(String conversationId);
 
+    Optional<Message> findFirstByConversationIdOrderByCreatedAtDesc(String conversationId);
+
+    // Keyset pagination trên index (conversation_id, created_at), id dùng để phá hoà
+    @Query("SELECT m FROM Message m WHERE m.conversationId = :conversationId " +
+           "ORDER BY m.createdAt DESC, m.id DESC")
+    List<Message> findLatestPage(@Param("conversationId") String conversationId, Pageable page);
+
+    @Query("SELECT m FROM Message m WHERE m.conversationId = :conversationId " +
+           "AND (m.createdAt < :createdAt OR (m.createdAt = :createdAt AND m.id < :id)) " +
+           "ORDER BY m.createdAt DESC, m.id DESC")
+    List<Message> findPageBefore(@Param("conversationId") String conversationId,
+                                 @Param("createdAt") Instant createdAt,
+                                 @Param("id") String id,
+                                 Pageable page);
+
+    @Query("SELECT m FROM Message m WHERE m.conversationId = :conversationId " +
+           "AND (m.createdAt > :createdAt OR (m.createdAt = :createdAt AND m.id > :id)) " +
+           "ORDER BY m.createdAt ASC, m.id ASC")
+    List<Message> findPageAfter(@Param("conversationId") String conversationId,
+                                @Param("createdAt") Instant createdAt,
+                                @Param("id") String id,
+                                Pageable page);
+
+    // Bảng phân vùng theo tháng: thêm cận dưới created_at để chỉ quét partition của cửa sổ
+    @Query("SELECT m FROM Message m WHERE m.conversationId = :conversationId AND m.createdAt >= :since " +
+           "ORDER BY m.createdAt DESC, m.id DESC")
+    List<Message> findLatestPageSince(@Param("conversationId") String conversationId,
+                                      @Param("since") Instant since,
+                                      Pageable page);
+
+    @Query("SELECT m FROM Message m WHERE m.conversationId = :conversationId AND m.createdAt >= :since " +
+           "AND (m.createdAt < :createdAt OR (m.createdAt = :createdAt AND m.id < :id)) " +
+           "ORDER BY m.createdAt DESC, m.id DESC")
+    List<Message> findPageBeforeSince(@Param("conversationId") String conversationId,
+                                      @Param("createdAt") Instant createdAt,
+                                      @Param("id") String id,
+                                      @Param("since") Instant since,
+                                      Pageable page);
+
+    // Archive (MessageArchiveService): hội thoại còn tin cũ hơn cutoff, và từng lô tin đó theo thứ tự
+    @Query("SELECT DISTINCT m.conversationId FROM Message m WHERE m.createdAt < :cutoff")
+    List<String> findConversationIdsBefore(@Param("cutoff") Instant cutoff);
+
+    @Query("SELECT m FROM Message m WHERE m.conversationId = :conversationId AND m.createdAt < :cutoff " +
+           "ORDER BY m.createdAt ASC, m.id ASC")
+    List<Message> findArchivable(@Param("conversationId") String conversationId,
+                                 @Param("cutoff") Instant cutoff,
+                                 Pageable page);
+
+    // Gửi idempotent: tin đã lưu với cùng (senderId, x-temp-id)
+    Optional<Message> findBySenderIdAndClientTempId(String senderId, String clientTempId);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Message m SET m.attachmentUrl = :url WHERE m.id = :id")
+    int updateAttachmentUrl(@Param("id") String id, @Param("url") String url);
+
+    // Receipts: tin mới nhất trong các id được ack
+    @Query("SELECT m FROM Message m WHERE m.conversationId = :conversationId AND m.id IN :ids " +
+           "ORDER BY m.createdAt DESC, m.id DESC")
+    List<Message> findLatestAmong(@Param("conversationId") String conversationId,
+                                  @Param("ids") Collection<String> ids,
+                                  Pageable page);
+
+    // Full-text (xem MessageSearchService): GIN trên search_vector, giới hạn theo hội thoại user đang là thành viên
+    @Query(value = "SELECT m.* FROM messages m " +
+                   "WHERE m.search_vector @@ to_tsquery('simple', :tsQuery) " +
+                   "AND m.conversation_id IN (SELECT p.conversation_id FROM participants p WHERE p.user_id = :userId) " +
+                   "AND (:conversationId = '' OR m.conversation_id = :conversationId) " +
+                   "ORDER BY m.created_at DESC, m.id DESC LIMIT :limit",
+           nativeQuery = true)
+    List<Message> searchFirstPage(@Param("userId") String userId,
+                                  @Param("tsQuery") String tsQuery,
+                                  @Param("conversationId") String conversationId,
+                                  @Param("limit") int limit);
+
+    @Query(value = "SELECT m.* FROM messages m " +
+                   "WHERE m.search_vector @@ to_tsquery('simple', :tsQuery) " +
+                   "AND m.conversation_id IN (SELECT p.conversation_id FROM participants p WHERE p.user_id = :userId) " +
+                   "AND (:conversationId = '' OR m.conversation_id = :conversationId) " +
+                   "AND (m.created_at, m.id) < (:createdAt, :id) " +
+                   "ORDER BY m.created_at DESC, m.id DESC LIMIT :limit",
+           nativeQuery = true)
+    List<Message> searchPageBefore(@Param("userId") String userId,
+                                   @Param("tsQuery") String tsQuery,
+                                   @Param("conversationId") String conversationId,
+                                   @Param("createdAt") Instant createdAt,
+                                   @Param("id") String id,
+                                   @Param("limit") int limit);
+
     @Query("SELECT m FROM Message m WHERE m.senderId = :userId OR m.receiverId = :userId ORDER BY m.createdAt DESC")
     List<Message> findTop100BySenderIdOrReceiverIdOrderByCreatedAtDesc(@Param("userId") String userId);
 
-    // ✅ Thêm method này để deleteAllByConversationId hoạt động
-    List<Message> findByConversationId(String conversationId);
+    // Export: đọc forward-only theo từng lô fetch size, không nạp cả bảng vào heap
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READ_ONLY, value = "true")})
+    @Query("SELECT m FROM Message m WHERE m.conversationId = :conversationId " +
+           "AND (:from IS NULL OR m.createdAt >= :from) AND (:to IS NULL OR m.createdAt < :to) " +
+           "ORDER BY m.createdAt ASC, m.id ASC")
+    Stream<Message> streamByConversation(@Param("conversationId") String conversationId,
+                                         @Param("from") Instant from,
+                                         @Param("to") Instant to);
+
+    // Không ORDER BY để Postgres trả dòng đầu tiên ngay, không phải sort toàn bảng
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READ_ONLY, value = "true")})
+    @Query("SELECT m FROM Message m WHERE (:from IS NULL OR m.createdAt >= :from) AND (:to IS NULL OR m.createdAt < :to)")
+    Stream<Message> streamByTimeRange(@Param("from") Instant from, @Param("to") Instant to);
 }
@@ -0,0 +1,13 @@
+package com.example.chat.repository;
+
+import com.example.chat.model.MessageStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface MessageStatusRepository extends JpaRepository<MessageStatus, Long> {
+
+    List<MessageStatus> findByConversationId(String conversationId);
+}
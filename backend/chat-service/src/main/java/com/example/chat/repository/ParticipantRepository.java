@@ -0,0 +1,40 @@
+package com.example.chat.repository;
+
+import com.example.chat.model.Participant;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ParticipantRepository extends JpaRepository<Participant, Participant.Key> {
+
+    List<Participant> findByConversationIdIn(Collection<String> conversationIds);
+
+    @Modifying
+    @Query(value = "INSERT INTO participants (conversation_id, user_id, role, joined_at) " +
+                   "VALUES (:conversationId, :userId, :role, now()) " +
+                   "ON CONFLICT (conversation_id, user_id) DO NOTHING",
+           nativeQuery = true)
+    int insertIfAbsent(@Param("conversationId") String conversationId,
+                       @Param("userId") String userId,
+                       @Param("role") String role);
+
+    // Hội thoại 1:1 cũ chỉ có trong inbox_entries (trước khi có bảng participants)
+    @Modifying
+    @Query(value = "INSERT INTO participants (conversation_id, user_id, role, joined_at) " +
+                   "SELECT i.conversation_id, i.user_id, :role, now() FROM inbox_entries i " +
+                   "WHERE i.conversation_id NOT LIKE 'group\\_%' AND NOT EXISTS (SELECT 1 FROM participants p " +
+                   "WHERE p.conversation_id = i.conversation_id AND p.user_id = i.user_id) " +
+                   "ON CONFLICT (conversation_id, user_id) DO NOTHING",
+           nativeQuery = true)
+    int backfillDirectFromInbox(@Param("role") String role);
+
+    @Modifying
+    @Query("DELETE FROM Participant p WHERE p.conversationId = :conversationId AND p.userId = :userId")
+    int deleteMember(@Param("conversationId") String conversationId, @Param("userId") String userId);
+}
@@ -0,0 +1,25 @@
+package com.example.chat.repository;
+
+import com.example.chat.model.ProcessedMessage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+
+@Repository
+public interface ProcessedMessageRepository extends JpaRepository<ProcessedMessage, String> {
+
+    // 1 = lần đầu thấy message này, 0 = đã xử lý rồi (redelivery)
+    @Modifying
+    @Query(value = "INSERT INTO processed_messages (message_id, processed_at) VALUES (:messageId, now()) " +
+                   "ON CONFLICT (message_id) DO NOTHING",
+           nativeQuery = true)
+    int claim(@Param("messageId") String messageId);
+
+    @Modifying
+    @Query("DELETE FROM ProcessedMessage p WHERE p.processedAt < :cutoff")
+    int deleteOlderThan(@Param("cutoff") Instant cutoff);
+}
@@ -0,0 +1,26 @@
+package com.example.chat.repository;
+
+import com.example.chat.model.PurgeJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Optional;
+
+@Repository
+public interface PurgeJobRepository extends JpaRepository<PurgeJob, String> {
+
+    // Job đang chạy (trên bất kỳ node nào) của hội thoại, bỏ qua job đã lâu không cập nhật
+    Optional<PurgeJob> findFirstByConversationIdAndStateAndUpdatedAtAfter(String conversationId,
+                                                                         PurgeJob.State state,
+                                                                         Instant updatedAfter);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM PurgeJob j WHERE j.finishedAt < :cutoff")
+    int deleteFinishedBefore(@Param("cutoff") Instant cutoff);
+}
@@ -0,0 +1,159 @@
+package com.example.chat.service;
+
+import com.example.chat.repository.AttachmentRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.*;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+
+/**
+ * Kho ảnh đánh địa chỉ theo nội dung.
+ *
+ * Upload được ghi một lượt vào file tạm trong khi tính sha-256; sau đó tăng ref_count
+ * trong bảng attachments rồi mới rename vào images/{2 ký tự đầu}/{hash}.{ext}. Nếu file
+ * đích đã có (ảnh được chuyển tiếp nhiều lần) thì bỏ file tạm, không ghi thêm byte nào.
+ * Xoá tin nhắn ảnh gọi release(); ref_count về 0 thì xoá dòng chỉ mục, file và các variant.
+ */
+@Service
+public class AttachmentStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(AttachmentStore.class);
+
+    public static final String URL_PREFIX = "/uploads/";
+
+    private static final Map<String, String> EXTENSIONS = Map.of(
+            "image/jpeg", ".jpg",
+            "image/png", ".png",
+            "image/gif", ".gif",
+            "image/webp", ".webp",
+            "image/heic", ".heic"
+    );
+
+    public record StoredFile(String hash, String url, long size, boolean duplicate) {}
+
+    private final AttachmentRepository attachmentRepo;
+    private final TransactionTemplate tx;
+    private final Path root;
+    private final Path tmpDir;
+
+    public AttachmentStore(AttachmentRepository attachmentRepo,
+                           PlatformTransactionManager transactionManager,
+                           @Value("${chat.attachments.root:uploads}") String root) throws IOException {
+        this.attachmentRepo = attachmentRepo;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.root = Paths.get(root).toAbsolutePath().normalize();
+        this.tmpDir = this.root.resolve("tmp");
+        Files.createDirectories(tmpDir);
+    }
+
+    public StoredFile storeImage(InputStream in, String contentType) throws IOException {
+        String extension = EXTENSIONS.getOrDefault(contentType, ".img");
+
+        Path tmp = Files.createTempFile(tmpDir, "upload-", ".part");
+        try {
+            MessageDigest digest = sha256();
+            long size;
+            try (OutputStream out = new DigestOutputStream(Files.newOutputStream(tmp), digest)) {
+                size = in.transferTo(out);
+            }
+            String hash = HexFormat.of().formatHex(digest.digest());
+            String relative = "images/" + hash.substring(0, 2) + "/" + hash + extension;
+            Path target = root.resolve(relative);
+
+            // Ghi chỉ mục trước: release() đồng thời sẽ thấy ref_count > 0 và không xoá file
+            tx.executeWithoutResult(status -> attachmentRepo.acquire(hash, relative, size, contentType));
+
+            boolean duplicate = Files.exists(target);
+            if (!duplicate) {
+                try {
+                    Files.createDirectories(target.getParent());
+                    Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+                } catch (FileAlreadyExistsException e) {
+                    duplicate = true;
+                } catch (IOException e) {
+                    // Chưa có tin nào trỏ tới file: trả lại tham chiếu vừa tăng
+                    release(URL_PREFIX + relative);
+                    throw e;
+                }
+            }
+            return new StoredFile(hash, URL_PREFIX + relative, size, duplicate);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Bỏ một tham chiếu tới file (url dạng /uploads/images/..). Url không thuộc kho thì bỏ qua.
+     */
+    public void release(String url) {
+        if (url == null || !url.startsWith(URL_PREFIX + "images/")) return;
+        String relative = url.substring(URL_PREFIX.length());
+        try {
+            tx.executeWithoutResult(status -> {
+                if (attachmentRepo.decrement(relative) == 0) return;
+                if (attachmentRepo.deleteIfUnreferenced(relative) > 0) {
+                    // Xoá file trong cùng transaction: acquire() đồng thời phải chờ commit này
+                    // rồi mới kiểm tra file đích, nên sẽ tự ghi lại file nếu cần
+                    Path file = root.resolve(relative).normalize();
+                    try {
+                        Files.deleteIfExists(file);
+                        deleteVariants(file);
+                    } catch (IOException e) {
+                        logger.warn("Could not delete attachment file {}: {}", relative, e.toString());
+                    }
+                }
+            });
+        } catch (Exception e) {
+            logger.error("Attachment release failed for {}: {}", url, e.toString(), e);
+        }
+    }
+
+    public Path resolve(String url) {
+        if (url == null || !url.startsWith(URL_PREFIX)) {
+            throw new IllegalArgumentException("Không phải file trong kho: " + url);
+        }
+        Path path = root.resolve(url.substring(URL_PREFIX.length())).normalize();
+        if (!path.startsWith(root)) {
+            throw new IllegalArgumentException("Đường dẫn không hợp lệ: " + url);
+        }
+        return path;
+    }
+
+    public String urlOf(Path file) {
+        return URL_PREFIX + root.relativize(file.toAbsolutePath().normalize()).toString().replace('\\', '/');
+    }
+
+    // Variant do ImageVariantService sinh ra: {hash}_w{width}.jpg cùng thư mục với bản gốc
+    private static void deleteVariants(Path original) {
+        String name = original.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String hash = dot > 0 ? name.substring(0, dot) : name;
+        try (DirectoryStream<Path> variants = Files.newDirectoryStream(original.getParent(), hash + "_w*.jpg")) {
+            for (Path v : variants) {
+                Files.deleteIfExists(v);
+            }
+        } catch (IOException e) {
+            logger.warn("Could not delete variants of {}: {}", name, e.toString());
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
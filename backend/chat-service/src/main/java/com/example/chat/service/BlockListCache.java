@@ -0,0 +1,202 @@
+package com.example.chat.service;
+
+import com.example.chat.repository.BlockedUserRepository;
+import com.example.chat.repository.BlockedUserRepository.BlockPair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Cache danh sách chặn cho đường gửi tin.
+ *
+ * Tầng 1: Bloom filter trên cặp "user|blocked" của toàn bộ bảng blocked_users; phần lớn
+ * câu hỏi "B có bị A chặn không" được trả lời "không" chỉ bằng vài phép băm.
+ * Tầng 2: khi Bloom báo "có thể", tra tập blocked id của user đó (nạp lười từ DB, LRU).
+ * blockUser() trên node này cập nhật ngay; thay đổi từ node khác được nạp tăng dần theo
+ * blocked_at mỗi chat.block-cache.refresh-ms.
+ *
+ * blocked_at được gán trước khi transaction commit, nên một dòng có thể hiện ra sau khi
+ * watermark đã vượt qua nó. Mỗi lần refresh quét lại cửa sổ refresh-overlap-ms trước
+ * watermark; các cặp đã nạp trong cửa sổ được nhớ lại để không đếm (và không áp dụng) hai lần.
+ */
+@Component
+public class BlockListCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlockListCache.class);
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    private final BlockedUserRepository repo;
+    private final TransactionTemplate readOnlyTx;
+    private final long expectedEntries;
+    private final long overlapMillis;
+    private final Map<String, Set<String>> blockedByUser;
+    // Cặp đã nạp có blocked_at trong cửa sổ quét lại -> blocked_at (guarded by this)
+    private Map<String, Instant> recentPairs = new HashMap<>();
+
+    private volatile BloomFilter bloom;
+    private volatile boolean ready;
+    private volatile Instant loadedUntil = Instant.EPOCH;
+    private long entries;
+    private long capacity;
+
+    public BlockListCache(BlockedUserRepository repo,
+                          PlatformTransactionManager txManager,
+                          @Value("${chat.block-cache.expected-entries:100000}") long expectedEntries,
+                          @Value("${chat.block-cache.max-users:50000}") int maxUsers,
+                          @Value("${chat.block-cache.refresh-overlap-ms:120000}") long overlapMillis) {
+        this.repo = repo;
+        this.readOnlyTx = new TransactionTemplate(txManager);
+        this.readOnlyTx.setReadOnly(true);
+        this.expectedEntries = expectedEntries;
+        this.overlapMillis = overlapMillis;
+        this.capacity = expectedEntries;
+        this.bloom = new BloomFilter(expectedEntries, FALSE_POSITIVE_RATE);
+        this.blockedByUser = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Set<String>> eldest) {
+                return size() > maxUsers;
+            }
+        };
+    }
+
+    /**
+     * userId có đang chặn otherUserId không.
+     */
+    public boolean isBlocked(String userId, String otherUserId) {
+        if (userId == null || otherUserId == null) return false;
+        // Chưa nạp xong Bloom: đi thẳng tầng 2 để không trả "không chặn" sai
+        if (ready && !bloom.mightContain(pairKey(userId, otherUserId))) {
+            return false;
+        }
+        return blockedSet(userId).contains(otherUserId);
+    }
+
+    public void onBlocked(String userId, String blockedUserId) {
+        bloom.put(pairKey(userId, blockedUserId));
+        synchronized (blockedByUser) {
+            Set<String> set = blockedByUser.get(userId);
+            if (set != null) {
+                Set<String> copy = new HashSet<>(set);
+                copy.add(blockedUserId);
+                blockedByUser.put(userId, Set.copyOf(copy));
+            }
+        }
+    }
+
+    private Set<String> blockedSet(String userId) {
+        synchronized (blockedByUser) {
+            Set<String> set = blockedByUser.get(userId);
+            if (set != null) return set;
+        }
+        Set<String> loaded = Set.copyOf(repo.findBlockedUserIds(userId));
+        synchronized (blockedByUser) {
+            blockedByUser.put(userId, loaded);
+        }
+        return loaded;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        try {
+            long size = Math.max(expectedEntries, repo.count() * 2);
+            BloomFilter fresh = new BloomFilter(size, FALSE_POSITIVE_RATE);
+            Map<String, Instant> recent = new HashMap<>();
+            Instant[] maxSeen = {Instant.EPOCH};
+            // Chỉ ba cột, stream theo fetch size: heap không phụ thuộc kích thước bảng
+            Long total = readOnlyTx.execute(status -> {
+                long rows = 0;
+                try (Stream<BlockPair> pairs = repo.streamPairs()) {
+                    Iterator<BlockPair> it = pairs.iterator();
+                    while (it.hasNext()) {
+                        BlockPair b = it.next();
+                        String key = pairKey(b.getUserId(), b.getBlockedUserId());
+                        fresh.put(key);
+                        rows++;
+                        Instant at = b.getBlockedAt();
+                        if (at == null) continue;
+                        if (at.isAfter(maxSeen[0])) maxSeen[0] = at;
+                        if (!at.isBefore(maxSeen[0].minusMillis(overlapMillis))) {
+                            recent.put(key, at);
+                            // Dòng không theo thứ tự thời gian: dọn định kỳ để map không phình
+                            if (recent.size() > 4096 && recent.size() % 4096 == 0) {
+                                prune(recent, maxSeen[0]);
+                            }
+                        }
+                    }
+                }
+                return rows;
+            });
+            prune(recent, maxSeen[0]);
+            synchronized (this) {
+                bloom = fresh;
+                entries = total != null ? total : 0;
+                capacity = size;
+                loadedUntil = maxSeen[0];
+                recentPairs = recent;
+                ready = true;
+            }
+            logger.info("Block list loaded: {} pairs", total);
+        } catch (Exception e) {
+            logger.error("Block list load failed, falling back to per-user lookups: {}", e.toString(), e);
+        }
+    }
+
+    // Nạp các lượt chặn mới (kể cả từ node khác), quét lại cửa sổ overlap trước watermark
+    @Scheduled(fixedDelayString = "${chat.block-cache.refresh-ms:30000}", initialDelayString = "${chat.block-cache.refresh-ms:30000}")
+    public void refresh() {
+        if (!ready) {
+            load();
+            return;
+        }
+        try {
+            List<BlockPair> recent = repo.findPairsSince(loadedUntil.minusMillis(overlapMillis));
+            boolean rebuild;
+            synchronized (this) {
+                Instant maxSeen = loadedUntil;
+                long added = 0;
+                for (BlockPair b : recent) {
+                    // Đã nạp ở lần trước (dòng trong cửa sổ overlap)
+                    if (recentPairs.putIfAbsent(pairKey(b.getUserId(), b.getBlockedUserId()), b.getBlockedAt()) != null) {
+                        continue;
+                    }
+                    onBlocked(b.getUserId(), b.getBlockedUserId());
+                    added++;
+                    if (b.getBlockedAt().isAfter(maxSeen)) maxSeen = b.getBlockedAt();
+                }
+                loadedUntil = maxSeen;
+                prune(recentPairs, maxSeen);
+                entries += added;
+                // Bloom quá tải thì tỉ lệ dương tính giả tăng: dựng lại với kích thước lớn hơn
+                rebuild = entries > capacity;
+            }
+            if (rebuild) load();
+        } catch (Exception e) {
+            logger.error("Block list refresh failed: {}", e.toString(), e);
+        }
+    }
+
+    // Số cặp Bloom đang chứa (dùng để quyết định dựng lại)
+    synchronized long entryCount() {
+        return entries;
+    }
+
+    // Bỏ các cặp đã ra khỏi cửa sổ quét lại: lần refresh sau không còn đọc lại chúng
+    private void prune(Map<String, Instant> pairs, Instant watermark) {
+        Instant cutoff = watermark.minusMillis(overlapMillis);
+        pairs.values().removeIf(at -> at.isBefore(cutoff));
+    }
+
+    private static String pairKey(String userId, String otherUserId) {
+        return userId + '|' + otherUserId;
+    }
+}
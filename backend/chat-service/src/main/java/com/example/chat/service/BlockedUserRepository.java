@@ -2,15 +2,46 @@ package com.example.chat.repository;
 
 import com.example.chat.model.BlockedUser;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import jakarta.persistence.QueryHint;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
+
 @Repository
 public interface BlockedUserRepository extends JpaRepository<BlockedUser, String> {
 
+    /** Chỉ các cột BlockListCache cần, không dựng entity. */
+    interface BlockPair {
+        String getUserId();
+        String getBlockedUserId();
+        Instant getBlockedAt();
+    }
+
     boolean existsByUserIdAndBlockedUserId(String userId, String blockedUserId);
 
+    @Query("SELECT b.blockedUserId FROM BlockedUser b WHERE b.userId = :userId")
+    List<String> findBlockedUserIds(@Param("userId") String userId);
+
+    // Nạp toàn bảng cho Bloom: đọc forward-only theo fetch size, cần transaction
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "1000"), @QueryHint(name = HINT_READ_ONLY, value = "true")})
+    @Query("SELECT b.userId AS userId, b.blockedUserId AS blockedUserId, b.blockedAt AS blockedAt FROM BlockedUser b")
+    Stream<BlockPair> streamPairs();
+
+    @Query("SELECT b.userId AS userId, b.blockedUserId AS blockedUserId, b.blockedAt AS blockedAt " +
+           "FROM BlockedUser b WHERE b.blockedAt >= :since")
+    List<BlockPair> findPairsSince(@Param("since") Instant since);
+
     // Optional: Kiểm tra xem user A có block user B không
     default boolean isBlocked(String userId, String blockedUserId) {
         return existsByUserIdAndBlockedUserId(userId, blockedUserId);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,253 @@
+package com.example.chat.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.lang.Nullable;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionConnectEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fan-out WebSocket cho nhiều node chat-service (chat.cluster.enabled=true).
+ *
+ * Mỗi node giữ simple broker cho các session của chính nó, đăng ký vào Redis
+ * "routing key -> các node đang có session quan tâm" (user hoặc topic destination)
+ * và chỉ subscribe kênh pub/sub riêng chat:node:{nodeId}. Khi gửi, node tra registry
+ * rồi publish tới đúng những node cần nhận thay vì broadcast cho cả cluster.
+ *
+ * Các key mỗi node đã đăng ký được ghi thêm vào chat:node-keys:{nodeId}; khi heartbeat
+ * thấy một node quá hạn trong hash chat:nodes, node nào xoá được entry đó sẽ gỡ node chết
+ * khỏi các route set. Đường gửi không bao giờ tự xoá registry.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.cluster.enabled", havingValue = "true")
+public class ClusterRouter implements MessageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClusterRouter.class);
+
+    static final String NODE_CHANNEL_PREFIX = "chat:node:";
+    private static final String ROUTE_PREFIX = "chat:route:";
+    private static final String NODES_KEY = "chat:nodes";
+    private static final String NODE_KEYS_PREFIX = "chat:node-keys:";
+    private static final long NODE_TTL_MS = 30_000;
+
+    public record Envelope(String userId, String destination, JsonNode payload) {}
+
+    private final StringRedisTemplate redis;
+    private final ObjectMapper objectMapper;
+    private final @Nullable SimpMessagingTemplate messagingTemplate;
+    private final String nodeId;
+
+    // routing key -> số session local đang quan tâm
+    private final Map<String, Integer> localRefs = new ConcurrentHashMap<>();
+    // sessionId -> (subscriptionId hoặc "user") -> routing key
+    private final Map<String, Map<String, String>> sessionKeys = new ConcurrentHashMap<>();
+    private volatile Set<String> liveNodes = Set.of();
+    // Thời điểm heartbeat thành công gần nhất; 0 = chưa có snapshot
+    private volatile long liveNodesAt;
+
+    public ClusterRouter(StringRedisTemplate redis,
+                         ObjectMapper objectMapper,
+                         @Nullable SimpMessagingTemplate messagingTemplate,
+                         @Value("${chat.cluster.node-id:}") String nodeId) {
+        this.redis = redis;
+        this.objectMapper = objectMapper;
+        this.messagingTemplate = messagingTemplate;
+        this.nodeId = nodeId.isBlank() ? UUID.randomUUID().toString() : nodeId;
+    }
+
+    @PostConstruct
+    public void init() {
+        heartbeat();
+    }
+
+    public String getNodeId() { return nodeId; }
+
+    public String channel() { return NODE_CHANNEL_PREFIX + nodeId; }
+
+    // ---------- gửi ----------
+
+    public void toUser(String userId, String destination, Object payload) {
+        route(userKey(userId), new Envelope(userId, destination, objectMapper.valueToTree(payload)));
+    }
+
+    public void toTopic(String destination, Object payload) {
+        route(destinationKey(destination), new Envelope(null, destination, objectMapper.valueToTree(payload)));
+    }
+
+    private void route(String key, Envelope envelope) {
+        Set<String> nodes = redis.opsForSet().members(ROUTE_PREFIX + key);
+        if (nodes == null || nodes.isEmpty()) return;
+
+        // Snapshot cũ hơn TTL (chưa heartbeat / Redis lỗi) thì không loại node nào
+        boolean fresh = System.currentTimeMillis() - liveNodesAt <= NODE_TTL_MS;
+        String json = null;
+        for (String node : nodes) {
+            if (node.equals(nodeId)) {
+                deliverLocal(envelope);
+            } else if (!fresh || liveNodes.contains(node)) {
+                try {
+                    if (json == null) json = objectMapper.writeValueAsString(envelope);
+                    redis.convertAndSend(NODE_CHANNEL_PREFIX + node, json);
+                } catch (Exception e) {
+                    logger.error("Cluster publish to {} failed: {}", node, e.toString());
+                }
+            }
+            // Node chết mà còn trong registry: heartbeat sẽ dọn
+        }
+    }
+
+    // ---------- nhận từ node khác ----------
+
+    @Override
+    public void onMessage(org.springframework.data.redis.connection.Message message, byte[] pattern) {
+        try {
+            Envelope envelope = objectMapper.readValue(
+                    new String(message.getBody(), StandardCharsets.UTF_8), Envelope.class);
+            deliverLocal(envelope);
+        } catch (Exception e) {
+            logger.error("Invalid cluster envelope: {}", e.toString());
+        }
+    }
+
+    private void deliverLocal(Envelope envelope) {
+        if (messagingTemplate == null) return;
+        try {
+            if (envelope.userId() != null) {
+                messagingTemplate.convertAndSendToUser(envelope.userId(), envelope.destination(), envelope.payload());
+            } else {
+                messagingTemplate.convertAndSend(envelope.destination(), envelope.payload());
+            }
+        } catch (Exception e) {
+            logger.error("Local WebSocket delivery failed: {}", e.toString(), e);
+        }
+    }
+
+    // ---------- registry session local ----------
+
+    @EventListener
+    public void onConnect(SessionConnectEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        Principal user = event.getUser();
+        String userId = user != null ? user.getName() : accessor.getFirstNativeHeader("userId");
+        if (userId != null && accessor.getSessionId() != null) {
+            track(accessor.getSessionId(), "user", userKey(userId));
+        }
+    }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        String destination = accessor.getDestination();
+        if (destination != null && destination.startsWith("/topic/")
+                && accessor.getSessionId() != null && accessor.getSubscriptionId() != null) {
+            track(accessor.getSessionId(), accessor.getSubscriptionId(), destinationKey(destination));
+        }
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        Map<String, String> keys = sessionKeys.get(accessor.getSessionId());
+        if (keys != null && accessor.getSubscriptionId() != null) {
+            String key = keys.remove(accessor.getSubscriptionId());
+            if (key != null) release(key);
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        Map<String, String> keys = sessionKeys.remove(event.getSessionId());
+        if (keys != null) {
+            keys.values().forEach(this::release);
+        }
+    }
+
+    private void track(String sessionId, String slot, String key) {
+        String previous = sessionKeys.computeIfAbsent(sessionId, id -> new ConcurrentHashMap<>()).put(slot, key);
+        if (previous != null) release(previous);
+        if (localRefs.merge(key, 1, Integer::sum) == 1) {
+            redis.opsForSet().add(ROUTE_PREFIX + key, nodeId);
+            redis.opsForSet().add(NODE_KEYS_PREFIX + nodeId, key);
+        }
+    }
+
+    private void release(String key) {
+        Integer left = localRefs.computeIfPresent(key, (k, n) -> n > 1 ? n - 1 : null);
+        if (left == null) {
+            redis.opsForSet().remove(ROUTE_PREFIX + key, nodeId);
+            redis.opsForSet().remove(NODE_KEYS_PREFIX + nodeId, key);
+        }
+    }
+
+    // ---------- heartbeat node ----------
+
+    @Scheduled(fixedDelay = 10_000, initialDelay = 0)
+    public void heartbeat() {
+        try {
+            long now = System.currentTimeMillis();
+            redis.opsForHash().put(NODES_KEY, nodeId, Long.toString(now));
+
+            Set<String> alive = new HashSet<>();
+            for (Map.Entry<Object, Object> e : redis.opsForHash().entries(NODES_KEY).entrySet()) {
+                long seen = Long.parseLong(e.getValue().toString());
+                if (now - seen <= NODE_TTL_MS) {
+                    alive.add(e.getKey().toString());
+                } else if (redis.opsForHash().delete(NODES_KEY, e.getKey()) > 0) {
+                    // Chỉ node xoá được entry mới dọn, tránh nhiều node cùng dọn
+                    purgeNode(e.getKey().toString());
+                }
+            }
+            liveNodes = Set.copyOf(alive);
+            liveNodesAt = now;
+        } catch (Exception e) {
+            logger.error("Cluster heartbeat failed: {}", e.toString());
+        }
+    }
+
+    private void purgeNode(String deadNode) {
+        String keysKey = NODE_KEYS_PREFIX + deadNode;
+        Set<String> keys = redis.opsForSet().members(keysKey);
+        if (keys != null) {
+            for (String key : keys) {
+                redis.opsForSet().remove(ROUTE_PREFIX + key, deadNode);
+            }
+        }
+        redis.delete(keysKey);
+        logger.warn("Cluster node {} expired, removed from {} routes", deadNode, keys == null ? 0 : keys.size());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        localRefs.keySet().forEach(key -> redis.opsForSet().remove(ROUTE_PREFIX + key, nodeId));
+        redis.delete(NODE_KEYS_PREFIX + nodeId);
+        redis.opsForHash().delete(NODES_KEY, nodeId);
+    }
+
+    private static String userKey(String userId) {
+        return "user:" + userId;
+    }
+
+    private static String destinationKey(String destination) {
+        return "dest:" + destination;
+    }
+}
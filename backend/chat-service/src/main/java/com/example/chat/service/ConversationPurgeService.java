@@ -0,0 +1,208 @@
+package com.example.chat.service;
+
+import com.example.chat.model.PurgeJob;
+import com.example.chat.repository.MessageRepository;
+import com.example.chat.repository.PurgeJobRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Xoá toàn bộ tin của một hội thoại (tới thời điểm cutoff) bằng job nền.
+ *
+ * Client nhận ngay jobId + một sự kiện tombstone {conversationId, cutoff} để ẩn các tin
+ * cũ hơn cutoff; job xoá theo từng khúc bằng DELETE ... LIMIT (mỗi khúc một statement,
+ * một transaction ngắn) nên bộ nhớ và kích thước payload không phụ thuộc số tin.
+ * Job được lưu ở bảng conversation_purge_jobs nên getJob() trả lời được trên mọi node;
+ * job xong được giữ lại một thời gian rồi dọn. Job RUNNING không cập nhật quá STALE_MS
+ * (node chạy nó đã chết) được coi là FAILED và không chặn job mới.
+ *
+ * message_status bị xoá trước các tin: mốc trỏ vào tin cũ hơn cutoff không còn ý nghĩa.
+ */
+@Service
+public class ConversationPurgeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConversationPurgeService.class);
+
+    private static final String DELETE_CHUNK_SQL =
+            "DELETE FROM messages WHERE id IN (" +
+            "SELECT id FROM messages WHERE conversation_id = ? AND created_at <= ? LIMIT ?) " +
+            "RETURNING type, content";
+    private static final String DELETE_STATUS_SQL =
+            "DELETE FROM message_status WHERE conversation_id = ? AND (message_time IS NULL OR message_time <= ?)";
+
+    private static final long FINISHED_RETENTION_MS = 60 * 60 * 1000L;
+    private static final long STALE_MS = 10 * 60 * 1000L;
+
+    /**
+     * Sự kiện gửi qua /topic/messages.deleted.{conversationId}: mọi tin có createdAt <= cutoff đã bị xoá.
+     */
+    public record Tombstone(String conversationId, Instant cutoff) {}
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MessageRepository messageRepo;
+    private final PurgeJobRepository jobRepo;
+    private final InboxService inboxService;
+    private final AttachmentStore attachmentStore;
+    private final MessageFanoutService fanoutService;
+    private final RecentMessageCache recentCache;
+    private final @Nullable MessageArchiveService archive;
+    private final int chunkSize;
+
+    // conversationId -> job đang chạy trên node này (không chạy song song 2 job cho một hội thoại)
+    private final Map<String, PurgeJob> running = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "conversation-purge");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public ConversationPurgeService(JdbcTemplate jdbcTemplate,
+                                    MessageRepository messageRepo,
+                                    PurgeJobRepository jobRepo,
+                                    InboxService inboxService,
+                                    AttachmentStore attachmentStore,
+                                    MessageFanoutService fanoutService,
+                                    RecentMessageCache recentCache,
+                                    @Nullable MessageArchiveService archive,
+                                    @Value("${chat.purge.chunk-size:1000}") int chunkSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.messageRepo = messageRepo;
+        this.jobRepo = jobRepo;
+        this.inboxService = inboxService;
+        this.attachmentStore = attachmentStore;
+        this.fanoutService = fanoutService;
+        this.recentCache = recentCache;
+        this.archive = archive;
+        this.chunkSize = chunkSize;
+    }
+
+    public PurgeJob start(String conversationId) {
+        evictFinished();
+        Instant now = Instant.now();
+        PurgeJob job = new PurgeJob();
+        job.setJobId(UUID.randomUUID().toString());
+        job.setConversationId(conversationId);
+        job.setCutoff(now);
+        job.setState(PurgeJob.State.RUNNING);
+        job.setStartedAt(now);
+        job.setUpdatedAt(now);
+
+        PurgeJob existing = running.putIfAbsent(conversationId, job);
+        if (existing != null) {
+            return existing;
+        }
+        // Node khác đang xoá hội thoại này
+        PurgeJob elsewhere = jobRepo.findFirstByConversationIdAndStateAndUpdatedAtAfter(
+                conversationId, PurgeJob.State.RUNNING, now.minusMillis(STALE_MS)).orElse(null);
+        if (elsewhere != null) {
+            running.remove(conversationId, job);
+            return elsewhere;
+        }
+        jobRepo.save(job);
+        recentCache.evict(conversationId);
+
+        // Tombstone trước: client ẩn ngay, không chờ job xoá xong
+        fanoutService.toTopic("/topic/messages.deleted." + conversationId,
+                new Tombstone(conversationId, job.getCutoff()));
+
+        executor.execute(() -> run(job));
+        return job;
+    }
+
+    public PurgeJob getJob(String jobId) {
+        PurgeJob job = jobRepo.findById(jobId).orElse(null);
+        if (job != null && job.getState() == PurgeJob.State.RUNNING
+                && job.getUpdatedAt().isBefore(Instant.now().minusMillis(STALE_MS))) {
+            job.setState(PurgeJob.State.FAILED);
+            job.setError("Node running the job stopped before it finished");
+        }
+        return job;
+    }
+
+    private void run(PurgeJob job) {
+        String conversationId = job.getConversationId();
+        Timestamp cutoff = Timestamp.from(job.getCutoff());
+        try {
+            // Trước khi xoá tin: mốc delivered/read trỏ vào các tin sắp bị xoá
+            jdbcTemplate.update(DELETE_STATUS_SQL, conversationId, cutoff);
+
+            while (true) {
+                List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                        DELETE_CHUNK_SQL, conversationId, cutoff, chunkSize);
+                if (rows.isEmpty()) break;
+                for (Map<String, Object> row : rows) {
+                    if ("image".equals(row.get("type"))) {
+                        attachmentStore.release((String) row.get("content"));
+                    }
+                }
+                progress(job, rows.size());
+                logger.debug("Purge {}: {} messages deleted so far", conversationId, job.getDeleted());
+            }
+
+            // Tin trong archive đều cũ hơn cutoff: xoá cả segment của hội thoại
+            if (archive != null) {
+                progress(job, archive.deleteConversation(conversationId, attachmentStore::release));
+            }
+
+            // Tin gửi sau cutoff vẫn còn thì giữ inbox (đang trỏ vào tin mới đó)
+            if (messageRepo.findFirstByConversationIdOrderByCreatedAtDesc(conversationId).isEmpty()) {
+                inboxService.onConversationDeleted(conversationId);
+            }
+            recentCache.evict(conversationId);
+            finish(job, PurgeJob.State.DONE, null);
+            logger.info("Purged {} messages from conversation {}", job.getDeleted(), conversationId);
+        } catch (Exception e) {
+            finish(job, PurgeJob.State.FAILED, e.getMessage());
+            logger.error("Purge of conversation {} failed after {} rows: {}",
+                    conversationId, job.getDeleted(), e.toString(), e);
+        } finally {
+            running.remove(conversationId, job);
+        }
+    }
+
+    private void progress(PurgeJob job, long deleted) {
+        job.setDeleted(job.getDeleted() + deleted);
+        job.setUpdatedAt(Instant.now());
+        jobRepo.save(job);
+    }
+
+    private void finish(PurgeJob job, PurgeJob.State state, String error) {
+        Instant now = Instant.now();
+        job.setState(state);
+        job.setError(error);
+        job.setUpdatedAt(now);
+        job.setFinishedAt(now);
+        try {
+            jobRepo.save(job);
+        } catch (Exception e) {
+            logger.error("Could not record purge job {} as {}: {}", job.getJobId(), state, e.toString());
+        }
+    }
+
+    private void evictFinished() {
+        try {
+            jobRepo.deleteFinishedBefore(Instant.now().minusMillis(FINISHED_RETENTION_MS));
+        } catch (Exception e) {
+            logger.warn("Purge job cleanup failed: {}", e.toString());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
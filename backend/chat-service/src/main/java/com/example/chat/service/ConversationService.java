@@ -0,0 +1,264 @@
+package com.example.chat.service;
+
+import com.example.chat.model.Conversation;
+import com.example.chat.model.Message;
+import com.example.chat.model.Participant;
+import com.example.chat.repository.ConversationRepository;
+import com.example.chat.repository.InboxEntryRepository;
+import com.example.chat.repository.ParticipantRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Nguồn sự thật cho hội thoại và thành viên (bảng conversations + participants).
+ *
+ * Hội thoại 1:1 chỉ được tạo ở tin nhắn đầu tiên, với cặp user suy từ id dạng
+ * "user1-user2-chat" và người gửi phải nằm trong cặp đó; nhóm được tạo qua createGroup.
+ * Các đường đọc (participants) không bao giờ ghi: hội thoại 1:1 cũ chưa có trong bảng trả
+ * về cặp suy từ id mà không lưu.
+ *
+ * Danh sách thành viên được cache LRU trong bộ nhớ vì nằm trên đường gửi tin của mọi
+ * message, hết hạn sau cache-ttl-seconds. Chạy nhiều node, mỗi thay đổi thành viên được báo
+ * cho các node khác qua MembershipCacheInvalidator; TTL là lưới an toàn nếu lỡ thông báo.
+ */
+@Service
+public class ConversationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConversationService.class);
+
+    private final ConversationRepository conversationRepo;
+    private final ParticipantRepository participantRepo;
+    private final InboxEntryRepository inboxRepo;
+    private final TransactionTemplate tx;
+    private final Map<String, Entry> cache;
+    private final long ttlMillis;
+    // Tăng mỗi lần evict: kết quả nạp từ DB bắt đầu trước lần evict thì không được cache
+    private final AtomicLong evictions = new AtomicLong();
+    private volatile Consumer<String> peerNotifier;
+
+    private record Entry(List<String> members, long loadedAt) {}
+
+    public static final String GROUP_PREFIX = "group_";
+
+    public ConversationService(ConversationRepository conversationRepo,
+                               ParticipantRepository participantRepo,
+                               InboxEntryRepository inboxRepo,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${chat.conversations.cache-size:20000}") int cacheSize,
+                               @Value("${chat.conversations.cache-ttl-seconds:60}") long ttlSeconds) {
+        this.conversationRepo = conversationRepo;
+        this.participantRepo = participantRepo;
+        this.inboxRepo = inboxRepo;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.ttlMillis = ttlSeconds * 1000;
+        this.cache = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    // MembershipCacheInvalidator (cluster) đăng ký để báo node khác khi thành viên thay đổi
+    public void setPeerNotifier(Consumer<String> peerNotifier) {
+        this.peerNotifier = peerNotifier;
+    }
+
+    // ✅ Hội thoại 1:1 có từ trước bảng participants: ghi thành viên từ inbox (tìm kiếm, kiểm tra quyền)
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillDirectParticipants() {
+        try {
+            Integer rows = tx.execute(status -> {
+                conversationRepo.backfillDirectFromInbox();
+                return participantRepo.backfillDirectFromInbox(Participant.MEMBER);
+            });
+            if (rows != null && rows > 0) {
+                logger.info("Participants backfill: {} direct members added from inbox", rows);
+            }
+        } catch (Exception e) {
+            logger.error("Participants backfill failed: {}", e.toString(), e);
+        }
+    }
+
+    /**
+     * Thành viên của hội thoại (rỗng nếu không tồn tại và không suy ra được).
+     */
+    public List<String> participants(String conversationId) {
+        return participants(List.of(conversationId)).getOrDefault(conversationId, List.of());
+    }
+
+    /**
+     * Thành viên của nhiều hội thoại: cache trước, phần còn thiếu một query IN. Chỉ đọc.
+     */
+    public Map<String, List<String>> participants(Collection<String> conversationIds) {
+        Map<String, List<String>> result = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        synchronized (cache) {
+            for (String id : conversationIds) {
+                Entry e = cache.get(id);
+                if (e != null && now - e.loadedAt() <= ttlMillis) result.put(id, e.members());
+                else missing.add(id);
+            }
+        }
+        if (missing.isEmpty()) return result;
+
+        long version = evictions.get();
+        Map<String, List<String>> loaded = new HashMap<>();
+        for (Participant p : participantRepo.findByConversationIdIn(missing)) {
+            loaded.computeIfAbsent(p.getConversationId(), k -> new ArrayList<>()).add(p.getUserId());
+        }
+        for (String id : missing) {
+            List<String> members = loaded.get(id);
+            if (members == null) {
+                // Hội thoại 1:1 cũ chưa có trong bảng: cặp suy từ id, không lưu, không cache
+                if (isDirect(id)) {
+                    Set<String> derived = deriveFromId(id);
+                    if (!derived.isEmpty()) result.put(id, List.copyOf(derived));
+                }
+                continue;
+            }
+            List<String> immutable = List.copyOf(members);
+            cachePut(id, immutable, version);
+            result.put(id, immutable);
+        }
+        return result;
+    }
+
+    /**
+     * Gọi trước khi lưu tin: kiểm tra người gửi thuộc hội thoại, và tạo hội thoại 1:1 nếu
+     * đây là tin đầu tiên. Chỉ tạo khi id là hội thoại 1:1 mà cặp user suy từ id chứa người gửi.
+     */
+    public List<String> ensureForMessage(Message m) {
+        String conversationId = m.getConversationId();
+        long version = evictions.get();
+        List<String> members = participants(conversationId);
+        if (members.isEmpty()) {
+            throw new IllegalArgumentException("Không tìm thấy hội thoại: " + conversationId);
+        }
+        if (!members.contains(m.getSenderId())) {
+            throw new IllegalArgumentException("Người gửi không thuộc hội thoại này");
+        }
+        if (isDirect(conversationId) && !isCached(conversationId)) {
+            // Cặp suy từ id (chưa có trong bảng, hoặc vừa hết hạn cache): tạo nếu chưa có
+            members = createDirect(conversationId, new LinkedHashSet<>(members));
+            cachePut(conversationId, members, version);
+        }
+        return members;
+    }
+
+    public Conversation createGroup(String name, String creatorId, Collection<String> memberIds) {
+        if (creatorId == null || creatorId.isBlank()) {
+            throw new IllegalArgumentException("creatorId không được trống");
+        }
+        // Không dùng '-' trong id để không bị nhầm với hội thoại 1:1 "user1-user2"
+        String id = GROUP_PREFIX + UUID.randomUUID().toString().replace("-", "");
+        Set<String> members = new LinkedHashSet<>();
+        members.add(creatorId);
+        if (memberIds != null) members.addAll(memberIds);
+
+        tx.executeWithoutResult(status -> {
+            conversationRepo.insertIfAbsent(id, true, name, creatorId);
+            for (String userId : members) {
+                participantRepo.insertIfAbsent(id, userId,
+                        userId.equals(creatorId) ? Participant.OWNER : Participant.MEMBER);
+            }
+        });
+        cachePut(id, List.copyOf(members), evictions.get());
+        return conversationRepo.findById(id).orElseThrow();
+    }
+
+    public List<String> addParticipants(String conversationId, Collection<String> userIds) {
+        requireGroup(conversationId);
+        tx.executeWithoutResult(status -> {
+            for (String userId : userIds) {
+                participantRepo.insertIfAbsent(conversationId, userId, Participant.MEMBER);
+            }
+        });
+        evict(conversationId);
+        return participants(conversationId);
+    }
+
+    public List<String> removeParticipant(String conversationId, String userId) {
+        requireGroup(conversationId);
+        // Cùng transaction: người bị xoá không còn thấy hội thoại trong inbox
+        tx.executeWithoutResult(status -> {
+            participantRepo.deleteMember(conversationId, userId);
+            inboxRepo.deleteEntry(userId, conversationId);
+        });
+        evict(conversationId);
+        return participants(conversationId);
+    }
+
+    // Hội thoại 1:1 "user1-user2" (không phải nhóm)
+    public static boolean isDirect(String conversationId) {
+        return conversationId != null && !conversationId.startsWith(GROUP_PREFIX);
+    }
+
+    private void requireGroup(String conversationId) {
+        Conversation c = conversationRepo.findById(conversationId)
+                .orElseThrow(() -> new IllegalArgumentException("Không tìm thấy hội thoại: " + conversationId));
+        if (!c.isGroup()) {
+            throw new IllegalArgumentException("Chỉ hội thoại nhóm mới thay đổi được thành viên");
+        }
+    }
+
+    private List<String> createDirect(String conversationId, Set<String> users) {
+        tx.executeWithoutResult(status -> {
+            conversationRepo.insertIfAbsent(conversationId, false, null, null);
+            for (String userId : users) {
+                participantRepo.insertIfAbsent(conversationId, userId, Participant.MEMBER);
+            }
+        });
+        return List.copyOf(users);
+    }
+
+    private boolean isCached(String conversationId) {
+        synchronized (cache) {
+            return cache.containsKey(conversationId);
+        }
+    }
+
+    private void cachePut(String conversationId, List<String> members, long version) {
+        synchronized (cache) {
+            if (evictions.get() == version) {
+                cache.put(conversationId, new Entry(members, System.currentTimeMillis()));
+            }
+        }
+    }
+
+    private void evict(String conversationId) {
+        evictFromPeer(conversationId);
+        Consumer<String> notifier = peerNotifier;
+        if (notifier != null) notifier.accept(conversationId);
+    }
+
+    // Node khác vừa đổi thành viên của hội thoại này
+    public void evictFromPeer(String conversationId) {
+        synchronized (cache) {
+            evictions.incrementAndGet();
+            cache.remove(conversationId);
+        }
+    }
+
+    // "user1-user2-chat" -> {user1, user2}
+    private static Set<String> deriveFromId(String conversationId) {
+        Set<String> users = new LinkedHashSet<>();
+        String[] parts = conversationId.split("-");
+        if (parts.length >= 2 && !parts[0].isBlank() && !parts[1].isBlank()) {
+            users.add(parts[0]);
+            users.add(parts[1]);
+        }
+        return users;
+    }
+}
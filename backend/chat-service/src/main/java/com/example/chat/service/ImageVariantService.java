@@ -0,0 +1,279 @@
+package com.example.chat.service;
+
+import com.example.chat.model.Message;
+import com.example.chat.repository.MessageRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.*;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sinh các bản thu nhỏ (mặc định rộng 160/640/1280px, JPEG) cho ảnh chat trên một pool
+ * giới hạn. Ảnh được xoay theo EXIF orientation rồi ghi lại không kèm metadata nên
+ * EXIF (GPS, thiết bị...) bị loại bỏ. File variant nằm cạnh bản gốc: {hash}_w{width}.jpg,
+ * nên ảnh trùng nội dung dùng lại variant đã có. Xong thì gán attachmentUrl của tin
+ * nhắn và đẩy sự kiện /queue/message.updated cho người tham gia.
+ */
+@Service
+public class ImageVariantService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageVariantService.class);
+
+    public record VariantsReady(String messageId, String conversationId, String attachmentUrl,
+                                Map<Integer, String> variants) {}
+
+    private final AttachmentStore attachmentStore;
+    private final MessageRepository repo;
+    private final MessageFanoutService fanoutService;
+    private final ConversationService conversationService;
+    private final RecentMessageCache recentCache;
+    private final int[] widths;
+    private final int attachmentWidth;
+    private final float quality;
+    private final ThreadPoolExecutor executor;
+
+    public ImageVariantService(AttachmentStore attachmentStore,
+                               MessageRepository repo,
+                               MessageFanoutService fanoutService,
+                               ConversationService conversationService,
+                               RecentMessageCache recentCache,
+                               @Value("${chat.image-variants.widths:160,640,1280}") int[] widths,
+                               @Value("${chat.image-variants.attachment-width:640}") int attachmentWidth,
+                               @Value("${chat.image-variants.quality:0.8}") float quality,
+                               @Value("${chat.image-variants.threads:2}") int threads,
+                               @Value("${chat.image-variants.queue-capacity:200}") int queueCapacity) {
+        this.attachmentStore = attachmentStore;
+        this.repo = repo;
+        this.fanoutService = fanoutService;
+        this.conversationService = conversationService;
+        this.recentCache = recentCache;
+        this.widths = widths.clone();
+        Arrays.sort(this.widths);
+        this.attachmentWidth = attachmentWidth;
+        this.quality = quality;
+        AtomicInteger seq = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "image-variants-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    /**
+     * Đưa tin nhắn ảnh vào hàng đợi xử lý; hàng đợi đầy thì bỏ qua (client vẫn có ảnh gốc).
+     */
+    public void submit(Message message, AttachmentStore.StoredFile stored) {
+        try {
+            executor.execute(() -> process(message, stored));
+        } catch (RejectedExecutionException e) {
+            logger.warn("Image variant queue full, skipping message {}", message.getId());
+        }
+    }
+
+    private void process(Message message, AttachmentStore.StoredFile stored) {
+        try {
+            Path original = attachmentStore.resolve(stored.url());
+            Map<Integer, String> variants = generate(original, stored.hash());
+            if (variants.isEmpty()) return;
+
+            String attachmentUrl = pickAttachment(variants);
+            if (!updateMessage(message.getId(), attachmentUrl)) {
+                logger.warn("Message {} not found, dropping variants event", message.getId());
+                return;
+            }
+
+            message.setAttachmentUrl(attachmentUrl);
+            recentCache.onAttachmentUpdated(message.getConversationId(), message.getId(), attachmentUrl);
+            VariantsReady event = new VariantsReady(message.getId(), message.getConversationId(),
+                    attachmentUrl, variants);
+            for (String userId : conversationService.participants(message.getConversationId())) {
+                fanoutService.toUser(userId, "/queue/message.updated", event);
+            }
+        } catch (Exception e) {
+            logger.error("Image variants failed for message {}: {}", message.getId(), e.toString(), e);
+        }
+    }
+
+    private Map<Integer, String> generate(Path original, String hash) throws IOException {
+        Map<Integer, String> variants = new TreeMap<>();
+        BufferedImage source = null;
+
+        for (int width : widths) {
+            Path target = original.resolveSibling(hash + "_w" + width + ".jpg");
+            if (!Files.exists(target)) {
+                if (source == null) {
+                    source = readOriented(original);
+                    if (source == null) {
+                        logger.warn("Unsupported image format: {}", original.getFileName());
+                        return variants;
+                    }
+                }
+                // Không phóng to: ảnh nhỏ hơn thì dừng ở variant lớn nhất còn nhỏ hơn ảnh gốc
+                if (width > source.getWidth() && !variants.isEmpty()) break;
+                writeJpeg(resize(source, Math.min(width, source.getWidth())), target);
+            }
+            variants.put(width, attachmentStore.urlOf(target));
+        }
+        return variants;
+    }
+
+    private String pickAttachment(Map<Integer, String> variants) {
+        String url = null;
+        for (Map.Entry<Integer, String> e : variants.entrySet()) {
+            url = e.getValue();
+            if (e.getKey() >= attachmentWidth) break;
+        }
+        return url;
+    }
+
+    // Với write-behind tin có thể chưa xuống DB: thử lại vài lần
+    private boolean updateMessage(String messageId, String attachmentUrl) throws InterruptedException {
+        for (int attempt = 0; attempt < 5; attempt++) {
+            if (repo.updateAttachmentUrl(messageId, attachmentUrl) > 0) return true;
+            Thread.sleep(200L * (attempt + 1));
+        }
+        return false;
+    }
+
+    private BufferedImage readOriented(Path file) throws IOException {
+        BufferedImage image = ImageIO.read(file.toFile());
+        if (image == null) return null;
+        int orientation = 1;
+        try (InputStream in = Files.newInputStream(file)) {
+            orientation = exifOrientation(in);
+        } catch (IOException e) {
+            logger.debug("Could not read EXIF orientation of {}: {}", file.getFileName(), e.toString());
+        }
+        return orientation > 1 ? rotate(image, orientation) : image;
+    }
+
+    private static BufferedImage resize(BufferedImage source, int width) {
+        int height = Math.max(1, (int) Math.round((double) source.getHeight() * width / source.getWidth()));
+        BufferedImage out = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = out.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            // Nền trắng cho ảnh PNG/GIF trong suốt (JPEG không có alpha)
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, width, height);
+            g.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return out;
+    }
+
+    private void writeJpeg(BufferedImage image, Path target) throws IOException {
+        Path tmp = Files.createTempFile(target.getParent(), "variant-", ".part");
+        try {
+            ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+            try (ImageOutputStream out = ImageIO.createImageOutputStream(tmp.toFile())) {
+                writer.setOutput(out);
+                ImageWriteParam param = writer.getDefaultWriteParam();
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(quality);
+                // metadata = null: không ghi EXIF
+                writer.write(null, new IIOImage(image, null, null), param);
+            } finally {
+                writer.dispose();
+            }
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static BufferedImage rotate(BufferedImage src, int orientation) {
+        int w = src.getWidth();
+        int h = src.getHeight();
+        AffineTransform t = new AffineTransform();
+        boolean swap = orientation >= 5;
+        switch (orientation) {
+            case 2 -> { t.scale(-1, 1); t.translate(-w, 0); }
+            case 3 -> { t.translate(w, h); t.rotate(Math.PI); }
+            case 4 -> { t.scale(1, -1); t.translate(0, -h); }
+            case 5 -> { t.rotate(-Math.PI / 2); t.scale(-1, 1); }
+            case 6 -> { t.translate(h, 0); t.rotate(Math.PI / 2); }
+            case 7 -> { t.scale(-1, 1); t.translate(-h, 0); t.translate(0, w); t.rotate(3 * Math.PI / 2); }
+            case 8 -> { t.translate(0, w); t.rotate(3 * Math.PI / 2); }
+            default -> { return src; }
+        }
+        BufferedImage out = new BufferedImage(swap ? h : w, swap ? w : h, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = out.createGraphics();
+        try {
+            g.drawImage(src, t, null);
+        } finally {
+            g.dispose();
+        }
+        return out;
+    }
+
+    /**
+     * Đọc tag Orientation (0x0112) trong APP1/Exif của JPEG; không phải JPEG hoặc không có thì trả 1.
+     */
+    static int exifOrientation(InputStream raw) throws IOException {
+        DataInputStream in = new DataInputStream(raw);
+        if (in.readUnsignedShort() != 0xFFD8) return 1;
+        while (true) {
+            int marker = in.readUnsignedShort();
+            if ((marker & 0xFF00) != 0xFF00 || marker == 0xFFDA || marker == 0xFFD9) return 1;
+            int length = in.readUnsignedShort() - 2;
+            if (marker != 0xFFE1) {
+                in.skipNBytes(length);
+                continue;
+            }
+            byte[] data = in.readNBytes(length);
+            if (data.length < 14 || data[0] != 'E' || data[1] != 'x' || data[2] != 'i' || data[3] != 'f') return 1;
+            int base = 6;
+            boolean little = data[base] == 'I';
+            int ifd = base + readInt(data, base + 4, little);
+            if (ifd + 2 > data.length) return 1;
+            int entries = readShort(data, ifd, little);
+            for (int i = 0; i < entries; i++) {
+                int entry = ifd + 2 + i * 12;
+                if (entry + 12 > data.length) return 1;
+                if (readShort(data, entry, little) == 0x0112) {
+                    return readShort(data, entry + 8, little);
+                }
+            }
+            return 1;
+        }
+    }
+
+    private static int readShort(byte[] b, int off, boolean little) {
+        int b0 = b[off] & 0xFF, b1 = b[off + 1] & 0xFF;
+        return little ? (b1 << 8) | b0 : (b0 << 8) | b1;
+    }
+
+    private static int readInt(byte[] b, int off, boolean little) {
+        return little
+                ? (readShort(b, off + 2, true) << 16) | readShort(b, off, true)
+                : (readShort(b, off, false) << 16) | readShort(b, off + 2, false);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.chat.service;
+
+import com.example.chat.model.InboxEntry;
+import com.example.chat.model.Message;
+import com.example.chat.repository.InboxEntryRepository;
+import com.example.chat.repository.MessageRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * Duy trì bảng inbox_entries (tin cuối, thời gian, số tin chưa đọc theo từng user)
+ * để danh sách hội thoại được phục vụ bằng một range scan thay vì group tin nhắn trong RAM.
+ */
+@Service
+public class InboxService {
+
+    private static final Logger logger = LoggerFactory.getLogger(InboxService.class);
+
+    public static final int DEFAULT_PAGE_SIZE = 30;
+    public static final int MAX_PAGE_SIZE = 100;
+
+    private final InboxEntryRepository inboxRepo;
+    private final MessageRepository messageRepo;
+
+    public InboxService(InboxEntryRepository inboxRepo, MessageRepository messageRepo) {
+        this.inboxRepo = inboxRepo;
+        this.messageRepo = messageRepo;
+    }
+
+    public record InboxPage(List<InboxEntry> entries, String nextCursor) {}
+
+    @Transactional(readOnly = true)
+    public InboxPage getInbox(String userId, String cursor, int limit) {
+        int size = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        // Lấy dư 1 phần tử để biết còn trang sau hay không
+        PageRequest page = PageRequest.of(0, size + 1);
+
+        List<InboxEntry> rows;
+        if (cursor == null || cursor.isBlank()) {
+            rows = inboxRepo.findFirstPage(userId, page);
+        } else {
+            Cursor c = Cursor.decode(cursor);
+            rows = inboxRepo.findPageBefore(userId, c.time(), c.id(), page);
+        }
+
+        if (rows.size() <= size) {
+            return new InboxPage(rows, null);
+        }
+        List<InboxEntry> entries = rows.subList(0, size);
+        InboxEntry last = entries.get(size - 1);
+        return new InboxPage(entries, new Cursor(last.getLastTime(), last.getConversationId()).encode());
+    }
+
+    // Một câu lệnh cho mọi thành viên, kể cả nhóm lớn (thành viên do ConversationService tạo trước khi lưu tin)
+    @Transactional
+    public void onMessageSaved(Message m) {
+        inboxRepo.upsertLastMessage(m.getConversationId(), m.getId(), m.getSenderId(),
+                m.getContent(), m.getType(), m.getCreatedAt());
+    }
+
+    @Transactional
+    public void onMessageRecalled(Message m) {
+        inboxRepo.markLastRecalled(m.getConversationId(), m.getId());
+    }
+
+    /**
+     * Gọi sau khi tin nhắn đã bị xoá khỏi bảng messages. Unread chỉ giảm với người nhận
+     * có mốc read trước tin này; Message.status không phản ánh từng người nhận (nhóm).
+     */
+    @Transactional
+    public void onMessageDeleted(Message m) {
+        if (m.getCreatedAt() != null) {
+            inboxRepo.decrementUnread(m.getConversationId(), m.getSenderId(), m.getId(), m.getCreatedAt());
+        }
+
+        messageRepo.findFirstByConversationIdOrderByCreatedAtDesc(m.getConversationId())
+                .ifPresentOrElse(
+                        latest -> inboxRepo.replaceLastMessage(m.getConversationId(), m.getId(),
+                                latest.getId(), latest.getSenderId(), latest.getContent(), latest.getType(),
+                                latest.getCreatedAt(), latest.isRecalled()),
+                        () -> inboxRepo.deleteByConversationId(m.getConversationId())
+                );
+    }
+
+    @Transactional
+    public void onConversationDeleted(String conversationId) {
+        inboxRepo.deleteByConversationId(conversationId);
+    }
+
+    @Transactional
+    public boolean markRead(String userId, String conversationId) {
+        return inboxRepo.resetUnread(userId, conversationId) > 0;
+    }
+
+    // ✅ Lần đầu chạy với bảng inbox trống: dựng lại từ lịch sử tin nhắn
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void backfillIfEmpty() {
+        try {
+            if (inboxRepo.count() == 0 && messageRepo.count() > 0) {
+                int rows = inboxRepo.rebuildFromMessages();
+                logger.info("Inbox backfill: {} entries created", rows);
+            }
+        } catch (Exception e) {
+            logger.error("Inbox backfill failed: {}", e.toString(), e);
+        }
+    }
+}
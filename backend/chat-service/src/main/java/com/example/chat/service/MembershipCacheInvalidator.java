@@ -0,0 +1,54 @@
+package com.example.chat.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Đồng bộ cache thành viên của ConversationService giữa các node (chat.cluster.enabled=true).
+ *
+ * Thêm / xoá thành viên nhóm publish "nodeId|conversationId" lên kênh chung
+ * chat:conversation-members; các node khác bỏ danh sách đã cache và nạp lại từ Postgres.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.cluster.enabled", havingValue = "true")
+public class MembershipCacheInvalidator implements MessageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(MembershipCacheInvalidator.class);
+
+    public static final String CHANNEL = "chat:conversation-members";
+
+    private final StringRedisTemplate redis;
+    private final ConversationService conversationService;
+    private final String nodeId;
+
+    public MembershipCacheInvalidator(StringRedisTemplate redis,
+                                      ConversationService conversationService,
+                                      ClusterRouter clusterRouter) {
+        this.redis = redis;
+        this.conversationService = conversationService;
+        this.nodeId = clusterRouter.getNodeId();
+        conversationService.setPeerNotifier(this::publish);
+    }
+
+    private void publish(String conversationId) {
+        try {
+            redis.convertAndSend(CHANNEL, nodeId + "|" + conversationId);
+        } catch (Exception e) {
+            logger.error("Membership cache invalidation for {} failed: {}", conversationId, e.toString());
+        }
+    }
+
+    @Override
+    public void onMessage(org.springframework.data.redis.connection.Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int sep = body.indexOf('|');
+        if (sep <= 0 || body.substring(0, sep).equals(nodeId)) return;
+        conversationService.evictFromPeer(body.substring(sep + 1));
+    }
+}
@@ -0,0 +1,466 @@
+package com.example.chat.service;
+
+import com.example.chat.model.Message;
+import com.example.chat.repository.MessageRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Tầng lưu trữ lạnh cho tin nhắn cũ.
+ *
+ * Tin cũ hơn chat.archive.after-days được chuyển khỏi Postgres vào file segment chỉ-ghi-nối
+ * trên đĩa: mỗi hội thoại mỗi tháng (UTC) một file {root}/{hash[0..2]}/{hash}/{yyyyMM}.seg,
+ * gồm các block tối đa block-size tin (NDJSON nén Deflate). File .idx đi kèm là sparse index,
+ * mỗi block một entry cố định (offset, độ dài, số tin, thời gian min/max) để chỉ giải nén
+ * các block giao với cửa sổ cần đọc. Đọc bằng FileChannel.map (memory-mapped).
+ *
+ * getHistory đọc Postgres trước, hết tin nóng mới đọc tiếp ở đây. Tin đã lưu trữ chỉ đọc
+ * (không thu hồi / xoá lẻ / tìm kiếm được); bảng archived_messages giữ id -> hội thoại để
+ * phân biệt "đã lưu trữ" với "không tồn tại". Thư mục root phải dùng chung nếu chạy nhiều node;
+ * job chuyển tin giữ advisory lock nên chỉ một node chạy.
+ */
+@Service
+@ConditionalOnProperty(name = "chat.archive.enabled", havingValue = "true")
+public class MessageArchiveService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageArchiveService.class);
+
+    private static final String SEGMENT_EXT = ".seg";
+    private static final String INDEX_EXT = ".idx";
+    private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("yyyyMM");
+    private static final long LOCK_KEY = 0x6d73675f61726368L;
+    // Số tin mỗi lượt chuyển (một lượt = ghi segment rồi DELETE khỏi Postgres)
+    private static final int MOVE_CHUNK = 1000;
+
+    // Entry index: offset(8) compressedLen(4) rawLen(4) count(4) pad(4) minMicros(8) maxMicros(8)
+    private static final int ENTRY_SIZE = 40;
+
+    private static final Comparator<Message> ORDER =
+            Comparator.comparing(Message::getCreatedAt).thenComparing(Message::getId);
+
+    // Xoá khỏi Postgres và ghi dấu vết archived_messages trong cùng một câu lệnh
+    private static final String DELETE_SQL =
+            "WITH moved AS (DELETE FROM messages WHERE conversation_id = ? AND created_at < ? AND id = ANY(?) " +
+            "RETURNING id, conversation_id, created_at) " +
+            "INSERT INTO archived_messages (id, conversation_id, created_at) " +
+            "SELECT id, conversation_id, created_at FROM moved ON CONFLICT DO NOTHING";
+    private static final String LOCATE_SQL =
+            "SELECT conversation_id, created_at FROM archived_messages WHERE id = ?";
+
+    private final MessageRepository repo;
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final Path root;
+    private final Duration after;
+    private final int blockSize;
+
+    public MessageArchiveService(MessageRepository repo,
+                                 JdbcTemplate jdbcTemplate,
+                                 ObjectMapper objectMapper,
+                                 @Value("${chat.archive.root:archive}") String root,
+                                 @Value("${chat.archive.after-days:180}") int afterDays,
+                                 @Value("${chat.archive.block-size:256}") int blockSize) {
+        this.repo = repo;
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.root = Paths.get(root).toAbsolutePath().normalize();
+        this.after = Duration.ofDays(Math.max(1, afterDays));
+        this.blockSize = Math.max(1, blockSize);
+    }
+
+    private record BlockRef(long offset, int compressedLen, int rawLen, int count, long minMicros, long maxMicros) {}
+
+    // ===================== Đọc =====================
+
+    /**
+     * Tối đa limit tin cũ hơn cursor (cursor null = từ tin mới nhất trong archive), sắp DESC.
+     */
+    public List<Message> pageBefore(String conversationId, Cursor cursor, int limit) {
+        Path dir = dirOf(conversationId);
+        List<YearMonth> months = months(dir);
+        Collections.reverse(months);
+        long bound = cursor != null ? micros(cursor.time()) : Long.MAX_VALUE;
+        YearMonth maxMonth = cursor != null ? YearMonth.from(cursor.time().atZone(ZoneOffset.UTC)) : null;
+
+        Message pivot = cursor != null ? probe(cursor) : null;
+        List<Message> result = new ArrayList<>();
+        Comparator<Message> desc = ORDER.reversed();
+        for (YearMonth month : months) {
+            if (maxMonth != null && month.isAfter(maxMonth)) continue;
+            // Các tháng còn lại đều cũ hơn mọi tin đã lấy
+            if (result.size() >= limit) break;
+
+            List<BlockRef> blocks = new ArrayList<>();
+            for (BlockRef b : readIndex(dir, month)) {
+                if (b.minMicros <= bound) blocks.add(b);
+            }
+            blocks.sort(Comparator.comparingLong(BlockRef::maxMicros).reversed());
+
+            List<Message> inMonth = new ArrayList<>();
+            for (BlockRef b : blocks) {
+                if (inMonth.size() >= limit && b.maxMicros < micros(inMonth.get(limit - 1).getCreatedAt())) break;
+                for (Message m : readBlock(dir, month, b)) {
+                    if (pivot == null || ORDER.compare(m, pivot) < 0) inMonth.add(m);
+                }
+                inMonth = distinctSorted(inMonth, desc, limit);
+            }
+            result.addAll(inMonth);
+        }
+        return distinctSorted(result, desc, limit);
+    }
+
+    /**
+     * Tối đa limit tin mới hơn cursor trong archive, sắp ASC.
+     */
+    public List<Message> pageAfter(String conversationId, Cursor cursor, int limit) {
+        Path dir = dirOf(conversationId);
+        long bound = micros(cursor.time());
+        YearMonth minMonth = YearMonth.from(cursor.time().atZone(ZoneOffset.UTC));
+        Message pivot = probe(cursor);
+
+        List<Message> result = new ArrayList<>();
+        for (YearMonth month : months(dir)) {
+            if (month.isBefore(minMonth)) continue;
+            if (result.size() >= limit) break;
+
+            List<BlockRef> blocks = new ArrayList<>();
+            for (BlockRef b : readIndex(dir, month)) {
+                if (b.maxMicros >= bound) blocks.add(b);
+            }
+            blocks.sort(Comparator.comparingLong(BlockRef::minMicros));
+
+            List<Message> inMonth = new ArrayList<>();
+            for (BlockRef b : blocks) {
+                if (inMonth.size() >= limit && b.minMicros > micros(inMonth.get(limit - 1).getCreatedAt())) break;
+                for (Message m : readBlock(dir, month, b)) {
+                    if (ORDER.compare(m, pivot) > 0) inMonth.add(m);
+                }
+                inMonth = distinctSorted(inMonth, ORDER, limit);
+            }
+            result.addAll(inMonth);
+        }
+        return distinctSorted(result, ORDER, limit);
+    }
+
+    /**
+     * Tin có nằm trong archive không: dấu vết archived_messages cho hội thoại + thời điểm,
+     * sparse index của tháng đó cho block chứa thời điểm, rồi tìm id trong block.
+     */
+    public boolean contains(String messageId) {
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(LOCATE_SQL, messageId);
+        if (rows.isEmpty()) return false;
+        String conversationId = (String) rows.get(0).get("conversation_id");
+        Instant createdAt = ((Timestamp) rows.get(0).get("created_at")).toInstant();
+        long t = micros(createdAt);
+        Path dir = dirOf(conversationId);
+        YearMonth month = YearMonth.from(createdAt.atZone(ZoneOffset.UTC));
+        for (BlockRef b : readIndex(dir, month)) {
+            if (t < b.minMicros || t > b.maxMicros) continue;
+            for (Message m : readBlock(dir, month, b)) {
+                if (messageId.equals(m.getId())) return true;
+            }
+        }
+        return false;
+    }
+
+    private List<BlockRef> readIndex(Path dir, YearMonth month) {
+        Path index = dir.resolve(MONTH.format(month) + INDEX_EXT);
+        try (FileChannel ch = FileChannel.open(index, StandardOpenOption.READ)) {
+            // Entry ghi dở (crash) ở cuối file bị bỏ qua
+            long usable = ch.size() - ch.size() % ENTRY_SIZE;
+            if (usable == 0) return List.of();
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, usable);
+            List<BlockRef> refs = new ArrayList<>((int) (usable / ENTRY_SIZE));
+            while (buf.remaining() >= ENTRY_SIZE) {
+                long offset = buf.getLong();
+                int compressedLen = buf.getInt();
+                int rawLen = buf.getInt();
+                int count = buf.getInt();
+                buf.getInt();
+                refs.add(new BlockRef(offset, compressedLen, rawLen, count, buf.getLong(), buf.getLong()));
+            }
+            return refs;
+        } catch (NoSuchFileException e) {
+            return List.of();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private List<Message> readBlock(Path dir, YearMonth month, BlockRef b) {
+        Path segment = dir.resolve(MONTH.format(month) + SEGMENT_EXT);
+        try (FileChannel ch = FileChannel.open(segment, StandardOpenOption.READ)) {
+            MappedByteBuffer compressed = ch.map(FileChannel.MapMode.READ_ONLY, b.offset, b.compressedLen);
+            ByteBuffer raw = ByteBuffer.allocate(b.rawLen);
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(compressed);
+                while (!inflater.finished() && raw.hasRemaining()) {
+                    if (inflater.inflate(raw) == 0 && inflater.needsInput()) break;
+                }
+            } finally {
+                inflater.end();
+            }
+
+            List<Message> messages = new ArrayList<>(b.count);
+            String text = new String(raw.array(), 0, raw.position(), StandardCharsets.UTF_8);
+            for (String line : text.split("\n")) {
+                if (!line.isEmpty()) messages.add(objectMapper.readValue(line, Message.class));
+            }
+            return messages;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Segment hỏng: " + segment, e);
+        }
+    }
+
+    // ===================== Ghi =====================
+
+    /**
+     * Chuyển tin cũ hơn now - after-days từ Postgres sang archive, theo từng hội thoại.
+     */
+    @Scheduled(cron = "${chat.archive.cron:0 45 3 * * *}")
+    public void archiveOld() {
+        Instant cutoff = Instant.now().minus(after);
+        // Advisory lock gắn với connection: giữ nguyên connection trong suốt lượt chạy
+        jdbcTemplate.execute((Connection con) -> {
+            boolean locked;
+            try (PreparedStatement st = con.prepareStatement("SELECT pg_try_advisory_lock(?)")) {
+                st.setLong(1, LOCK_KEY);
+                try (ResultSet rs = st.executeQuery()) {
+                    locked = rs.next() && rs.getBoolean(1);
+                }
+            }
+            if (!locked) return null;
+            try {
+                long moved = 0;
+                for (String conversationId : repo.findConversationIdsBefore(cutoff)) {
+                    moved += archiveConversation(conversationId, cutoff);
+                }
+                if (moved > 0) logger.info("Archived {} messages older than {}", moved, cutoff);
+            } catch (Exception e) {
+                logger.error("Archiving messages failed: {}", e.toString(), e);
+            } finally {
+                try (PreparedStatement st = con.prepareStatement("SELECT pg_advisory_unlock(?)")) {
+                    st.setLong(1, LOCK_KEY);
+                    st.execute();
+                }
+            }
+            return null;
+        });
+    }
+
+    private long archiveConversation(String conversationId, Instant cutoff) {
+        long moved = 0;
+        while (true) {
+            List<Message> rows = repo.findArchivable(conversationId, cutoff, PageRequest.of(0, MOVE_CHUNK));
+            if (rows.isEmpty()) break;
+
+            // Ghi (fsync) trước, xoá sau: crash ở giữa chỉ để lại bản trùng, đọc sẽ lọc theo id
+            synchronized (this) {
+                Map<YearMonth, List<Message>> byMonth = new TreeMap<>();
+                for (Message m : rows) {
+                    byMonth.computeIfAbsent(YearMonth.from(m.getCreatedAt().atZone(ZoneOffset.UTC)),
+                            k -> new ArrayList<>()).add(m);
+                }
+                Path dir = dirOf(conversationId);
+                for (Map.Entry<YearMonth, List<Message>> e : byMonth.entrySet()) {
+                    List<Message> list = e.getValue();
+                    for (int i = 0; i < list.size(); i += blockSize) {
+                        appendBlock(dir, e.getKey(), list.subList(i, Math.min(list.size(), i + blockSize)));
+                    }
+                }
+            }
+
+            String[] ids = rows.stream().map(Message::getId).toArray(String[]::new);
+            jdbcTemplate.update(con -> {
+                PreparedStatement ps = con.prepareStatement(DELETE_SQL);
+                ps.setString(1, conversationId);
+                ps.setTimestamp(2, Timestamp.from(cutoff));
+                ps.setArray(3, con.createArrayOf("varchar", ids));
+                return ps;
+            });
+            moved += rows.size();
+            if (rows.size() < MOVE_CHUNK) break;
+        }
+        return moved;
+    }
+
+    private void appendBlock(Path dir, YearMonth month, List<Message> block) {
+        try {
+            Files.createDirectories(dir);
+            ByteArrayOutputStream raw = new ByteArrayOutputStream();
+            for (Message m : block) {
+                raw.write(objectMapper.writeValueAsBytes(m));
+                raw.write('\n');
+            }
+            byte[] rawBytes = raw.toByteArray();
+            byte[] compressed = deflate(rawBytes);
+
+            long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+            for (Message m : block) {
+                long t = micros(m.getCreatedAt());
+                min = Math.min(min, t);
+                max = Math.max(max, t);
+            }
+
+            long offset;
+            try (FileChannel seg = FileChannel.open(dir.resolve(MONTH.format(month) + SEGMENT_EXT),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                offset = seg.size();
+                seg.position(offset);
+                writeFully(seg, ByteBuffer.wrap(compressed));
+                seg.force(false);
+            }
+
+            ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+            entry.putLong(offset).putInt(compressed.length).putInt(rawBytes.length).putInt(block.size()).putInt(0)
+                    .putLong(min).putLong(max).flip();
+            try (FileChannel idx = FileChannel.open(dir.resolve(MONTH.format(month) + INDEX_EXT),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                // Cắt entry ghi dở của lần crash trước để các entry luôn thẳng hàng
+                long size = idx.size();
+                if (size % ENTRY_SIZE != 0) idx.truncate(size - size % ENTRY_SIZE);
+                idx.position(idx.size());
+                writeFully(idx, entry);
+                idx.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Xoá toàn bộ archive của hội thoại; onImage nhận url ảnh của từng tin để giảm ref count.
+     */
+    public synchronized long deleteConversation(String conversationId, Consumer<String> onImage) {
+        jdbcTemplate.update("DELETE FROM archived_messages WHERE conversation_id = ?", conversationId);
+        Path dir = dirOf(conversationId);
+        if (!Files.isDirectory(dir)) return 0;
+        Set<String> seen = new HashSet<>();
+        for (YearMonth month : months(dir)) {
+            for (BlockRef b : readIndex(dir, month)) {
+                for (Message m : readBlock(dir, month, b)) {
+                    if (seen.add(m.getId()) && "image".equals(m.getType())) onImage.accept(m.getContent());
+                }
+            }
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(p);
+            }
+            Files.deleteIfExists(dir);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return seen.size();
+    }
+
+    // ===================== Tiện ích =====================
+
+    private Path dirOf(String conversationId) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(conversationId.getBytes(StandardCharsets.UTF_8));
+            String hash = HexFormat.of().formatHex(digest);
+            return root.resolve(hash.substring(0, 2)).resolve(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Các tháng có segment, tăng dần
+    private static List<YearMonth> months(Path dir) {
+        if (!Files.isDirectory(dir)) return new ArrayList<>();
+        List<YearMonth> months = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.map(p -> p.getFileName().toString())
+                    .filter(n -> n.endsWith(INDEX_EXT))
+                    .forEach(n -> months.add(YearMonth.parse(n.substring(0, n.length() - INDEX_EXT.length()), MONTH)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Collections.sort(months);
+        return months;
+    }
+
+    private static List<Message> distinctSorted(List<Message> messages, Comparator<Message> order, int limit) {
+        Map<String, Message> byId = new LinkedHashMap<>();
+        for (Message m : messages) byId.putIfAbsent(m.getId(), m);
+        List<Message> sorted = new ArrayList<>(byId.values());
+        sorted.sort(order);
+        return sorted.size() > limit ? new ArrayList<>(sorted.subList(0, limit)) : sorted;
+    }
+
+    private static Message probe(Cursor cursor) {
+        Message m = new Message();
+        m.setCreatedAt(cursor.time());
+        m.setId(cursor.id());
+        return m;
+    }
+
+    private static long micros(Instant t) {
+        return t.getEpochSecond() * 1_000_000L + t.getNano() / 1_000;
+    }
+
+    private static byte[] deflate(byte[] input) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, input.length / 4));
+            byte[] buf = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buf);
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            ch.write(buf);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.chat.service;
+
+import com.example.chat.model.Message;
+import com.example.chat.model.MessageCreatedEvent;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Mỗi node có group riêng nên nhận toàn bộ message.created và đẩy tới các
+ * session WebSocket đang kết nối trên node đó. Khi bật chat.cluster.enabled thì
+ * MessageCreatedProjector route thẳng tới node cần nhận nên listener này tắt.
+ */
+@Component
+@ConditionalOnExpression("'${chat.pipeline.mode:inline}' == 'kafka' && !${chat.cluster.enabled:false}")
+public class MessageCreatedFanout {
+
+    private static final int RECENT_IDS = 10_000;
+
+    private final MessageFanoutService fanoutService;
+    private final RecentMessageCache recentCache;
+
+    // Chống đẩy trùng khi Kafka redeliver (LRU theo message id)
+    private final Map<String, Boolean> recentlyPushed = new LinkedHashMap<>(1024, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > RECENT_IDS;
+        }
+    };
+
+    // Group theo node id cố định: restart giữ nguyên group, không bỏ lại group mồ côi trên broker
+    private final String groupId;
+
+    public MessageCreatedFanout(MessageFanoutService fanoutService,
+                                RecentMessageCache recentCache,
+                                @Value("${chat.pipeline.fanout-group-prefix:chat-service-fanout}") String groupPrefix,
+                                @Value("${chat.cluster.node-id:}") String nodeId) {
+        this.fanoutService = fanoutService;
+        this.recentCache = recentCache;
+        this.groupId = groupPrefix + "-" + stableNodeId(nodeId);
+    }
+
+    public String getGroupId() { return groupId; }
+
+    /**
+     * chat.cluster.node-id, nếu trống thì hostname (HOSTNAME / tên pod) - ổn định qua restart.
+     * Chạy nhiều node trên cùng một máy thì phải đặt node-id riêng cho từng node.
+     */
+    static String stableNodeId(String configured) {
+        if (configured != null && !configured.isBlank()) return configured;
+        String host = System.getenv("HOSTNAME");
+        if (host != null && !host.isBlank()) return host;
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException("Set chat.cluster.node-id: hostname is not resolvable", e);
+        }
+    }
+
+    @KafkaListener(
+            topics = MessageService.TOPIC_MESSAGE_CREATED,
+            groupId = "#{__listener.groupId}",
+            containerFactory = "messageBatchListenerFactory",
+            properties = "auto.offset.reset=latest"
+    )
+    public void onBatch(List<ConsumerRecord<String, MessageCreatedEvent>> records) {
+        for (ConsumerRecord<String, MessageCreatedEvent> record : records) {
+            Message m = record.value() != null ? record.value().toMessage() : null;
+            if (m == null || m.getId() == null || !markPushed(m.getId())) continue;
+            // Tin gửi từ node khác: cập nhật cache trang đầu của node này (trùng id thì bỏ qua)
+            recentCache.onSaved(m);
+            fanoutService.messageCreated(m);
+        }
+    }
+
+    private synchronized boolean markPushed(String messageId) {
+        return recentlyPushed.put(messageId, Boolean.TRUE) == null;
+    }
+}
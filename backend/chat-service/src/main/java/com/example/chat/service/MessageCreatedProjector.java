@@ -0,0 +1,93 @@
+package com.example.chat.service;
+
+import com.example.chat.model.Message;
+import com.example.chat.model.MessageCreatedEvent;
+import com.example.chat.repository.ProcessedMessageRepository;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Consumer group dùng chung cho cả cluster: cập nhật inbox / unread từ message.created.
+ * Mỗi partition (key = conversationId) do đúng một consumer xử lý nên thứ tự trong
+ * một hội thoại được giữ; scale ngang bằng số partition.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.pipeline.mode", havingValue = "kafka")
+public class MessageCreatedProjector {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageCreatedProjector.class);
+    private static final Duration PROCESSED_RETENTION = Duration.ofDays(7);
+
+    private final InboxService inboxService;
+    private final MessageFanoutService fanoutService;
+    private final ProcessedMessageRepository processedRepo;
+    private final TransactionTemplate tx;
+    // Cluster routing bật: projector đẩy WebSocket qua ClusterRouter, không dùng group fan-out theo node
+    private final boolean routeFanout;
+
+    public MessageCreatedProjector(InboxService inboxService,
+                                   MessageFanoutService fanoutService,
+                                   ProcessedMessageRepository processedRepo,
+                                   PlatformTransactionManager txManager,
+                                   @Value("${chat.cluster.enabled:false}") boolean clusterEnabled) {
+        this.inboxService = inboxService;
+        this.fanoutService = fanoutService;
+        this.routeFanout = clusterEnabled;
+        this.processedRepo = processedRepo;
+        this.tx = new TransactionTemplate(txManager);
+    }
+
+    @KafkaListener(
+            topics = MessageService.TOPIC_MESSAGE_CREATED,
+            groupId = "${chat.pipeline.projector-group:chat-service-projector}",
+            concurrency = "${chat.pipeline.concurrency:3}",
+            containerFactory = "messageBatchListenerFactory"
+    )
+    public void onBatch(List<ConsumerRecord<String, MessageCreatedEvent>> records) {
+        // Cả lô trong một transaction: claim id + cập nhật inbox cùng commit/rollback,
+        // lô bị retry thì những tin đã claim sẽ được bỏ qua
+        List<Message> claimed = tx.execute(status -> {
+            List<Message> applied = new ArrayList<>();
+            for (ConsumerRecord<String, MessageCreatedEvent> record : records) {
+                Message m = record.value() != null ? record.value().toMessage() : null;
+                if (m == null || m.getId() == null) {
+                    logger.warn("Skipping undecodable message.created record at {}-{}@{}",
+                            record.topic(), record.partition(), record.offset());
+                    continue;
+                }
+                if (processedRepo.claim(m.getId()) == 1) {
+                    inboxService.onMessageSaved(m);
+                    applied.add(m);
+                }
+            }
+            return applied;
+        });
+        logger.debug("message.created batch: {} records, {} applied", records.size(),
+                claimed != null ? claimed.size() : 0);
+
+        // Đẩy sau khi commit để không push tin của một lô bị rollback
+        if (routeFanout && claimed != null) {
+            claimed.forEach(fanoutService::messageCreated);
+        }
+    }
+
+    @Scheduled(cron = "${chat.pipeline.processed-cleanup-cron:0 30 3 * * *}")
+    public void purgeProcessedIds() {
+        Integer removed = tx.execute(status ->
+                processedRepo.deleteOlderThan(Instant.now().minus(PROCESSED_RETENTION)));
+        logger.info("Purged {} processed message ids", removed);
+    }
+}
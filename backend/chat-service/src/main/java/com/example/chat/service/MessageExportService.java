@@ -0,0 +1,76 @@
+package com.example.chat.service;
+
+import com.example.chat.model.Message;
+import com.example.chat.repository.MessageRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Xuất tin nhắn dạng NDJSON (mỗi dòng một JSON) thẳng ra response,
+ * đọc bằng JDBC cursor nên heap không phụ thuộc kích thước bảng.
+ */
+@Service
+public class MessageExportService {
+
+    // Số dòng giữa hai lần flush/clear persistence context
+    private static final int FLUSH_EVERY = 500;
+
+    private final MessageRepository repo;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate readOnlyTx;
+
+    public MessageExportService(MessageRepository repo,
+                                EntityManager entityManager,
+                                ObjectMapper objectMapper,
+                                PlatformTransactionManager txManager) {
+        this.repo = repo;
+        this.entityManager = entityManager;
+        this.objectMapper = objectMapper;
+        this.readOnlyTx = new TransactionTemplate(txManager);
+        this.readOnlyTx.setReadOnly(true);
+    }
+
+    /**
+     * @return số tin nhắn đã ghi
+     */
+    public long export(String conversationId, Instant from, Instant to, OutputStream out) {
+        if (from != null && to != null && !from.isBefore(to)) {
+            throw new IllegalArgumentException("from phải nhỏ hơn to");
+        }
+
+        // Postgres chỉ stream theo fetch size khi autocommit tắt -> cần transaction
+        Long written = readOnlyTx.execute(status -> {
+            try (Stream<Message> stream = conversationId != null
+                    ? repo.streamByConversation(conversationId, from, to)
+                    : repo.streamByTimeRange(from, to)) {
+                long count = 0;
+                Iterator<Message> it = stream.iterator();
+                while (it.hasNext()) {
+                    Message m = it.next();
+                    out.write(objectMapper.writeValueAsBytes(m));
+                    out.write('\n');
+                    entityManager.detach(m);
+                    if (++count % FLUSH_EVERY == 0) {
+                        out.flush();
+                    }
+                }
+                out.flush();
+                return count;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return written != null ? written : 0;
+    }
+}
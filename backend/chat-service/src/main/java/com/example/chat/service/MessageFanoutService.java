@@ -0,0 +1,189 @@
+package com.example.chat.service;
+
+import com.example.chat.model.Message;
+import com.example.chat.model.MessageCreatedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Đẩy sự kiện tới các session WebSocket. Khi bật chat.cluster.enabled thì đi qua
+ * ClusterRouter để tới đúng node đang giữ session, ngược lại gửi thẳng simple broker local.
+ *
+ * Tin mới: nhóm nhỏ (số người nhận <= chat.fanout.group-topic-threshold) được gửi vào
+ * /user/queue/messages của từng người; nhóm lớn gửi một lần vào /topic/messages.{id}
+ * mà thành viên subscribe, để chi phí mỗi tin không tăng theo số thành viên.
+ * Người nhận đã chặn người gửi bị bỏ qua (BlockListCache); nếu nhóm lớn có thành viên
+ * đã chặn người gửi thì tin đó không đi topic mà gửi theo từng user cho những người còn lại.
+ *
+ * Thu hồi / xoá tin đi theo cùng cách chia (queue theo user hoặc topic của hội thoại)
+ * với payload tối giản MessageChange, nên chi phí theo số thành viên chứ không theo
+ * tổng số session đang kết nối.
+ */
+@Service
+public class MessageFanoutService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageFanoutService.class);
+
+    // Nhóm kích thước (số thành viên) cho thống kê chi phí gửi
+    private static final int[] SIZE_BUCKETS = {2, 10, 50, 200, Integer.MAX_VALUE};
+
+    private final @Nullable SimpMessagingTemplate messagingTemplate;
+    private final @Nullable ClusterRouter clusterRouter;
+    private final ConversationService conversationService;
+    private final BlockListCache blockListCache;
+    private final int groupTopicThreshold;
+
+    // Theo từng bucket: số tin, số lần gửi, tổng thời gian gửi (ns)
+    private final AtomicLongArray messages = new AtomicLongArray(SIZE_BUCKETS.length);
+    private final AtomicLongArray sends = new AtomicLongArray(SIZE_BUCKETS.length);
+    private final AtomicLongArray nanos = new AtomicLongArray(SIZE_BUCKETS.length);
+
+    /**
+     * Payload cho message.recalled / message.deleted.
+     */
+    public record MessageChange(String messageId, String conversationId, Instant at) {}
+
+    public MessageFanoutService(@Nullable SimpMessagingTemplate messagingTemplate,
+                                @Nullable ClusterRouter clusterRouter,
+                                ConversationService conversationService,
+                                BlockListCache blockListCache,
+                                @Value("${chat.fanout.group-topic-threshold:20}") int groupTopicThreshold) {
+        this.messagingTemplate = messagingTemplate;
+        this.clusterRouter = clusterRouter;
+        this.conversationService = conversationService;
+        this.blockListCache = blockListCache;
+        this.groupTopicThreshold = groupTopicThreshold;
+    }
+
+    public void messageCreated(Message saved) {
+        long start = System.nanoTime();
+        List<String> members = conversationService.participants(saved.getConversationId());
+        // Payload là schema sự kiện có version, encode một lần cho mọi người nhận (WireCodec)
+        MessageCreatedEvent event = MessageCreatedEvent.of(saved);
+
+        int sent;
+        boolean topic = useTopic(members);
+        if (topic && anyBlocked(members, saved.getSenderId())) {
+            // Topic không loại được từng người: tin này đi theo user (hiếm, chỉ check Bloom filter)
+            topic = false;
+        }
+        if (topic) {
+            toTopic("/topic/messages." + saved.getConversationId(), event);
+            sent = 1;
+        } else {
+            sent = 0;
+            for (String userId : members) {
+                if (userId.equals(saved.getSenderId())) continue;
+                if (blockListCache.isBlocked(userId, saved.getSenderId())) continue;
+                toUser(userId, "/queue/messages", event);
+                sent++;
+            }
+        }
+
+        int bucket = bucketOf(members.size());
+        messages.incrementAndGet(bucket);
+        sends.addAndGet(bucket, sent);
+        nanos.addAndGet(bucket, System.nanoTime() - start);
+    }
+
+    private boolean anyBlocked(List<String> members, String senderId) {
+        for (String userId : members) {
+            if (!userId.equals(senderId) && blockListCache.isBlocked(userId, senderId)) return true;
+        }
+        return false;
+    }
+
+    public void messageRecalled(Message m) {
+        Instant at = m.getRecalledAt() != null ? m.getRecalledAt() : Instant.now();
+        conversationEvent(m.getConversationId(), "message.recalled",
+                new MessageChange(m.getId(), m.getConversationId(), at));
+    }
+
+    public void messageDeleted(Message m) {
+        conversationEvent(m.getConversationId(), "message.deleted",
+                new MessageChange(m.getId(), m.getConversationId(), Instant.now()));
+    }
+
+    /**
+     * Quyết định chung cho mọi sự kiện của hội thoại, để client nhận tin mới ở đâu thì nhận
+     * thu hồi / xoá ở đó: topic khi số người nhận (trừ người gửi) vượt ngưỡng, hoặc khi không
+     * biết thành viên.
+     */
+    private boolean useTopic(List<String> members) {
+        return members.isEmpty() || members.size() - 1 > groupTopicThreshold;
+    }
+
+    // Gửi cho mọi thành viên (kể cả người gửi, để các thiết bị khác của họ cập nhật):
+    // /user/queue/{event} nếu nhóm nhỏ, ngược lại /topic/{event}.{conversationId}
+    private void conversationEvent(String conversationId, String event, Object payload) {
+        List<String> members = conversationService.participants(conversationId);
+        if (useTopic(members)) {
+            toTopic("/topic/" + event + "." + conversationId, payload);
+            return;
+        }
+        for (String userId : members) {
+            toUser(userId, "/queue/" + event, payload);
+        }
+    }
+
+    /**
+     * Chi phí gửi trung bình theo kích thước hội thoại (để so sánh queue theo user vs topic).
+     */
+    public List<Map<String, Object>> getDeliveryStats() {
+        List<Map<String, Object>> stats = new ArrayList<>();
+        int lower = 1;
+        for (int i = 0; i < SIZE_BUCKETS.length; i++) {
+            long count = messages.get(i);
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("members", SIZE_BUCKETS[i] == Integer.MAX_VALUE ? lower + "+" : lower + "-" + SIZE_BUCKETS[i]);
+            row.put("messages", count);
+            row.put("sendsPerMessage", count == 0 ? 0.0 : (double) sends.get(i) / count);
+            row.put("avgMicrosPerMessage", count == 0 ? 0.0 : nanos.get(i) / 1000.0 / count);
+            stats.add(row);
+            lower = SIZE_BUCKETS[i] + 1;
+        }
+        return stats;
+    }
+
+    private static int bucketOf(int members) {
+        for (int i = 0; i < SIZE_BUCKETS.length; i++) {
+            if (members <= SIZE_BUCKETS[i]) return i;
+        }
+        return SIZE_BUCKETS.length - 1;
+    }
+
+    public void toUser(String userId, String destination, Object payload) {
+        try {
+            if (clusterRouter != null) {
+                clusterRouter.toUser(userId, destination, payload);
+            } else if (messagingTemplate != null) {
+                messagingTemplate.convertAndSendToUser(userId, destination, payload);
+            }
+        } catch (Exception e) {
+            logger.error("WebSocket send to user {} failed: {}", userId, e.toString(), e);
+        }
+    }
+
+    public void toTopic(String destination, Object payload) {
+        try {
+            if (clusterRouter != null) {
+                clusterRouter.toTopic(destination, payload);
+            } else if (messagingTemplate != null) {
+                messagingTemplate.convertAndSend(destination, payload);
+            }
+        } catch (Exception e) {
+            logger.error("WebSocket send to {} failed: {}", destination, e.toString(), e);
+        }
+    }
+}
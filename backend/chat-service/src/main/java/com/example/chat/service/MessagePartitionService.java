@@ -0,0 +1,397 @@
+package com.example.chat.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bảng messages phân vùng theo tháng (RANGE trên created_at, UTC).
+ *
+ * Lần đầu bật: bảng messages hiện có được đổi tên thành messages_legacy và gắn làm partition
+ * [MINVALUE, đầu tháng kế tiếp) của bảng cha mới, nên không phải copy dữ liệu; PK thành
+ * (id, created_at) và unique (sender_id, client_temp_id) thêm created_at vì Postgres bắt buộc
+ * ràng buộc unique chứa khoá phân vùng. Trước khi khoá bảng, CHECK (created_at IS NOT NULL AND
+ * created_at < cận) được thêm NOT VALID rồi VALIDATE trong transaction riêng (chỉ khoá SHARE
+ * UPDATE EXCLUSIVE, vẫn ghi được), nên SET NOT NULL và ATTACH dưới ACCESS EXCLUSIVE không phải
+ * quét lại bảng. Sau đó job định kỳ tạo trước partition messages_pYYYYMM
+ * cho chat.partitioning.months-ahead tháng tới, và nếu chat.partitioning.retention-months > 0
+ * thì DETACH + DROP nguyên partition đã quá hạn thay vì DELETE từng dòng. Tin có created_at ở
+ * tương lai rơi vào messages_default; khi tạo partition cho tháng đó, các dòng này được chuyển
+ * sang bảng mới rồi mới ATTACH (CREATE ... PARTITION OF sẽ lỗi nếu default còn dòng thuộc khoảng).
+ *
+ * FK từ bảng khác trỏ vào messages(id) không giữ được sau khi đổi PK: migration dừng lại
+ * trừ khi chat.partitioning.drop-foreign-keys=true. Retention chạy dưới cùng advisory lock;
+ * partition đã DETACH được dọn theo lô (release ảnh + xoá dòng trong một transaction) rồi mới
+ * DROP, nên node crash giữa chừng thì lần chạy sau tiếp tục với bảng còn sót.
+ */
+@Service
+@ConditionalOnProperty(name = "chat.partitioning.enabled", havingValue = "true")
+public class MessagePartitionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessagePartitionService.class);
+
+    private static final String LEGACY = "messages_legacy";
+    private static final String DEFAULT_PARTITION = "messages_default";
+    private static final String PREFIX = "messages_p";
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+    // Khoá advisory để nhiều node không cùng chạy DDL
+    private static final long LOCK_KEY = 0x6d73675f70617274L;
+
+    private static final String RELKIND_SQL =
+            "SELECT c.relkind::text FROM pg_class c WHERE c.oid = to_regclass('messages')";
+    private static final String INDEXES_SQL =
+            "SELECT ic.relname AS name, pg_get_indexdef(i.indexrelid) AS def, " +
+            "i.indisunique AS is_unique, i.indisprimary AS is_primary " +
+            "FROM pg_index i JOIN pg_class ic ON ic.oid = i.indexrelid " +
+            "WHERE i.indrelid = 'messages'::regclass";
+    private static final String INCOMING_FK_SQL =
+            "SELECT conrelid::regclass::text AS tbl, conname FROM pg_constraint " +
+            "WHERE confrelid = 'messages'::regclass AND contype = 'f'";
+    private static final String PARTITIONS_SQL =
+            "SELECT c.relname FROM pg_inherits h JOIN pg_class c ON c.oid = h.inhrelid " +
+            "WHERE h.inhparent = 'messages'::regclass";
+    // Partition đã DETACH nhưng chưa DROP (lần retention trước dừng giữa chừng)
+    private static final String DETACHED_SQL =
+            "SELECT c.relname FROM pg_class c WHERE c.relkind = 'r' AND NOT c.relispartition " +
+            "AND pg_table_is_visible(c.oid) AND (c.relname ~ '^" + PREFIX + "[0-9]{6}$' OR c.relname = '" + LEGACY + "')";
+    private static final int RELEASE_CHUNK = 1000;
+    // CHECK giúp ATTACH/SET NOT NULL bỏ qua bước quét bảng cũ
+    private static final String BOUND_CHECK = "messages_created_at_bound";
+    private static final String BOUND_SQL =
+            "SELECT (regexp_match(pg_get_constraintdef(c.oid), '''([^'']+)'''))[1]::timestamptz " +
+            "FROM pg_constraint c WHERE c.conrelid = to_regclass('messages') AND c.conname = '" + BOUND_CHECK + "' " +
+            "AND c.convalidated";
+    private static final String COLUMNS_SQL =
+            "SELECT string_agg(quote_ident(a.attname), ', ' ORDER BY a.attnum) FROM pg_attribute a " +
+            "WHERE a.attrelid = 'messages'::regclass AND a.attnum > 0 AND NOT a.attisdropped AND a.attgenerated = ''";
+    private static final String LEGACY_UPPER_SQL =
+            "SELECT (regexp_match(pg_get_expr(c.relpartbound, c.oid), 'TO \\(''([^'']+)''\\)'))[1]::timestamptz " +
+            "FROM pg_class c WHERE c.relname = '" + LEGACY + "' AND c.relispartition";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate tx;
+    private final AttachmentStore attachmentStore;
+    private final int monthsAhead;
+    private final int retentionMonths;
+    private final boolean dropForeignKeys;
+
+    public MessagePartitionService(JdbcTemplate jdbcTemplate,
+                                   PlatformTransactionManager transactionManager,
+                                   AttachmentStore attachmentStore,
+                                   @Value("${chat.partitioning.months-ahead:3}") int monthsAhead,
+                                   @Value("${chat.partitioning.retention-months:0}") int retentionMonths,
+                                   @Value("${chat.partitioning.drop-foreign-keys:false}") boolean dropForeignKeys) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.attachmentStore = attachmentStore;
+        this.monthsAhead = Math.max(1, monthsAhead);
+        this.retentionMonths = retentionMonths;
+        this.dropForeignKeys = dropForeignKeys;
+    }
+
+    /**
+     * Đầu tháng (UTC) của thời điểm t lùi lại monthsBack tháng: cận dưới cửa sổ truy vấn
+     * để Postgres chỉ quét các partition liên quan.
+     */
+    public static Instant monthStart(Instant t, int monthsBack) {
+        return YearMonth.from(t.atZone(ZoneOffset.UTC)).minusMonths(monthsBack)
+                .atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void init() {
+        try {
+            migrateIfNeeded();
+        } catch (Exception e) {
+            logger.error("Partitioning messages failed, table left as is: {}", e.toString(), e);
+            return;
+        }
+        maintain();
+    }
+
+    @Scheduled(cron = "${chat.partitioning.cron:0 15 3 * * *}")
+    public void maintain() {
+        try {
+            createAhead();
+        } catch (Exception e) {
+            logger.error("Creating message partitions failed: {}", e.toString(), e);
+        }
+        if (retentionMonths > 0) {
+            try {
+                detachExpired();
+            } catch (Exception e) {
+                logger.error("Message retention failed: {}", e.toString(), e);
+            }
+        }
+        // Chạy cả khi đã tắt retention: dọn nốt partition đã detach từ lần trước
+        try {
+            dropDetached();
+        } catch (Exception e) {
+            logger.error("Dropping detached message partitions failed: {}", e.toString(), e);
+        }
+    }
+
+    private void migrateIfNeeded() {
+        if (!"r".equals(relkind())) return;
+        if (!addBoundCheck()) return;
+        try {
+            // SHARE UPDATE EXCLUSIVE: quét toàn bảng nhưng không chặn đọc/ghi
+            tx.executeWithoutResult(status ->
+                    jdbcTemplate.execute("ALTER TABLE messages VALIDATE CONSTRAINT " + BOUND_CHECK));
+            if (convert()) return;
+        } catch (RuntimeException e) {
+            // CHECK còn lại sẽ chặn insert khi sang tháng vượt cận: bỏ đi, lần sau thêm lại
+            dropBoundCheck();
+            throw e;
+        }
+        dropBoundCheck();
+    }
+
+    /**
+     * Thêm CHECK cận trên NOT VALID (chỉ khoá ngắn, không quét). Cận = đầu tháng sau của
+     * GREATEST(max created_at, now() + 1 ngày) để insert mới không vượt cận trong lúc VALIDATE.
+     */
+    private boolean addBoundCheck() {
+        Boolean added = tx.execute(status -> {
+            if (!"r".equals(relkind()) || !tryLock()) return false;
+            // Dừng trước khi quét bảng nếu đằng nào cũng không chuyển được
+            incomingForeignKeys();
+            jdbcTemplate.execute("SET LOCAL lock_timeout = '5s'");
+            // Khoá phân vùng không được NULL
+            jdbcTemplate.update("UPDATE messages SET created_at = now() WHERE created_at IS NULL");
+            Timestamp maxCreated = jdbcTemplate.queryForObject(
+                    "SELECT GREATEST(MAX(created_at), now() + interval '1 day') FROM messages", Timestamp.class);
+            Instant boundary = monthStart(maxCreated.toInstant(), -1);
+            // Lần trước dừng giữa chừng: cận cũ có thể đã lỗi thời
+            jdbcTemplate.execute("ALTER TABLE messages DROP CONSTRAINT IF EXISTS " + BOUND_CHECK);
+            jdbcTemplate.execute("ALTER TABLE messages ADD CONSTRAINT " + BOUND_CHECK +
+                    " CHECK (created_at IS NOT NULL AND created_at < '" + boundary + "') NOT VALID");
+            return true;
+        });
+        return Boolean.TRUE.equals(added);
+    }
+
+    // FK trỏ vào messages(id) không còn hợp lệ khi PK thành (id, created_at)
+    private List<Map<String, Object>> incomingForeignKeys() {
+        List<Map<String, Object>> foreignKeys = jdbcTemplate.queryForList(INCOMING_FK_SQL);
+        if (!foreignKeys.isEmpty() && !dropForeignKeys) {
+            List<String> names = foreignKeys.stream().map(fk -> fk.get("tbl") + "." + fk.get("conname")).toList();
+            throw new IllegalStateException("Foreign keys " + names + " reference messages; partitioning would " +
+                    "drop them. Set chat.partitioning.drop-foreign-keys=true to proceed");
+        }
+        return foreignKeys;
+    }
+
+    private void dropBoundCheck() {
+        try {
+            tx.executeWithoutResult(status -> {
+                if ("r".equals(relkind())) {
+                    jdbcTemplate.execute("ALTER TABLE messages DROP CONSTRAINT IF EXISTS " + BOUND_CHECK);
+                }
+            });
+        } catch (Exception e) {
+            logger.error("Dropping {} failed, drop it manually: {}", BOUND_CHECK, e.toString());
+        }
+    }
+
+    private boolean convert() {
+        Boolean converted = tx.execute(status -> {
+            if (!"r".equals(relkind()) || !tryLock()) return false;
+            jdbcTemplate.execute("LOCK TABLE messages IN ACCESS EXCLUSIVE MODE");
+            if (!"r".equals(relkind())) return false;
+            List<Timestamp> bound = jdbcTemplate.queryForList(BOUND_SQL, Timestamp.class);
+            if (bound.isEmpty() || bound.get(0) == null) {
+                throw new IllegalStateException(BOUND_CHECK + " missing or not validated");
+            }
+            Instant boundary = bound.get(0).toInstant();
+
+            List<Map<String, Object>> indexes = jdbcTemplate.queryForList(INDEXES_SQL);
+
+            for (Map<String, Object> fk : incomingForeignKeys()) {
+                jdbcTemplate.execute("ALTER TABLE " + fk.get("tbl") + " DROP CONSTRAINT \"" + fk.get("conname") + "\"");
+                logger.warn("Dropped foreign key {} on {} (messages is now partitioned)", fk.get("conname"), fk.get("tbl"));
+            }
+
+            // CHECK đã VALIDATE chứng minh không có NULL: không quét bảng
+            jdbcTemplate.execute("ALTER TABLE messages ALTER COLUMN created_at SET NOT NULL");
+
+            jdbcTemplate.execute("ALTER TABLE messages RENAME TO " + LEGACY);
+            for (Map<String, Object> idx : indexes) {
+                String name = (String) idx.get("name");
+                jdbcTemplate.execute("ALTER INDEX \"" + name + "\" RENAME TO \"" + legacyName(name) + "\"");
+            }
+
+            jdbcTemplate.execute("CREATE TABLE messages (LIKE " + LEGACY + " INCLUDING DEFAULTS INCLUDING GENERATED) " +
+                    "PARTITION BY RANGE (created_at)");
+            jdbcTemplate.execute("ALTER TABLE messages ADD CONSTRAINT messages_pkey PRIMARY KEY (id, created_at)");
+            for (Map<String, Object> idx : indexes) {
+                if (Boolean.TRUE.equals(idx.get("is_primary"))) continue;
+                String def = (String) idx.get("def");
+                if (Boolean.TRUE.equals(idx.get("is_unique"))) {
+                    def = withPartitionKey(def);
+                    if (def == null) {
+                        logger.warn("Unique index {} not recreated on partitioned messages", idx.get("name"));
+                        continue;
+                    }
+                }
+                jdbcTemplate.execute(def);
+            }
+
+            // Index trùng định nghĩa trên bảng cũ được gắn lại, không build lại; CHECK đã
+            // VALIDATE bao hàm cận partition nên ATTACH không quét bảng
+            jdbcTemplate.execute("ALTER TABLE messages ATTACH PARTITION " + LEGACY +
+                    " FOR VALUES FROM (MINVALUE) TO ('" + boundary + "')");
+            jdbcTemplate.execute("ALTER TABLE " + LEGACY + " DROP CONSTRAINT " + BOUND_CHECK);
+            jdbcTemplate.execute("CREATE TABLE " + DEFAULT_PARTITION + " PARTITION OF messages DEFAULT");
+            logger.info("messages converted to a partitioned table; existing rows kept in {} (< {})", LEGACY, boundary);
+            return true;
+        });
+        return Boolean.TRUE.equals(converted);
+    }
+
+    private void createAhead() {
+        tx.executeWithoutResult(status -> {
+            if (!"p".equals(relkind()) || !tryLock()) return;
+
+            Instant legacyUpper = legacyUpperBound();
+            Instant now = Instant.now();
+            for (int i = 0; i <= monthsAhead; i++) {
+                Instant from = monthStart(now, -i);
+                if (legacyUpper != null && from.isBefore(legacyUpper)) continue;
+                Instant to = monthStart(now, -i - 1);
+                createPartition(partitionName(from), from, to);
+            }
+        });
+    }
+
+    private void createPartition(String name, Instant from, Instant to) {
+        if (Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT to_regclass(?) IS NOT NULL", Boolean.class, name))) return;
+        String bounds = " FOR VALUES FROM ('" + from + "') TO ('" + to + "')";
+        // Chặn insert vào default trong lúc kiểm tra/chuyển dòng
+        jdbcTemplate.execute("LOCK TABLE " + DEFAULT_PARTITION + " IN SHARE ROW EXCLUSIVE MODE");
+        Boolean stray = jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM " + DEFAULT_PARTITION + " WHERE created_at >= ? AND created_at < ?)",
+                Boolean.class, Timestamp.from(from), Timestamp.from(to));
+        if (!Boolean.TRUE.equals(stray)) {
+            jdbcTemplate.execute("CREATE TABLE " + name + " PARTITION OF messages" + bounds);
+            return;
+        }
+        // Tin created_at ở tương lai đã nằm trong default: chuyển sang bảng mới rồi mới ATTACH
+        jdbcTemplate.execute("CREATE TABLE " + name + " (LIKE messages INCLUDING DEFAULTS INCLUDING GENERATED)");
+        // Cột GENERATED (search_vector bản cũ) không insert được, bảng mới tự tính lại
+        String columns = jdbcTemplate.queryForObject(COLUMNS_SQL, String.class);
+        int moved = jdbcTemplate.update(
+                "WITH moved AS (DELETE FROM " + DEFAULT_PARTITION + " WHERE created_at >= ? AND created_at < ? RETURNING *) " +
+                "INSERT INTO " + name + " (" + columns + ") SELECT " + columns + " FROM moved",
+                Timestamp.from(from), Timestamp.from(to));
+        jdbcTemplate.execute("ALTER TABLE messages ATTACH PARTITION " + name + bounds);
+        logger.warn("Moved {} future-dated messages from {} into {}", moved, DEFAULT_PARTITION, name);
+    }
+
+    private void detachExpired() {
+        tx.executeWithoutResult(status -> {
+            if (!"p".equals(relkind()) || !tryLock()) return;
+            Instant cutoff = monthStart(Instant.now(), retentionMonths);
+            for (String name : jdbcTemplate.queryForList(PARTITIONS_SQL, String.class)) {
+                Instant upper = null;
+                if (name.startsWith(PREFIX)) {
+                    upper = monthStart(monthOf(name), -1);
+                } else if (LEGACY.equals(name)) {
+                    upper = legacyUpperBound();
+                }
+                if (upper != null && !upper.isAfter(cutoff)) {
+                    jdbcTemplate.execute("ALTER TABLE messages DETACH PARTITION " + name);
+                    logger.info("Retention: detached partition {}", name);
+                }
+            }
+        });
+    }
+
+    private void dropDetached() {
+        if (!"p".equals(relkind())) return;
+        for (String name : jdbcTemplate.queryForList(DETACHED_SQL, String.class)) {
+            long released = 0;
+            Integer n;
+            // Mỗi lô: xoá dòng ảnh và release đúng những url đó trong cùng transaction,
+            // nên chạy lại sau crash không release hai lần
+            while ((n = tx.execute(status -> tryLock() ? releaseChunk(name) : null)) != null && n > 0) {
+                released += n;
+            }
+            if (n == null) return; // node khác đang giữ lock
+            Boolean dropped = tx.execute(status -> {
+                if (!tryLock()) return false;
+                jdbcTemplate.execute("DROP TABLE IF EXISTS " + name);
+                return true;
+            });
+            if (Boolean.TRUE.equals(dropped)) {
+                logger.info("Retention: dropped partition {} ({} attachments released)", name, released);
+            }
+        }
+    }
+
+    private int releaseChunk(String table) {
+        // Node khác có thể vừa DROP xong
+        if (!Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT to_regclass(?) IS NOT NULL", Boolean.class, table))) return 0;
+        List<String> urls = jdbcTemplate.queryForList(
+                "DELETE FROM " + table + " WHERE ctid = ANY(ARRAY(SELECT ctid FROM " + table +
+                " WHERE type = 'image' LIMIT " + RELEASE_CHUNK + ")) RETURNING content", String.class);
+        for (String url : urls) {
+            attachmentStore.release(url);
+        }
+        return urls.size();
+    }
+
+    private boolean tryLock() {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT pg_try_advisory_xact_lock(?)", Boolean.class, LOCK_KEY));
+    }
+
+    private String relkind() {
+        List<String> rows = jdbcTemplate.queryForList(RELKIND_SQL, String.class);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    private Instant legacyUpperBound() {
+        List<Timestamp> rows = jdbcTemplate.queryForList(LEGACY_UPPER_SQL, Timestamp.class);
+        return rows.isEmpty() || rows.get(0) == null ? null : rows.get(0).toInstant();
+    }
+
+    private static String partitionName(Instant monthStart) {
+        return PREFIX + SUFFIX.format(monthStart.atZone(ZoneOffset.UTC));
+    }
+
+    private static Instant monthOf(String partitionName) {
+        String suffix = partitionName.substring(PREFIX.length());
+        return YearMonth.parse(suffix, SUFFIX).atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+
+    private static String legacyName(String indexName) {
+        String base = indexName.length() > 56 ? indexName.substring(0, 56) : indexName;
+        return base + "_legacy";
+    }
+
+    // "CREATE UNIQUE INDEX x ON public.messages USING btree (a, b)" -> "(a, b, created_at)"
+    static String withPartitionKey(String def) {
+        if (def.contains(" WHERE ") || def.contains(" INCLUDE ") || !def.endsWith(")")) return null;
+        if (def.contains("created_at")) return def;
+        return def.substring(0, def.length() - 1) + ", created_at)";
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.chat.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Migration cột messages.search_vector + index GIN mà không khoá bảng lâu.
+ *
+ * Cột được thêm dạng nullable không default (chỉ đổi metadata, lock_timeout ngắn), trigger
+ * điền vector cho tin mới / tin sửa / thu hồi, dòng cũ được backfill theo lô keyset trên id
+ * (mỗi lô một transaction ngắn), cuối cùng index được build bằng CREATE INDEX CONCURRENTLY
+ * (bảng phân vùng: index ON ONLY bảng cha rồi build từng partition và ATTACH).
+ * Mọi bước idempotent, chạy nền sau khi khởi động dưới session advisory lock nên chỉ một
+ * node làm; dừng giữa chừng thì lần khởi động sau làm tiếp. Cột GENERATED của bản cũ
+ * (đã có dữ liệu) được giữ nguyên, chỉ đảm bảo index.
+ */
+@Component
+public class MessageSearchMigration {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageSearchMigration.class);
+
+    private static final String INDEX = "idx_messages_search_vector";
+    private static final String TRIGGER = "trg_messages_search_vector";
+    private static final long LOCK_KEY = 0x6d73675f73726368L;
+
+    private static final String VECTOR_EXPR =
+            "to_tsvector('simple', CASE WHEN COALESCE(recalled, false) THEN '' ELSE COALESCE(content, '') END)";
+
+    private static final String GENERATED_SQL =
+            "SELECT is_generated FROM information_schema.columns " +
+            "WHERE table_schema = current_schema() AND table_name = 'messages' AND column_name = 'search_vector'";
+    private static final String FUNCTION_SQL =
+            "CREATE OR REPLACE FUNCTION messages_search_vector() RETURNS trigger AS $$ BEGIN " +
+            "NEW.search_vector := to_tsvector('simple', " +
+            "CASE WHEN COALESCE(NEW.recalled, false) THEN '' ELSE COALESCE(NEW.content, '') END); " +
+            "RETURN NEW; END $$ LANGUAGE plpgsql";
+    private static final String HAS_TRIGGER_SQL =
+            "SELECT count(*) FROM pg_trigger WHERE tgrelid = 'messages'::regclass AND tgname = '" + TRIGGER + "'";
+    private static final String PARTITIONS_SQL =
+            "SELECT c.relname FROM pg_inherits h JOIN pg_class c ON c.oid = h.inhrelid " +
+            "WHERE h.inhparent = 'messages'::regclass";
+    // Partition đã có index con gắn vào INDEX chưa
+    private static final String ATTACHED_SQL =
+            "SELECT count(*) FROM pg_inherits h JOIN pg_index x ON x.indexrelid = h.inhrelid " +
+            "WHERE h.inhparent = to_regclass('" + INDEX + "') AND x.indrelid = to_regclass(?)";
+    private static final String INDEX_VALID_SQL =
+            "SELECT x.indisvalid FROM pg_index x WHERE x.indexrelid = to_regclass(?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+
+    public MessageSearchMigration(JdbcTemplate jdbcTemplate,
+                                  @Value("${chat.search.backfill-batch-size:5000}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        Thread worker = new Thread(this::run, "message-search-migration");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    void run() {
+        try {
+            // Một connection autocommit: giữ session lock và chạy được CONCURRENTLY
+            jdbcTemplate.execute((ConnectionCallback<Void>) con -> {
+                JdbcTemplate jdbc = new JdbcTemplate(new SingleConnectionDataSource(con, true));
+                if (!Boolean.TRUE.equals(jdbc.queryForObject("SELECT pg_try_advisory_lock(?)", Boolean.class, LOCK_KEY))) {
+                    logger.info("Search migration running on another node, skipped");
+                    return null;
+                }
+                try {
+                    migrate(jdbc);
+                } finally {
+                    jdbc.queryForObject("SELECT pg_advisory_unlock(?)", Boolean.class, LOCK_KEY);
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            logger.error("Search migration failed, will resume on next start: {}", e.toString(), e);
+        }
+    }
+
+    private void migrate(JdbcTemplate jdbc) {
+        List<String> generated = jdbc.queryForList(GENERATED_SQL, String.class);
+        if (generated.isEmpty() || !"ALWAYS".equals(generated.get(0))) {
+            // ADD COLUMN nullable không default: không rewrite bảng, chỉ chờ lock ngắn
+            jdbc.execute("SET lock_timeout = '5s'");
+            jdbc.execute("ALTER TABLE messages ADD COLUMN IF NOT EXISTS search_vector tsvector");
+            jdbc.execute(FUNCTION_SQL);
+            ensureTrigger(jdbc);
+            jdbc.execute("RESET lock_timeout");
+            backfill(jdbc);
+        }
+        if ("p".equals(jdbc.queryForObject("SELECT relkind::text FROM pg_class WHERE oid = 'messages'::regclass", String.class))) {
+            indexPartitions(jdbc);
+        } else {
+            createConcurrently(jdbc, INDEX, "messages");
+        }
+        logger.info("Search vector column and index ready");
+    }
+
+    private void ensureTrigger(JdbcTemplate jdbc) {
+        Integer present = jdbc.queryForObject(HAS_TRIGGER_SQL, Integer.class);
+        if (present != null && present > 0) return;
+        // Bảng đã chuyển sang phân vùng: trigger cũ nằm trên messages_legacy, tạo lại ở bảng cha
+        if (Boolean.TRUE.equals(jdbc.queryForObject("SELECT to_regclass('messages_legacy') IS NOT NULL", Boolean.class))) {
+            jdbc.execute("DROP TRIGGER IF EXISTS " + TRIGGER + " ON messages_legacy");
+        }
+        jdbc.execute("CREATE TRIGGER " + TRIGGER + " BEFORE INSERT OR UPDATE OF content, recalled ON messages " +
+                "FOR EACH ROW EXECUTE FUNCTION messages_search_vector()");
+    }
+
+    private void backfill(JdbcTemplate jdbc) {
+        String last = "";
+        long filled = 0;
+        while (true) {
+            List<String> ids = jdbc.queryForList(
+                    "SELECT id FROM messages WHERE id > ? ORDER BY id LIMIT ?", String.class, last, batchSize);
+            if (ids.isEmpty()) break;
+            filled += jdbc.update("UPDATE messages SET search_vector = " + VECTOR_EXPR +
+                    " WHERE id = ANY(?) AND search_vector IS NULL", (Object) ids.toArray(new String[0]));
+            last = ids.get(ids.size() - 1);
+        }
+        if (filled > 0) {
+            logger.info("Search vector backfilled for {} messages", filled);
+        }
+    }
+
+    private void indexPartitions(JdbcTemplate jdbc) {
+        // Index cha không build gì; partition tạo sau này tự có index con
+        jdbc.execute("CREATE INDEX IF NOT EXISTS " + INDEX + " ON ONLY messages USING GIN (search_vector)");
+        for (String partition : jdbc.queryForList(PARTITIONS_SQL, String.class)) {
+            Integer attached = jdbc.queryForObject(ATTACHED_SQL, Integer.class, partition);
+            if (attached != null && attached > 0) continue;
+            String child = partition + "_search_vector_idx";
+            createConcurrently(jdbc, child, partition);
+            jdbc.execute("ALTER INDEX " + INDEX + " ATTACH PARTITION " + child);
+        }
+    }
+
+    private void createConcurrently(JdbcTemplate jdbc, String index, String table) {
+        // CONCURRENTLY lỗi giữa chừng để lại index INVALID: bỏ rồi build lại
+        List<Boolean> valid = jdbc.queryForList(INDEX_VALID_SQL, Boolean.class, index);
+        if (!valid.isEmpty() && Boolean.FALSE.equals(valid.get(0))) {
+            jdbc.execute("DROP INDEX CONCURRENTLY IF EXISTS " + index);
+        }
+        jdbc.execute("CREATE INDEX CONCURRENTLY IF NOT EXISTS " + index + " ON " + table + " USING GIN (search_vector)");
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.chat.service;
+
+import com.example.chat.model.Message;
+import com.example.chat.repository.MessageRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Tìm kiếm nội dung tin nhắn bằng full-text của Postgres.
+ *
+ * Cột messages.search_vector (tsvector, config 'simple' để không stem tiếng Việt) do trigger
+ * cập nhật khi tin được lưu hoặc thu hồi (tin đã thu hồi có vector rỗng); index GIN trên cột
+ * này phục vụ phép @@. Cột, trigger và index do MessageSearchMigration tạo. Kết quả chỉ gồm các hội thoại mà user có
+ * trong inbox_entries, sắp xếp theo thời gian mới nhất, phân trang keyset bằng Cursor.
+ */
+@Service
+public class MessageSearchService {
+
+    public static final int DEFAULT_PAGE_SIZE = 20;
+    public static final int MAX_PAGE_SIZE = 100;
+    private static final int MAX_TERMS = 8;
+
+    private final MessageRepository repo;
+
+    public MessageSearchService(MessageRepository repo) {
+        this.repo = repo;
+    }
+
+    public record SearchPage(List<Message> messages, String nextCursor) {}
+
+    @Transactional(readOnly = true)
+    public SearchPage search(String userId, String query, String conversationId, String cursor, int limit) {
+        String tsQuery = toPrefixQuery(query);
+        if (tsQuery == null) {
+            throw new IllegalArgumentException("Từ khoá tìm kiếm không hợp lệ");
+        }
+        int size = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        String scope = conversationId != null ? conversationId : "";
+
+        // Lấy dư 1 phần tử để biết còn trang sau hay không
+        List<Message> rows;
+        if (cursor == null || cursor.isBlank()) {
+            rows = repo.searchFirstPage(userId, tsQuery, scope, size + 1);
+        } else {
+            Cursor c = Cursor.decode(cursor);
+            rows = repo.searchPageBefore(userId, tsQuery, scope, c.time(), c.id(), size + 1);
+        }
+
+        if (rows.size() <= size) {
+            return new SearchPage(rows, null);
+        }
+        List<Message> messages = rows.subList(0, size);
+        Message last = messages.get(size - 1);
+        return new SearchPage(messages, new Cursor(last.getCreatedAt(), last.getId()).encode());
+    }
+
+    /**
+     * "xin chao ban" -> "xin:* & chao:* & ban:*" (khớp tiền tố khi đang gõ).
+     * Chỉ giữ chữ/số nên người dùng không thể chèn toán tử tsquery.
+     */
+    static String toPrefixQuery(String query) {
+        if (query == null) return null;
+        List<String> terms = new ArrayList<>();
+        for (String raw : query.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (raw.isEmpty()) continue;
+            terms.add(raw + ":*");
+            if (terms.size() == MAX_TERMS) break;
+        }
+        return terms.isEmpty() ? null : String.join(" & ", terms);
+    }
+}
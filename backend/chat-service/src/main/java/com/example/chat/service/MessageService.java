@@ -1,35 +1,77 @@
 package com.example.chat.service;
 
 import com.example.chat.model.Message;
+import com.example.chat.model.MessageCreatedEvent;
 import com.example.chat.repository.MessageRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.lang.Nullable;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.SendResult;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 
 @Service
 public class MessageService {
 
     private static final Logger logger = LoggerFactory.getLogger(MessageService.class);
-    private static final String TOPIC_MESSAGE_CREATED = "message.created";
+    public static final String TOPIC_MESSAGE_CREATED = "message.created";
+    // Thu hồi / xoá tin còn trong hàng đợi write-behind: chờ tối đa chừng này cho writer ghi
+    private static final long PENDING_WAIT_MS = 2000;
 
     private final MessageRepository repo;
-    private final @Nullable KafkaTemplate<String, Message> kafkaTemplate;
-    private final @Nullable SimpMessagingTemplate messagingTemplate;
+    private final InboxService inboxService;
+    private final MessageFanoutService fanoutService;
+    private final ConversationService conversationService;
+    private final BlockListCache blockListCache;
+    private final SendDedupCache dedupCache;
+    private final RecentMessageCache recentCache;
+    private final AttachmentStore attachmentStore;
+    private final @Nullable MessageWriteBehind writeBehind;
+    private final @Nullable MessageArchiveService archive;
+    private final @Nullable KafkaTemplate<String, MessageCreatedEvent> kafkaTemplate;
+
+    // chat.pipeline.mode=kafka: inbox + WebSocket fan-out do consumer của message.created đảm nhận
+    private final boolean kafkaPipeline;
+
+    // chat.partitioning.enabled: messages phân vùng theo tháng, đọc lịch sử theo cửa sổ tháng
+    private final boolean partitioned;
 
     public MessageService(MessageRepository repo,
-                          @Nullable KafkaTemplate<String, Message> kafkaTemplate,
-                          @Nullable SimpMessagingTemplate messagingTemplate) {
+                          InboxService inboxService,
+                          MessageFanoutService fanoutService,
+                          ConversationService conversationService,
+                          BlockListCache blockListCache,
+                          SendDedupCache dedupCache,
+                          RecentMessageCache recentCache,
+                          AttachmentStore attachmentStore,
+                          @Nullable MessageWriteBehind writeBehind,
+                          @Nullable MessageArchiveService archive,
+                          @Nullable KafkaTemplate<String, MessageCreatedEvent> kafkaTemplate,
+                          @Value("${chat.pipeline.mode:inline}") String pipelineMode,
+                          @Value("${chat.partitioning.enabled:false}") boolean partitioned) {
         this.repo = repo;
+        this.inboxService = inboxService;
+        this.fanoutService = fanoutService;
+        this.conversationService = conversationService;
+        this.blockListCache = blockListCache;
+        this.dedupCache = dedupCache;
+        this.recentCache = recentCache;
+        this.attachmentStore = attachmentStore;
+        this.writeBehind = writeBehind;
+        this.archive = archive;
         this.kafkaTemplate = kafkaTemplate;
-        this.messagingTemplate = messagingTemplate;
+        this.kafkaPipeline = "kafka".equalsIgnoreCase(pipelineMode) && kafkaTemplate != null;
+        this.partitioned = partitioned;
     }
 
     // Wrapper để trả về message + tempId
@@ -46,6 +88,9 @@ public class MessageService {
         public String getTempId() { return tempId; }
     }
 
+    // Một phần tử của POST /api/messages/batch
+    public record SendRequest(String tempId, Message message) {}
+
     public MessageResponse save(Message m, String tempId) {
         if (m.getConversationId() == null || m.getConversationId().isBlank()) {
             throw new IllegalArgumentException("conversationId không được null hoặc trống");
@@ -54,33 +99,76 @@ public class MessageService {
             throw new IllegalArgumentException("senderId không được null hoặc trống");
         }
 
-        Message saved = repo.save(m);
+        // ✅ Hội thoại + thành viên là nguồn sự thật: tạo 1:1 ở tin đầu tiên, chặn người ngoài nhóm
+        List<String> members = conversationService.ensureForMessage(m);
 
-        // WebSocket
-        if (messagingTemplate != null) {
+        // ✅ 1:1: người nhận đã chặn người gửi thì từ chối (nhóm: chỉ bỏ qua khi fan-out)
+        if (ConversationService.isDirect(m.getConversationId())) {
+            for (String userId : members) {
+                if (!userId.equals(m.getSenderId()) && blockListCache.isBlocked(userId, m.getSenderId())) {
+                    throw new IllegalArgumentException("Không thể gửi tin: bạn đã bị người nhận chặn");
+                }
+            }
+        }
+
+        // ✅ Idempotent: retry cùng (senderId, x-temp-id) trả lại tin đã lưu, không insert / push lại
+        boolean dedup = tempId != null && !tempId.isBlank();
+        if (dedup) {
+            Message existing = findSent(m.getSenderId(), tempId);
+            if (existing != null) {
+                return new MessageResponse(existing, tempId);
+            }
+            m.setClientTempId(tempId);
+        }
+
+        Message saved;
+        if (writeBehind != null) {
+            // Write-behind: có id ngay, ghi DB + inbox chạy nền theo batch
+            saved = writeBehind.prepare(m);
+            if (dedup) {
+                Message concurrent = dedupCache.putIfAbsent(m.getSenderId(), tempId, saved);
+                if (concurrent != null) {
+                    return new MessageResponse(concurrent, tempId);
+                }
+            }
+            writeBehind.submit(saved);
+        } else {
             try {
-                if (saved.getReceiverId() != null) {
-                    messagingTemplate.convertAndSendToUser(
-                            saved.getReceiverId(),
-                            "/queue/messages",
-                            saved
-                    );
-                } else {
-                    messagingTemplate.convertAndSend(
-                            "/topic/messages." + saved.getConversationId(),
-                            saved
-                    );
+                saved = repo.save(m);
+            } catch (DataIntegrityViolationException e) {
+                // Hai request trùng chạy song song: bên thua đọc lại tin của bên thắng
+                Message winner = dedup ? repo.findBySenderIdAndClientTempId(m.getSenderId(), tempId).orElse(null) : null;
+                if (winner == null) throw e;
+                dedupCache.putIfAbsent(winner.getSenderId(), tempId, winner);
+                return new MessageResponse(winner, tempId);
+            }
+            if (dedup) {
+                dedupCache.putIfAbsent(saved.getSenderId(), tempId, saved);
+            }
+
+            // Inbox read model
+            if (!kafkaPipeline) {
+                try {
+                    inboxService.onMessageSaved(saved);
+                } catch (Exception e) {
+                    logger.error("Inbox update failed: {}", e.toString(), e);
                 }
-            } catch (Exception e) {
-                logger.error("WebSocket send failed: {}", e.toString(), e);
             }
         }
 
+        // Ghi xuyên cache trang đầu của hội thoại
+        recentCache.onSaved(saved);
+
+        // WebSocket
+        if (!kafkaPipeline) {
+            fanoutService.messageCreated(saved);
+        }
+
         // Kafka
         if (kafkaTemplate != null) {
             try {
-                CompletableFuture<SendResult<String, Message>> future =
-                        kafkaTemplate.send(TOPIC_MESSAGE_CREATED, saved.getConversationId(), saved);
+                CompletableFuture<SendResult<String, MessageCreatedEvent>> future = kafkaTemplate.send(
+                        TOPIC_MESSAGE_CREATED, saved.getConversationId(), MessageCreatedEvent.of(saved));
                 future.whenComplete((result, ex) -> {
                     if (ex != null) logger.error("Kafka send failed: {}", ex.toString());
                 });
@@ -92,9 +180,135 @@ public class MessageService {
         return new MessageResponse(saved, tempId != null ? tempId : saved.getId());
     }
 
-    // Lấy tin nhắn theo conversationId (ASC theo thời gian)
-    public List<Message> getHistory(String conversationId) {
-        return repo.findTop100ByConversationIdOrderByCreatedAtAsc(conversationId);
+    /**
+     * Tin đã gửi với (senderId, tempId): cache trước, miss thì một lookup theo unique index.
+     */
+    public Message findSent(String senderId, String tempId) {
+        if (senderId == null || tempId == null || tempId.isBlank()) return null;
+        Message cached = dedupCache.get(senderId, tempId);
+        if (cached != null) return cached;
+        Message stored = repo.findBySenderIdAndClientTempId(senderId, tempId).orElse(null);
+        if (stored != null) {
+            dedupCache.putIfAbsent(senderId, tempId, stored);
+        }
+        return stored;
+    }
+
+    public static final int DEFAULT_HISTORY_PAGE_SIZE = 50;
+    public static final int MAX_HISTORY_PAGE_SIZE = 200;
+    // Số cửa sổ tháng quét lùi trước khi bỏ cận dưới (hội thoại thưa tin)
+    private static final int PRUNED_WINDOWS = 3;
+
+    /**
+     * Một trang lịch sử (luôn sắp ASC theo thời gian).
+     * olderCursor: truyền vào ?before= để tải trang cũ hơn (null nếu đã hết).
+     * newerCursor: truyền vào ?after= để tải trang mới hơn (null nếu đã hết).
+     */
+    public record HistoryPage(List<Message> messages, String olderCursor, String newerCursor) {}
+
+    // Lấy tin nhắn theo conversationId (ASC theo thời gian), phân trang keyset
+    public HistoryPage getHistory(String conversationId, String before, String after, int limit) {
+        if (before != null && after != null) {
+            throw new IllegalArgumentException("Chỉ được truyền before hoặc after");
+        }
+        int size = Math.max(1, Math.min(limit, MAX_HISTORY_PAGE_SIZE));
+        // Lấy dư 1 dòng để biết còn trang tiếp theo hay không
+        PageRequest page = PageRequest.of(0, size + 1);
+
+        if (after != null) {
+            Cursor c = Cursor.decode(after);
+            // Archive chỉ chứa tin cũ hơn mọi tin nóng: đọc archive trước, thiếu thì sang Postgres
+            List<Message> rows = new ArrayList<>();
+            if (archive != null) {
+                rows.addAll(archive.pageAfter(conversationId, c, size + 1));
+            }
+            if (rows.size() < size + 1) {
+                Cursor from = rows.isEmpty() ? c : cursorFor(rows.get(rows.size() - 1));
+                rows.addAll(repo.findPageAfter(conversationId, from.time(), from.id(),
+                        PageRequest.of(0, size + 1 - rows.size())));
+            }
+            boolean hasMore = rows.size() > size;
+            List<Message> messages = hasMore ? rows.subList(0, size) : rows;
+            return new HistoryPage(messages,
+                    messages.isEmpty() ? after : cursorOf(messages.get(0)),
+                    hasMore ? cursorOf(messages.get(messages.size() - 1)) : null);
+        }
+
+        List<Message> rows;
+        if (before == null) {
+            rows = latestPage(conversationId, size + 1);
+        } else if (partitioned) {
+            rows = pageBackwards(conversationId, Cursor.decode(before), size + 1);
+        } else {
+            Cursor c = Cursor.decode(before);
+            rows = repo.findPageBefore(conversationId, c.time(), c.id(), page);
+        }
+        // Hết tin nóng: đọc tiếp phần cũ hơn trong archive
+        if (archive != null && rows.size() < size + 1) {
+            rows = new ArrayList<>(rows);
+            Cursor from = !rows.isEmpty() ? cursorFor(rows.get(rows.size() - 1))
+                    : before != null ? Cursor.decode(before) : null;
+            rows.addAll(archive.pageBefore(conversationId, from, size + 1 - rows.size()));
+        }
+        boolean hasMore = rows.size() > size;
+        List<Message> messages = new ArrayList<>(hasMore ? rows.subList(0, size) : rows);
+        Collections.reverse(messages);
+
+        String newer = before == null ? null
+                : messages.isEmpty() ? before : cursorOf(messages.get(messages.size() - 1));
+        return new HistoryPage(messages, hasMore ? cursorOf(messages.get(0)) : null, newer);
+    }
+
+    /**
+     * Trang mới nhất (DESC): lấy từ RecentMessageCache nếu được, miss thì query đủ một
+     * buffer của cache để các lần mở hội thoại sau không chạm DB.
+     */
+    private List<Message> latestPage(String conversationId, int want) {
+        List<Message> cached = recentCache.latest(conversationId, want);
+        if (cached != null) return cached;
+
+        long token = recentCache.loadToken(conversationId);
+        int fetch = Math.max(want, recentCache.capacity());
+        List<Message> rows = partitioned ? pageBackwards(conversationId, null, fetch)
+                : repo.findLatestPage(conversationId, PageRequest.of(0, fetch));
+        recentCache.load(conversationId, token, rows, fetch);
+        return rows.size() > want ? new ArrayList<>(rows.subList(0, want)) : rows;
+    }
+
+    /**
+     * Trang lùi (DESC) trên bảng phân vùng: mỗi truy vấn có cận dưới là đầu một tháng nên chỉ
+     * chạm partition của tháng đó; chưa đủ sau PRUNED_WINDOWS tháng thì truy vấn không cận dưới.
+     */
+    private List<Message> pageBackwards(String conversationId, Cursor cursor, int want) {
+        Instant ref = cursor != null ? cursor.time() : Instant.now();
+        List<Message> rows = new ArrayList<>();
+        Cursor upper = cursor;
+        for (int i = 0; i <= PRUNED_WINDOWS && rows.size() < want; i++) {
+            PageRequest page = PageRequest.of(0, want - rows.size());
+            List<Message> chunk;
+            if (i == PRUNED_WINDOWS) {
+                chunk = upper == null ? repo.findLatestPage(conversationId, page)
+                        : repo.findPageBefore(conversationId, upper.time(), upper.id(), page);
+            } else {
+                Instant since = MessagePartitionService.monthStart(ref, i);
+                chunk = upper == null ? repo.findLatestPageSince(conversationId, since, page)
+                        : repo.findPageBeforeSince(conversationId, upper.time(), upper.id(), since, page);
+            }
+            if (!chunk.isEmpty()) {
+                rows.addAll(chunk);
+                Message last = chunk.get(chunk.size() - 1);
+                upper = cursorFor(last);
+            }
+        }
+        return rows;
+    }
+
+    private static String cursorOf(Message m) {
+        return cursorFor(m).encode();
+    }
+
+    private static Cursor cursorFor(Message m) {
+        return new Cursor(m.getCreatedAt(), m.getId());
     }
 
     // Lấy tất cả tin nhắn của user (gửi hoặc nhận)
@@ -102,75 +316,82 @@ public class MessageService {
         return repo.findTop100BySenderIdOrReceiverIdOrderByCreatedAtDesc(userId);
     }
 
-    public List<Message> getAllMessages() {
-        return repo.findAll();
+    /**
+     * Tin để thu hồi / xoá: Postgres trước; tin vừa gửi còn trong hàng đợi write-behind thì
+     * chờ writer ghi xong rồi đọc lại; không có thì tra archive: tin đã lưu trữ không sửa được
+     * (segment chỉ ghi thêm) nên báo lỗi rõ ràng, id không có ở đâu cả thì rỗng (404).
+     */
+    private Optional<Message> findMutable(String messageId) {
+        Optional<Message> hot = repo.findById(messageId);
+        if (hot.isPresent()) return hot;
+        if (writeBehind != null && writeBehind.isPending(messageId)) {
+            try {
+                if (!writeBehind.awaitPersisted(messageId, PENDING_WAIT_MS)) {
+                    throw new IllegalStateException("Message " + messageId + " is still being saved, retry shortly");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for message " + messageId + " to be saved");
+            }
+            hot = repo.findById(messageId);
+            if (hot.isPresent()) return hot;
+        }
+        if (archive != null && archive.contains(messageId)) {
+            throw new IllegalStateException("Message " + messageId + " is archived; "
+                    + "archived messages cannot be recalled or deleted");
+        }
+        return Optional.empty();
     }
 
     public boolean recall(String messageId) {
-        return repo.findById(messageId).map(msg -> {
+        return findMutable(messageId).map(msg -> {
             msg.setRecalled(true);
             msg.setRecalledAt(Instant.now());
             repo.save(msg);
+            recentCache.onRecalled(msg);
 
-            // Gửi WebSocket event để FE cập nhật tin nhắn đã recall
-            if (messagingTemplate != null) {
-                try {
-                    messagingTemplate.convertAndSend(
-                            "/topic/message.recalled",
-                            msg
-                    );
-                } catch (Exception e) {
-                    logger.error("WebSocket recall notify failed: {}", e.toString(), e);
-                }
+            try {
+                inboxService.onMessageRecalled(msg);
+            } catch (Exception e) {
+                logger.error("Inbox recall update failed: {}", e.toString(), e);
             }
 
+            // Chỉ thành viên hội thoại nhận sự kiện (id + conversationId + thời điểm)
+            fanoutService.messageRecalled(msg);
+
             return true;
         }).orElse(false);
     }
 
     public boolean delete(String messageId) {
-        if (!repo.existsById(messageId)) {
+        Message msg = findMutable(messageId).orElse(null);
+        if (msg == null) {
             return false;
         }
 
         try {
             repo.deleteById(messageId);
+            recentCache.onDeleted(msg);
+            releaseAttachment(msg);
 
-            // Gửi WebSocket event nếu muốn FE xoá ngay lập tức trên giao diện
-            if (messagingTemplate != null) {
-                try {
-                    messagingTemplate.convertAndSend(
-                            "/topic/message.deleted",
-                            messageId
-                    );
-                } catch (Exception e) {
-                    logger.error("WebSocket delete notify failed: {}", e.toString());
-                }
+            try {
+                inboxService.onMessageDeleted(msg);
+            } catch (Exception e) {
+                logger.error("Inbox delete update failed: {}", e.toString(), e);
             }
 
+            // Gửi WebSocket event cho thành viên hội thoại để FE xoá ngay trên giao diện
+            fanoutService.messageDeleted(msg);
+
             return true;
         } catch (Exception e) {
             logger.error("Delete failed: {}", e.toString());
             return false;
         }
     }
-    public boolean deleteAllByConversationId(String conversationId) {
-        List<Message> messages = repo.findByConversationId(conversationId);
-        if (messages.isEmpty()) return false;
-        repo.deleteAll(messages);
-
-        // Gửi WebSocket event nếu muốn FE cập nhật
-        if (messagingTemplate != null) {
-            try {
-                messagingTemplate.convertAndSend(
-                        "/topic/messages.deleted." + conversationId,
-                        messages
-                );
-            } catch (Exception e) {
-                logger.error("WebSocket deleteAll notify failed: {}", e.toString());
-            }
+    private void releaseAttachment(Message m) {
+        if ("image".equals(m.getType())) {
+            attachmentStore.release(m.getContent());
         }
-
-        return true;
     }
-}
\ No newline at end of file
+}
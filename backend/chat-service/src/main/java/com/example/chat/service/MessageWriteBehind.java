@@ -0,0 +1,308 @@
+package com.example.chat.service;
+
+import com.example.chat.model.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind cho MessageService.save (bật bằng chat.write-behind.enabled=true).
+ *
+ * Tin nhắn được gán id ngay trên request thread, đẩy vào hàng đợi có giới hạn và
+ * một writer thread gom thành JDBC batch insert. Khi hàng đợi đầy quá offer-timeout
+ * thì ghi đồng bộ trên thread gọi (backpressure); batch lỗi được ghi từng dòng,
+ * dòng vẫn lỗi được spool ra file NDJSON và replay ở lần khởi động sau.
+ * Id của tin đã ack nhưng chưa ghi xong được giữ lại để thu hồi / xoá ngay sau khi gửi
+ * chờ writer thay vì báo "không tìm thấy".
+ */
+@Component
+@ConditionalOnProperty(name = "chat.write-behind.enabled", havingValue = "true")
+public class MessageWriteBehind {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageWriteBehind.class);
+
+    private static final String INSERT_SQL =
+            "INSERT INTO messages (id, conversation_id, sender_id, receiver_id, content, type, " +
+            "attachment_url, status, created_at, recalled, recalled_at, client_temp_id) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) ON CONFLICT DO NOTHING";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final InboxService inboxService;
+    private final ObjectMapper objectMapper;
+
+    private final BlockingQueue<Message> queue;
+    private final int batchSize;
+    private final long maxDelayMs;
+    private final long offerTimeoutMs;
+    private final Path spoolDir;
+    // chat.pipeline.mode=kafka: inbox do MessageCreatedProjector cập nhật
+    private final boolean updateInbox;
+
+    // id -> latch mở khi tin đã xuống DB (hoặc đã spool)
+    private final Map<String, CountDownLatch> pending = new ConcurrentHashMap<>();
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong persisted = new AtomicLong();
+    private final AtomicLong syncFallbacks = new AtomicLong();
+    private final AtomicLong spooled = new AtomicLong();
+
+    private volatile boolean running;
+    private Thread writer;
+
+    public MessageWriteBehind(JdbcTemplate jdbcTemplate,
+                              InboxService inboxService,
+                              ObjectMapper objectMapper,
+                              @Value("${chat.write-behind.queue-capacity:10000}") int queueCapacity,
+                              @Value("${chat.write-behind.batch-size:200}") int batchSize,
+                              @Value("${chat.write-behind.max-delay-ms:20}") long maxDelayMs,
+                              @Value("${chat.write-behind.offer-timeout-ms:50}") long offerTimeoutMs,
+                              @Value("${chat.write-behind.spool-dir:data/write-behind}") String spoolDir,
+                              @Value("${chat.pipeline.mode:inline}") String pipelineMode) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.inboxService = inboxService;
+        this.objectMapper = objectMapper;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.maxDelayMs = maxDelayMs;
+        this.offerTimeoutMs = offerTimeoutMs;
+        this.spoolDir = Paths.get(spoolDir);
+        this.updateInbox = !"kafka".equalsIgnoreCase(pipelineMode);
+    }
+
+    @PostConstruct
+    public void start() {
+        replaySpool();
+        running = true;
+        writer = new Thread(this::runWriter, "message-write-behind");
+        writer.setDaemon(true);
+        writer.start();
+        logger.info("Message write-behind enabled (capacity={}, batchSize={}, maxDelayMs={})",
+                queue.remainingCapacity(), batchSize, maxDelayMs);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (writer != null) {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        // Phần còn sót lại (nếu writer chưa kịp ghi) -> ghi đồng bộ
+        List<Message> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        if (!rest.isEmpty()) {
+            persistBatch(rest);
+        }
+        logger.info("Message write-behind stopped: enqueued={}, persisted={}, syncFallbacks={}, spooled={}",
+                enqueued.get(), persisted.get(), syncFallbacks.get(), spooled.get());
+    }
+
+    /**
+     * Gán id / createdAt giống Message.prePersist để có thể ack + push ngay.
+     */
+    public Message prepare(Message m) {
+        m.prePersist();
+        return m;
+    }
+
+    public void submit(Message m) {
+        pending.put(m.getId(), new CountDownLatch(1));
+        try {
+            if (queue.offer(m, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                enqueued.incrementAndGet();
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Hàng đợi đầy: ghi đồng bộ trên thread gọi -> tự giới hạn tốc độ gửi
+        syncFallbacks.incrementAndGet();
+        persistBatch(List.of(m));
+    }
+
+    public long getEnqueued() { return enqueued.get(); }
+    public long getPersisted() { return persisted.get(); }
+    public long getSyncFallbacks() { return syncFallbacks.get(); }
+    public long getSpooled() { return spooled.get(); }
+    public int getQueueSize() { return queue.size(); }
+
+    public boolean isPending(String messageId) {
+        return pending.containsKey(messageId);
+    }
+
+    /**
+     * Chờ tin đã submit được ghi xong; true nếu không còn chờ (kể cả id không qua write-behind).
+     */
+    public boolean awaitPersisted(String messageId, long timeoutMs) throws InterruptedException {
+        CountDownLatch latch = pending.get(messageId);
+        return latch == null || latch.await(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void runWriter() {
+        List<Message> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Message first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+
+                // Gom thêm trong tối đa maxDelayMs hoặc tới khi đủ batchSize
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) break;
+                    Message next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+
+                persistBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                logger.error("Write-behind writer error: {}", e.toString(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void persistBatch(List<Message> batch) {
+        try {
+            int[][] counts = jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (ps, m) -> {
+                ps.setString(1, m.getId());
+                ps.setString(2, m.getConversationId());
+                ps.setString(3, m.getSenderId());
+                ps.setString(4, m.getReceiverId());
+                ps.setString(5, m.getContent());
+                ps.setString(6, m.getType());
+                ps.setString(7, m.getAttachmentUrl());
+                ps.setString(8, m.getStatus());
+                ps.setTimestamp(9, toTimestamp(m.getCreatedAt()));
+                ps.setBoolean(10, m.isRecalled());
+                ps.setTimestamp(11, toTimestamp(m.getRecalledAt()));
+                ps.setString(12, m.getClientTempId());
+            });
+            // ON CONFLICT DO NOTHING: dòng trùng (replay spool, submit lặp) trả về 0 -> bỏ qua
+            List<Message> inserted = inserted(batch, counts);
+            persisted.addAndGet(inserted.size());
+            afterPersist(inserted);
+            release(batch);
+        } catch (Exception e) {
+            logger.error("Write-behind batch of {} failed, retrying row by row: {}", batch.size(), e.toString());
+            if (batch.size() > 1) {
+                for (Message m : batch) {
+                    persistBatch(List.of(m));
+                }
+            } else {
+                spool(batch.get(0));
+                release(batch);
+            }
+        }
+    }
+
+    private void release(List<Message> batch) {
+        for (Message m : batch) {
+            CountDownLatch latch = pending.remove(m.getId());
+            if (latch != null) latch.countDown();
+        }
+    }
+
+    static List<Message> inserted(List<Message> batch, int[][] counts) {
+        List<Message> inserted = new ArrayList<>(batch.size());
+        int i = 0;
+        for (int[] chunk : counts) {
+            for (int count : chunk) {
+                // SUCCESS_NO_INFO: driver không báo số dòng -> coi như đã chèn
+                if (count > 0 || count == Statement.SUCCESS_NO_INFO) {
+                    inserted.add(batch.get(i));
+                }
+                i++;
+            }
+        }
+        return inserted;
+    }
+
+    private void afterPersist(List<Message> batch) {
+        if (!updateInbox) return;
+        for (Message m : batch) {
+            try {
+                inboxService.onMessageSaved(m);
+            } catch (Exception e) {
+                logger.error("Inbox update failed: {}", e.toString(), e);
+            }
+        }
+    }
+
+    private synchronized void spool(Message m) {
+        try {
+            Files.createDirectories(spoolDir);
+            byte[] line = (objectMapper.writeValueAsString(m) + "\n").getBytes(StandardCharsets.UTF_8);
+            Files.write(spoolDir.resolve("pending.ndjson"), line,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.SYNC);
+            spooled.incrementAndGet();
+        } catch (IOException e) {
+            logger.error("❌ Could not spool message {} - message lost: {}", m.getId(), e.toString(), e);
+        }
+    }
+
+    private void replaySpool() {
+        Path pending = spoolDir.resolve("pending.ndjson");
+        if (!Files.exists(pending)) return;
+        try {
+            // Đổi tên trước để dòng lỗi lần này được spool vào file mới
+            Path replay = spoolDir.resolve("replay-" + System.currentTimeMillis() + ".ndjson");
+            Files.move(pending, replay);
+            List<Message> messages = new ArrayList<>();
+            for (String line : Files.readAllLines(replay, StandardCharsets.UTF_8)) {
+                if (!line.isBlank()) {
+                    messages.add(objectMapper.readValue(line, Message.class));
+                }
+            }
+            for (int i = 0; i < messages.size(); i += batchSize) {
+                persistBatch(messages.subList(i, Math.min(i + batchSize, messages.size())));
+            }
+            Files.delete(replay);
+            logger.info("Replayed {} spooled messages", messages.size());
+        } catch (IOException e) {
+            logger.error("Spool replay failed: {}", e.toString(), e);
+        }
+        try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(spoolDir, "replay-*.ndjson")) {
+            for (Path p : leftovers) {
+                logger.warn("⚠️ Unreplayed spool file left for manual recovery: {}", p);
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static Timestamp toTimestamp(Instant instant) {
+        return instant != null ? Timestamp.from(instant) : null;
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.chat.service;
+
+import com.example.chat.model.Message;
+import com.example.chat.model.MessageStatus;
+import com.example.chat.repository.MessageRepository;
+import com.example.chat.repository.MessageStatusRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Receipts đã nhận / đã đọc theo mốc (high-water mark).
+ *
+ * Ack từ client chỉ gộp vào map trong bộ nhớ (giữ mốc lớn nhất cho mỗi
+ * conversation/user/status); định kỳ flush thành một batch upsert vào message_status,
+ * một batch reset unread của inbox, và mỗi mốc một sự kiện message_status gửi cho
+ * những người còn lại trong hội thoại. Upsert chỉ tiến chứ không lùi nên nhiều node
+ * flush song song vẫn đúng; ack chưa flush bị mất khi crash thì client ack lại lần sau.
+ */
+@Service
+public class ReceiptService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReceiptService.class);
+
+    private static final String UPSERT_SQL =
+            "INSERT INTO message_status (conversation_id, user_id, status, message_id, message_time, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, now()) " +
+            "ON CONFLICT (conversation_id, user_id, status) DO UPDATE SET " +
+            "message_id = EXCLUDED.message_id, message_time = EXCLUDED.message_time, updated_at = EXCLUDED.updated_at " +
+            "WHERE message_status.message_time IS NULL " +
+            "OR (message_status.message_time, message_status.message_id) < (EXCLUDED.message_time, EXCLUDED.message_id)";
+
+    // Mốc read đã tới tin cuối của inbox thì về 0, chưa tới thì đếm lại số tin của người khác
+    // sau mốc (không bao giờ tăng so với giá trị hiện tại)
+    private static final String RESET_UNREAD_SQL =
+            "UPDATE inbox_entries SET unread_count = CASE " +
+            "WHEN last_time IS NULL OR last_time <= ? THEN 0 " +
+            "ELSE LEAST(unread_count, (SELECT count(*) FROM messages m " +
+            "WHERE m.conversation_id = inbox_entries.conversation_id AND m.sender_id <> inbox_entries.user_id " +
+            "AND (m.created_at, m.id) > (?, ?))) END " +
+            "WHERE user_id = ? AND conversation_id = ? AND unread_count <> 0";
+
+    private record Key(String conversationId, String userId, String status) {}
+
+    private record Mark(String messageId, Instant time) {
+        boolean after(Mark other) {
+            int c = time.compareTo(other.time);
+            return c > 0 || (c == 0 && messageId.compareTo(other.messageId) > 0);
+        }
+    }
+
+    /**
+     * Sự kiện message_status dạng nén: một mốc thay cho từng messageId.
+     */
+    public record StatusEvent(String conversationId, String userId, String status,
+                              String upToMessageId, Instant upToTime) {}
+
+    private final MessageRepository messageRepo;
+    private final MessageStatusRepository statusRepo;
+    private final JdbcTemplate jdbcTemplate;
+    private final MessageFanoutService fanoutService;
+    private final ConversationService conversationService;
+
+    private final Map<Key, Mark> pending = new ConcurrentHashMap<>();
+
+    public ReceiptService(MessageRepository messageRepo,
+                          MessageStatusRepository statusRepo,
+                          JdbcTemplate jdbcTemplate,
+                          MessageFanoutService fanoutService,
+                          ConversationService conversationService) {
+        this.messageRepo = messageRepo;
+        this.statusRepo = statusRepo;
+        this.jdbcTemplate = jdbcTemplate;
+        this.fanoutService = fanoutService;
+        this.conversationService = conversationService;
+    }
+
+    /**
+     * Ghi nhận ack của user. messageIds rỗng = tới tin mới nhất của hội thoại.
+     * @return false nếu không tìm thấy tin nào để làm mốc
+     */
+    public boolean ack(String conversationId, String userId, String status, List<String> messageIds) {
+        if (!MessageStatus.READ.equals(status) && !MessageStatus.DELIVERED.equals(status)) {
+            throw new IllegalArgumentException("status không hợp lệ: " + status);
+        }
+        if (userId == null || !conversationService.participants(conversationId).contains(userId)) {
+            throw new IllegalArgumentException("Người dùng không thuộc hội thoại này");
+        }
+
+        // Một query duy nhất để lấy tin mới nhất trong các id được ack
+        Optional<Message> latest = messageIds == null || messageIds.isEmpty()
+                ? messageRepo.findFirstByConversationIdOrderByCreatedAtDesc(conversationId)
+                : messageRepo.findLatestAmong(conversationId, messageIds, PageRequest.of(0, 1)).stream().findFirst();
+        if (latest.isEmpty()) {
+            return false;
+        }
+
+        Mark mark = new Mark(latest.get().getId(), latest.get().getCreatedAt());
+        merge(new Key(conversationId, userId, status), mark);
+        // Đã đọc thì chắc chắn đã nhận
+        if (MessageStatus.READ.equals(status)) {
+            merge(new Key(conversationId, userId, MessageStatus.DELIVERED), mark);
+        }
+        return true;
+    }
+
+    private void merge(Key key, Mark mark) {
+        pending.merge(key, mark, (old, cur) -> cur.after(old) ? cur : old);
+    }
+
+    @Transactional(readOnly = true)
+    public List<MessageStatus> getStatuses(String conversationId) {
+        return statusRepo.findByConversationId(conversationId);
+    }
+
+    @Scheduled(fixedDelayString = "${chat.receipts.flush-interval-ms:500}")
+    @PreDestroy
+    public void flush() {
+        if (pending.isEmpty()) return;
+
+        Map<Key, Mark> batch = new HashMap<>();
+        for (Key key : new ArrayList<>(pending.keySet())) {
+            Mark mark = pending.remove(key);
+            if (mark != null) batch.put(key, mark);
+        }
+        if (batch.isEmpty()) return;
+
+        List<Object[]> upserts = new ArrayList<>(batch.size());
+        List<Object[]> unreadResets = new ArrayList<>();
+        for (Map.Entry<Key, Mark> e : batch.entrySet()) {
+            Key k = e.getKey();
+            Mark m = e.getValue();
+            upserts.add(new Object[]{k.conversationId(), k.userId(), k.status(), m.messageId(), Timestamp.from(m.time())});
+            if (MessageStatus.READ.equals(k.status())) {
+                Timestamp time = Timestamp.from(m.time());
+                unreadResets.add(new Object[]{time, time, m.messageId(), k.userId(), k.conversationId()});
+            }
+        }
+
+        try {
+            jdbcTemplate.batchUpdate(UPSERT_SQL, upserts);
+            if (!unreadResets.isEmpty()) {
+                jdbcTemplate.batchUpdate(RESET_UNREAD_SQL, unreadResets);
+            }
+        } catch (Exception ex) {
+            logger.error("Receipt flush failed ({} marks), requeueing: {}", batch.size(), ex.toString(), ex);
+            batch.forEach(this::merge);
+            return;
+        }
+
+        for (Map.Entry<Key, Mark> e : batch.entrySet()) {
+            Key k = e.getKey();
+            // delivered đi kèm read thì không cần đẩy riêng
+            if (MessageStatus.DELIVERED.equals(k.status())
+                    && e.getValue().equals(batch.get(new Key(k.conversationId(), k.userId(), MessageStatus.READ)))) {
+                continue;
+            }
+            StatusEvent event = new StatusEvent(k.conversationId(), k.userId(), k.status(),
+                    e.getValue().messageId(), e.getValue().time());
+            for (String participant : conversationService.participants(k.conversationId())) {
+                if (!participant.equals(k.userId())) {
+                    fanoutService.toUser(participant, "/queue/message_status", event);
+                }
+            }
+        }
+        logger.debug("Flushed {} receipt marks", batch.size());
+    }
+}
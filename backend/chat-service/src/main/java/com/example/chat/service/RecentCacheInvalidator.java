@@ -0,0 +1,53 @@
+package com.example.chat.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Đồng bộ RecentMessageCache giữa các node (chat.cluster.enabled=true).
+ *
+ * Mỗi lần ghi (gửi, thu hồi, xoá, đổi ảnh, purge) node publish "nodeId|conversationId" lên
+ * kênh chung chat:recent-cache; các node khác bỏ buffer của hội thoại đó và nạp lại từ
+ * Postgres ở lần đọc sau. TTL của cache vẫn là lưới an toàn nếu một thông báo bị lỡ.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.cluster.enabled", havingValue = "true")
+public class RecentCacheInvalidator implements MessageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(RecentCacheInvalidator.class);
+
+    public static final String CHANNEL = "chat:recent-cache";
+
+    private final StringRedisTemplate redis;
+    private final RecentMessageCache cache;
+    private final String nodeId;
+
+    public RecentCacheInvalidator(StringRedisTemplate redis, RecentMessageCache cache, ClusterRouter clusterRouter) {
+        this.redis = redis;
+        this.cache = cache;
+        this.nodeId = clusterRouter.getNodeId();
+        cache.setPeerNotifier(this::publish);
+    }
+
+    private void publish(String conversationId) {
+        try {
+            redis.convertAndSend(CHANNEL, nodeId + "|" + conversationId);
+        } catch (Exception e) {
+            logger.error("Recent cache invalidation for {} failed: {}", conversationId, e.toString());
+        }
+    }
+
+    @Override
+    public void onMessage(org.springframework.data.redis.connection.Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int sep = body.indexOf('|');
+        if (sep <= 0 || body.substring(0, sep).equals(nodeId)) return;
+        cache.evictFromPeer(body.substring(sep + 1));
+    }
+}
@@ -0,0 +1,366 @@
+package com.example.chat.service;
+
+import com.example.chat.model.Message;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Cache tin gần nhất của các hội thoại đang hoạt động, để trang lịch sử đầu tiên
+ * không phải query Postgres.
+ *
+ * Mỗi hội thoại một ring buffer (tối đa per-conversation tin, dạng record gọn) sắp theo
+ * (createdAt, id). Ghi xuyên từ MessageService.save, sửa tại chỗ khi thu hồi / đổi ảnh,
+ * bỏ khi xoá. Evict theo LRU khi vượt max-conversations hoặc ước lượng max-bytes, và
+ * khi không được nạp / ghi xuyên trong ttl-seconds.
+ *
+ * Chạy nhiều node (chat.cluster.enabled): mỗi lần ghi được báo cho các node khác qua
+ * RecentCacheInvalidator để chúng bỏ buffer của hội thoại, nên tin đã thu hồi / xoá ở node
+ * này không còn được node khác trả ra.
+ */
+@Component
+public class RecentMessageCache {
+
+    // Ước lượng: header object + các field + header String; ký tự tính 1 byte (compact strings)
+    private static final int RECORD_OVERHEAD = 96;
+    private static final int STRING_OVERHEAD = 40;
+    private static final int STRIPES = 1024;
+
+    /**
+     * Bản ghi gọn của một tin trong cache (không giữ entity JPA).
+     */
+    record CachedMessage(String id, String senderId, String receiverId, String content, String type,
+                         String attachmentUrl, String status, String clientTempId,
+                         Instant createdAt, boolean recalled, Instant recalledAt) {
+
+        static CachedMessage of(Message m) {
+            return new CachedMessage(m.getId(), m.getSenderId(), m.getReceiverId(), m.getContent(), m.getType(),
+                    m.getAttachmentUrl(), m.getStatus(), m.getClientTempId(),
+                    m.getCreatedAt(), m.isRecalled(), m.getRecalledAt());
+        }
+
+        Message toMessage(String conversationId) {
+            Message m = new Message();
+            m.setId(id);
+            m.setConversationId(conversationId);
+            m.setSenderId(senderId);
+            m.setReceiverId(receiverId);
+            m.setContent(content);
+            m.setType(type);
+            m.setAttachmentUrl(attachmentUrl);
+            m.setStatus(status);
+            m.setClientTempId(clientTempId);
+            m.setCreatedAt(createdAt);
+            m.setRecalled(recalled);
+            m.setRecalledAt(recalledAt);
+            return m;
+        }
+
+        long bytes() {
+            return RECORD_OVERHEAD + len(id) + len(senderId) + len(receiverId) + len(content)
+                    + len(type) + len(attachmentUrl) + len(status) + len(clientTempId);
+        }
+
+        boolean before(CachedMessage o) {
+            int c = createdAt.compareTo(o.createdAt);
+            return c < 0 || (c == 0 && id.compareTo(o.id) < 0);
+        }
+
+        private static long len(String s) {
+            return s == null ? 0 : STRING_OVERHEAD + s.length();
+        }
+    }
+
+    /**
+     * Ring buffer: ring[(head + i) % capacity] là tin thứ i tính từ cũ nhất.
+     * complete = buffer đang chứa toàn bộ tin của hội thoại (không còn tin cũ hơn trong DB).
+     */
+    private static final class Ring {
+        final CachedMessage[] ring;
+        int head;
+        int size;
+        boolean complete;
+        long bytes;
+        // Lần nạp hoặc ghi xuyên gần nhất
+        long touchedAt = System.currentTimeMillis();
+
+        Ring(int capacity) {
+            this.ring = new CachedMessage[capacity];
+        }
+
+        CachedMessage at(int i) {
+            return ring[(head + i) % ring.length];
+        }
+
+        void set(int i, CachedMessage m) {
+            ring[(head + i) % ring.length] = m;
+        }
+
+        // Trả về số byte thay đổi
+        long add(CachedMessage m) {
+            for (int i = 0; i < size; i++) {
+                if (at(i).id().equals(m.id())) return 0;
+            }
+            long delta = m.bytes();
+            // Vị trí chèn: thường là cuối (tin mới nhất)
+            int pos = size;
+            while (pos > 0 && m.before(at(pos - 1))) pos--;
+            if (size == ring.length) {
+                if (pos == 0) return 0; // cũ hơn mọi tin đang giữ và buffer đã đầy
+                delta -= at(0).bytes();
+                ring[head] = null;
+                head = (head + 1) % ring.length;
+                size--;
+                pos--;
+                complete = false;
+            }
+            for (int i = size; i > pos; i--) set(i, at(i - 1));
+            set(pos, m);
+            size++;
+            bytes += delta;
+            return delta;
+        }
+
+        int indexOf(String messageId) {
+            for (int i = size - 1; i >= 0; i--) {
+                if (at(i).id().equals(messageId)) return i;
+            }
+            return -1;
+        }
+
+        long replace(int i, CachedMessage m) {
+            long delta = m.bytes() - at(i).bytes();
+            set(i, m);
+            bytes += delta;
+            return delta;
+        }
+
+        long remove(int i) {
+            long delta = -at(i).bytes();
+            for (int j = i; j < size - 1; j++) set(j, at(j + 1));
+            set(size - 1, null);
+            size--;
+            bytes += delta;
+            return delta;
+        }
+    }
+
+    private final int capacity;
+    private final int maxConversations;
+    private final long maxBytes;
+    private final long ttlMillis;
+    private final Map<String, Ring> rings;
+    private long totalBytes;
+    private long totalMessages;
+
+    // Tăng ở mỗi lần ghi vào hội thoại: nạp từ DB chỉ được cài nếu không có ghi xen giữa
+    private final AtomicLongArray writeVersions = new AtomicLongArray(STRIPES);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    // Báo cho node khác khi có ghi (null nếu chạy một node)
+    private volatile Consumer<String> peerNotifier;
+
+    public RecentMessageCache(@Value("${chat.recent-cache.per-conversation:100}") int capacity,
+                              @Value("${chat.recent-cache.max-conversations:10000}") int maxConversations,
+                              @Value("${chat.recent-cache.max-bytes:268435456}") long maxBytes,
+                              @Value("${chat.recent-cache.ttl-seconds:300}") long ttlSeconds) {
+        this.capacity = Math.max(1, capacity);
+        this.maxConversations = maxConversations;
+        this.maxBytes = maxBytes;
+        this.ttlMillis = ttlSeconds * 1000;
+        this.rings = new LinkedHashMap<>(1024, 0.75f, true);
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public void setPeerNotifier(Consumer<String> peerNotifier) {
+        this.peerNotifier = peerNotifier;
+    }
+
+    /**
+     * Tối đa limit tin mới nhất (DESC), hoặc null nếu cache không trả lời được
+     * (chưa nạp / hết hạn / không đủ tin mà buffer không chứa toàn bộ hội thoại).
+     */
+    public List<Message> latest(String conversationId, int limit) {
+        synchronized (rings) {
+            Ring r = rings.get(conversationId);
+            if (r != null && System.currentTimeMillis() - r.touchedAt > ttlMillis) {
+                drop(conversationId);
+                r = null;
+            }
+            if (r == null || (r.size < limit && !r.complete)) {
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            int n = Math.min(limit, r.size);
+            List<Message> out = new ArrayList<>(n);
+            for (int i = r.size - 1; i >= r.size - n; i--) {
+                out.add(r.at(i).toMessage(conversationId));
+            }
+            return out;
+        }
+    }
+
+    /**
+     * Gọi trước khi query DB để nạp; truyền lại vào load().
+     */
+    public long loadToken(String conversationId) {
+        return writeVersions.get(stripe(conversationId));
+    }
+
+    /**
+     * Cài kết quả query DB (DESC, đã xin tối đa requested dòng).
+     */
+    public void load(String conversationId, long token, List<Message> newestFirst, int requested) {
+        synchronized (rings) {
+            if (writeVersions.get(stripe(conversationId)) != token) return;
+            drop(conversationId);
+            Ring r = new Ring(capacity);
+            int n = Math.min(capacity, newestFirst.size());
+            for (int i = n - 1; i >= 0; i--) {
+                r.add(CachedMessage.of(newestFirst.get(i)));
+            }
+            r.complete = newestFirst.size() < requested && newestFirst.size() <= capacity;
+            rings.put(conversationId, r);
+            totalBytes += r.bytes;
+            totalMessages += r.size;
+            evictIfNeeded();
+        }
+    }
+
+    // ===== Ghi xuyên =====
+
+    public void onSaved(Message m) {
+        writeVersions.incrementAndGet(stripe(m.getConversationId()));
+        synchronized (rings) {
+            Ring r = rings.get(m.getConversationId());
+            if (r != null) {
+                int before = r.size;
+                totalBytes += r.add(CachedMessage.of(m));
+                totalMessages += r.size - before;
+                r.touchedAt = System.currentTimeMillis();
+                evictIfNeeded();
+            }
+        }
+        notifyPeers(m.getConversationId());
+    }
+
+    public void onRecalled(Message m) {
+        writeVersions.incrementAndGet(stripe(m.getConversationId()));
+        synchronized (rings) {
+            Ring r = rings.get(m.getConversationId());
+            if (r != null) {
+                int i = r.indexOf(m.getId());
+                if (i >= 0) totalBytes += r.replace(i, CachedMessage.of(m));
+            }
+        }
+        notifyPeers(m.getConversationId());
+    }
+
+    public void onAttachmentUpdated(String conversationId, String messageId, String attachmentUrl) {
+        writeVersions.incrementAndGet(stripe(conversationId));
+        synchronized (rings) {
+            Ring r = rings.get(conversationId);
+            int i = r != null ? r.indexOf(messageId) : -1;
+            if (i >= 0) {
+                CachedMessage c = r.at(i);
+                totalBytes += r.replace(i, new CachedMessage(c.id(), c.senderId(), c.receiverId(), c.content(), c.type(),
+                        attachmentUrl, c.status(), c.clientTempId(), c.createdAt(), c.recalled(), c.recalledAt()));
+            }
+        }
+        notifyPeers(conversationId);
+    }
+
+    public void onDeleted(Message m) {
+        writeVersions.incrementAndGet(stripe(m.getConversationId()));
+        synchronized (rings) {
+            Ring r = rings.get(m.getConversationId());
+            int i = r != null ? r.indexOf(m.getId()) : -1;
+            if (i >= 0) {
+                totalBytes += r.remove(i);
+                totalMessages--;
+                // Buffer không đầy đủ mà hụt một tin thì trang đầu có thể thiếu: nạp lại lần sau
+                if (!r.complete) drop(m.getConversationId());
+            }
+        }
+        notifyPeers(m.getConversationId());
+    }
+
+    public void evict(String conversationId) {
+        evictFromPeer(conversationId);
+        notifyPeers(conversationId);
+    }
+
+    /**
+     * Node khác vừa ghi vào hội thoại: bỏ buffer (và huỷ lần nạp đang chạy), không báo lại.
+     */
+    public void evictFromPeer(String conversationId) {
+        writeVersions.incrementAndGet(stripe(conversationId));
+        synchronized (rings) {
+            drop(conversationId);
+        }
+    }
+
+    private void notifyPeers(String conversationId) {
+        Consumer<String> notifier = peerNotifier;
+        if (notifier != null) notifier.accept(conversationId);
+    }
+
+    // ===== Thống kê =====
+
+    public Map<String, Object> getStats() {
+        long h = hits.get();
+        long m = misses.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (rings) {
+            stats.put("conversations", rings.size());
+            stats.put("messages", totalMessages);
+            stats.put("estimatedBytes", totalBytes);
+        }
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", h);
+        stats.put("misses", m);
+        stats.put("hitRatio", h + m == 0 ? 0.0 : (double) h / (h + m));
+        stats.put("evictions", evictions.get());
+        return stats;
+    }
+
+    // Gọi khi đang giữ lock rings
+    private void drop(String conversationId) {
+        Ring r = rings.remove(conversationId);
+        if (r != null) {
+            totalBytes -= r.bytes;
+            totalMessages -= r.size;
+        }
+    }
+
+    private void evictIfNeeded() {
+        Iterator<Map.Entry<String, Ring>> it = rings.entrySet().iterator();
+        while ((rings.size() > maxConversations || totalBytes > maxBytes) && it.hasNext()) {
+            Ring r = it.next().getValue();
+            it.remove();
+            totalBytes -= r.bytes;
+            totalMessages -= r.size;
+            evictions.incrementAndGet();
+        }
+    }
+
+    private static int stripe(String conversationId) {
+        return (conversationId.hashCode() & 0x7fffffff) % STRIPES;
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.chat.service;
+
+import com.example.chat.model.Message;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache LRU có TTL cho tin đã gửi theo (senderId, tempId): client retry trong TTL
+ * nhận lại đúng tin cũ mà không chạm DB. Ràng buộc unique (sender_id, client_temp_id)
+ * là lớp bảo vệ cuối cùng khi cache đã bị evict hoặc chạy nhiều node.
+ */
+@Component
+public class SendDedupCache {
+
+    private record Entry(Message message, long expiresAt) {}
+
+    private final long ttlMillis;
+    private final Map<String, Entry> cache;
+
+    public SendDedupCache(@Value("${chat.send-dedup.max-size:100000}") int maxSize,
+                          @Value("${chat.send-dedup.ttl-seconds:600}") long ttlSeconds) {
+        this.ttlMillis = ttlSeconds * 1000;
+        this.cache = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxSize || eldest.getValue().expiresAt() < System.currentTimeMillis();
+            }
+        };
+    }
+
+    public Message get(String senderId, String tempId) {
+        String key = key(senderId, tempId);
+        synchronized (cache) {
+            Entry e = cache.get(key);
+            if (e == null) return null;
+            if (e.expiresAt() < System.currentTimeMillis()) {
+                cache.remove(key);
+                return null;
+            }
+            return e.message();
+        }
+    }
+
+    /**
+     * @return tin đã có sẵn cho key này (request trùng đang chạy song song), hoặc null nếu đã ghi
+     */
+    public Message putIfAbsent(String senderId, String tempId, Message message) {
+        String key = key(senderId, tempId);
+        long now = System.currentTimeMillis();
+        synchronized (cache) {
+            Entry e = cache.get(key);
+            if (e != null && e.expiresAt() >= now) {
+                return e.message();
+            }
+            cache.put(key, new Entry(message, now + ttlMillis));
+            return null;
+        }
+    }
+
+    private static String key(String senderId, String tempId) {
+        return senderId + '\u0000' + tempId;
+    }
+}
@@ -10,9 +10,11 @@ import java.time.Instant;
 public class UserService {
 
     private final BlockedUserRepository blockedUserRepo;
+    private final BlockListCache blockListCache;
 
-    public UserService(BlockedUserRepository blockedUserRepo) {
+    public UserService(BlockedUserRepository blockedUserRepo, BlockListCache blockListCache) {
         this.blockedUserRepo = blockedUserRepo;
+        this.blockListCache = blockListCache;
     }
 
     /**
@@ -26,12 +28,13 @@ public class UserService {
         if (!exists) {
             blockedUserRepo.save(new BlockedUser(userId, blockedUserId, Instant.now()));
         }
+        blockListCache.onBlocked(userId, blockedUserId);
     }
 
     /**
      * Optional: check if a user is blocked
      */
     public boolean isBlocked(String userId, String blockedUserId) {
-        return blockedUserRepo.existsByUserIdAndBlockedUserId(userId, blockedUserId);
+        return blockListCache.isBlocked(userId, blockedUserId);
     }
 }
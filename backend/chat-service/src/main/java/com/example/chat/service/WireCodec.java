@@ -0,0 +1,155 @@
+package com.example.chat.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MessageConversionException;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Định dạng payload của frame STOMP gửi xuống client, chọn theo từng session.
+ *
+ * Client kết nối qua endpoint /ws-binary (WebSocket thuần, không SockJS) và gửi header
+ * "wire-format: cbor" trong CONNECT thì nhận payload CBOR (binary frame, content-type
+ * application/octet-stream, header wire-format: cbor, thời gian là epoch millis).
+ * Mọi session khác nhận JSON như cũ. Payload chỉ được encode khi tới outbound channel,
+ * mỗi định dạng tối đa một lần cho một sự kiện dù có bao nhiêu session nhận.
+ */
+@Component
+public class WireCodec {
+
+    public enum Format { JSON, CBOR }
+
+    public static final String FORMAT_HEADER = "wire-format";
+    // Đặt bởi handshake interceptor của /ws-binary
+    public static final String BINARY_ATTRIBUTE = "wire.binary";
+
+    /**
+     * Payload chưa encode, đi qua broker nguyên dạng object; bytes được nhớ theo định dạng.
+     */
+    public static final class WirePayload {
+        private final Object value;
+        private volatile byte[] json;
+        private volatile byte[] cbor;
+
+        WirePayload(Object value) {
+            this.value = value;
+        }
+
+        public Object value() {
+            return value;
+        }
+    }
+
+    private final ObjectMapper jsonMapper;
+    private final ObjectMapper cborMapper;
+    private final Map<String, Format> sessionFormats = new ConcurrentHashMap<>();
+
+    public WireCodec(ObjectMapper objectMapper) {
+        this.jsonMapper = objectMapper;
+        // Không copyWith() mapper của Spring: JsonMapper không cho đổi factory
+        this.cborMapper = CBORMapper.builder()
+                .findAndAddModules()
+                .enable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .disable(SerializationFeature.WRITE_DATE_TIMESTAMPS_AS_NANOSECONDS)
+                .serializationInclusion(JsonInclude.Include.NON_NULL)
+                .build();
+    }
+
+    public byte[] encode(Object value, Format format) {
+        try {
+            return (format == Format.CBOR ? cborMapper : jsonMapper).writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new MessageConversionException("Could not encode " + value.getClass().getSimpleName(), e);
+        }
+    }
+
+    private byte[] bytes(WirePayload p, Format format) {
+        if (format == Format.CBOR) {
+            byte[] b = p.cbor;
+            if (b == null) p.cbor = b = encode(p.value, Format.CBOR);
+            return b;
+        }
+        byte[] b = p.json;
+        if (b == null) p.json = b = encode(p.value, Format.JSON);
+        return b;
+    }
+
+    /**
+     * Converter đặt đầu danh sách của broker: giữ object trong WirePayload thay vì encode JSON ngay.
+     */
+    public MessageConverter messageConverter() {
+        return new MessageConverter() {
+            @Override
+            public Object fromMessage(Message<?> message, Class<?> targetClass) {
+                return null;
+            }
+
+            @Override
+            public Message<?> toMessage(Object payload, MessageHeaders headers) {
+                if (payload instanceof byte[] || payload instanceof String) return null;
+                Object wrapped = payload instanceof WirePayload ? payload : new WirePayload(payload);
+                MessageHeaderAccessor accessor = headers != null
+                        ? MessageHeaderAccessor.getAccessor(headers, MessageHeaderAccessor.class) : null;
+                if (accessor != null && accessor.isMutable()) {
+                    return MessageBuilder.createMessage(wrapped, accessor.getMessageHeaders());
+                }
+                return MessageBuilder.withPayload(wrapped).copyHeaders(headers).build();
+            }
+        };
+    }
+
+    /**
+     * Inbound: ghi nhận định dạng client yêu cầu trong frame CONNECT.
+     */
+    public void onInbound(Message<?> message) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || accessor.getCommand() != StompCommand.CONNECT || accessor.getSessionId() == null) {
+            return;
+        }
+        Map<String, Object> attributes = accessor.getSessionAttributes();
+        boolean binary = attributes != null && Boolean.TRUE.equals(attributes.get(BINARY_ATTRIBUTE));
+        if (binary && "cbor".equalsIgnoreCase(accessor.getFirstNativeHeader(FORMAT_HEADER))) {
+            sessionFormats.put(accessor.getSessionId(), Format.CBOR);
+        }
+    }
+
+    /**
+     * Outbound: encode WirePayload theo định dạng của session nhận.
+     */
+    public Message<?> onOutbound(Message<?> message) {
+        if (!(message.getPayload() instanceof WirePayload payload)) return message;
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        String sessionId = accessor.getSessionId();
+        Format format = sessionId != null ? sessionFormats.getOrDefault(sessionId, Format.JSON) : Format.JSON;
+        if (format == Format.CBOR) {
+            // octet-stream: StompSubProtocolHandler chỉ gửi binary frame với content-type này
+            accessor.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+            accessor.setNativeHeader(FORMAT_HEADER, "cbor");
+        } else {
+            accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        }
+        return MessageBuilder.createMessage(bytes(payload, format), accessor.getMessageHeaders());
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        sessionFormats.remove(event.getSessionId());
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.chat.config;
+
+import com.example.chat.model.Message;
+import com.example.chat.model.MessageCreatedEvent;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WireEventSerdeTest {
+
+    private static final Instant CREATED = Instant.parse("2026-10-17T08:15:30.123456789Z");
+
+    @Test
+    void cborRecordRoundTripsWithNanos() {
+        WireEventSerializer serializer = new WireEventSerializer();
+        serializer.configure(Map.of(WireEventSerializer.FORMAT_CONFIG, "cbor"), false);
+        RecordHeaders headers = new RecordHeaders();
+        MessageCreatedEvent event = MessageCreatedEvent.of(message());
+
+        byte[] data = serializer.serialize("message.created", headers, event);
+
+        assertEquals(WireEventSerializer.CBOR, contentType(headers));
+        assertEquals(event, new WireEventDeserializer().deserialize("message.created", headers, data));
+    }
+
+    @Test
+    void jsonIsTheDefault() {
+        WireEventSerializer serializer = new WireEventSerializer();
+        serializer.configure(Map.of(), false);
+        RecordHeaders headers = new RecordHeaders();
+        MessageCreatedEvent event = MessageCreatedEvent.of(message());
+
+        byte[] data = serializer.serialize("message.created", headers, event);
+
+        assertEquals(WireEventSerializer.JSON, contentType(headers));
+        assertEquals('{', data[0]);
+        assertEquals(event, new WireEventDeserializer().deserialize("message.created", headers, data));
+    }
+
+    @Test
+    void legacyEntityRecordWithoutHeaderReadsAsVersionZero() throws Exception {
+        byte[] legacy = JsonMapper.builder().findAndAddModules()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS).build()
+                .writeValueAsBytes(message());
+
+        MessageCreatedEvent event = new WireEventDeserializer().deserialize("message.created", new RecordHeaders(), legacy);
+
+        assertEquals(0, event.v());
+        assertEquals("m1", event.id());
+        assertEquals(CREATED, event.createdAt());
+        assertEquals("m1", event.toMessage().getId());
+    }
+
+    @Test
+    void garbageIsASerializationException() {
+        assertThrows(SerializationException.class,
+                () -> new WireEventDeserializer().deserialize("message.created", new RecordHeaders(), "{nope".getBytes()));
+    }
+
+    private static String contentType(RecordHeaders headers) {
+        return new String(headers.lastHeader(WireEventSerializer.CONTENT_TYPE_HEADER).value(), StandardCharsets.US_ASCII);
+    }
+
+    private static Message message() {
+        Message m = new Message();
+        m.setId("m1");
+        m.setConversationId("alice-bob");
+        m.setSenderId("alice");
+        m.setReceiverId("bob");
+        m.setType("text");
+        m.setContent("hi");
+        m.setStatus("sent");
+        m.setCreatedAt(CREATED);
+        return m;
+    }
+}
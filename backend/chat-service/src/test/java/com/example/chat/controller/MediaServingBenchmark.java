@@ -0,0 +1,171 @@
+package com.example.chat.controller;
+
+import com.example.chat.service.AttachmentStore;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+import org.springframework.web.servlet.DispatcherServlet;
+import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * MediaController (sendfile, ETag, Range) so với resource handler mặc định trước user-017
+ * (addResourceHandlers("/uploads/**") trỏ vào cùng thư mục), trên Tomcat nhúng thật.
+ * In MB/s và CPU của các thread http-nio-* (worker + poller chạy sendfile, chỉ phía server) trên mỗi GB,
+ * cùng số byte khi client đã có bản cache (If-None-Match -> 304).
+ * Chạy: gradle test -Pbench --tests '*MediaServingBenchmark'
+ */
+@EnabledIfSystemProperty(named = "bench", matches = "true")
+class MediaServingBenchmark {
+
+    private static final String HASH = "ab".repeat(32);
+    private static final int FILE_BYTES = 2 * 1024 * 1024;
+    private static final int CLIENTS = 8;
+    private static final int REQUESTS = 2_000;
+
+    private static Path root;
+    private static WebServer server;
+    private static HttpClient client;
+
+    @Configuration
+    @EnableWebMvc
+    static class Web implements WebMvcConfigurer {
+
+        @Bean
+        AttachmentStore attachmentStore() throws Exception {
+            return new AttachmentStore(null, mock(PlatformTransactionManager.class), root.toString());
+        }
+
+        @Bean
+        MediaController mediaController(AttachmentStore attachmentStore) {
+            return new MediaController(attachmentStore);
+        }
+
+        // Handler cũ, đặt ở đường dẫn khác để chạy song song
+        @Override
+        public void addResourceHandlers(ResourceHandlerRegistry registry) {
+            registry.addResourceHandler("/legacy/**").addResourceLocations(root.toUri().toString());
+        }
+    }
+
+    @BeforeAll
+    static void start() throws Exception {
+        root = Files.createTempDirectory("media-bench");
+        byte[] body = new byte[FILE_BYTES];
+        new Random(1).nextBytes(body);
+        Files.createDirectories(root.resolve("images/ab"));
+        Files.write(root.resolve("images/ab/" + HASH + ".jpg"), body);
+
+        AnnotationConfigWebApplicationContext context = new AnnotationConfigWebApplicationContext();
+        context.register(Web.class);
+        server = new TomcatServletWebServerFactory(0).getWebServer(servletContext -> {
+            context.setServletContext(servletContext);
+            servletContext.addServlet("dispatcher", new DispatcherServlet(context)).addMapping("/");
+        });
+        server.start();
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    @AfterAll
+    static void stop() {
+        if (server != null) server.stop();
+    }
+
+    @Test
+    void bytesPerSecondAndServerCpu() throws Exception {
+        String file = "images/ab/" + HASH + ".jpg";
+        // Warm-up cả hai đường
+        run("/legacy/" + file, null, REQUESTS / 4);
+        run("/uploads/" + file, null, REQUESTS / 4);
+
+        System.out.printf("%-26s %10s %14s %16s%n", "handler", "MB/s", "CPU ms/GB", "bytes on revisit");
+        report("resource handler (old)", "/legacy/" + file);
+        report("MediaController", "/uploads/" + file);
+    }
+
+    private void report(String name, String path) throws Exception {
+        long cpuBefore = serverCpuNanos();
+        long start = System.nanoTime();
+        long bytes = run(path, null, REQUESTS);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double cpuMs = (serverCpuNanos() - cpuBefore) / 1e6;
+        double gb = bytes / 1e9;
+
+        // Lần xem lại: client gửi ETag của lần tải trước (handler cũ không có ETag)
+        HttpResponse<Void> first = get(path, null);
+        String etag = first.headers().firstValue("ETag").orElse(null);
+        long revisit = run(path, etag, 1);
+
+        System.out.printf("%-26s %10.0f %14.0f %16d%n", name, bytes / 1e6 / seconds, cpuMs / gb, revisit);
+    }
+
+    private long run(String path, String etag, int requests) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(CLIENTS);
+        AtomicLong bytes = new AtomicLong();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < requests; i++) {
+                futures.add(pool.submit(() -> {
+                    HttpResponse<byte[]> response = client.send(request(path, etag), HttpResponse.BodyHandlers.ofByteArray());
+                    bytes.addAndGet(response.body().length);
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) f.get();
+        } finally {
+            pool.shutdown();
+        }
+        return bytes.get();
+    }
+
+    private HttpResponse<Void> get(String path, String etag) throws Exception {
+        return client.send(request(path, etag), HttpResponse.BodyHandlers.discarding());
+    }
+
+    private HttpRequest request(String path, String etag) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + path));
+        if (etag != null) builder.header("If-None-Match", etag);
+        return builder.build();
+    }
+
+    // Tổng CPU của các thread connector Tomcat (thread mới sinh trong lúc chạy tính từ 0)
+    private static long serverCpuNanos() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Map<Long, Long> cpu = new HashMap<>();
+        for (ThreadInfo info : threads.getThreadInfo(threads.getAllThreadIds())) {
+            if (info != null && info.getThreadName().startsWith("http-nio-")) {
+                cpu.put(info.getThreadId(), threads.getThreadCpuTime(info.getThreadId()));
+            }
+        }
+        return cpu.values().stream().filter(t -> t > 0).mapToLong(Long::longValue).sum();
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.chat.service;
+
+import com.example.chat.repository.BlockedUserRepository;
+import com.example.chat.repository.BlockedUserRepository.BlockPair;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiPredicate;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Kiểm tra "người nhận có chặn người gửi không" trên đường fan-out: mỗi lần một query
+ * exists (trước user-020) so với BlockListCache (Bloom + tập blocked theo user).
+ * DB được giả lập bằng độ trễ mỗi round trip; in lookup/giây và số query trên mỗi lookup
+ * với 1% cặp thực sự bị chặn.
+ * Chạy: gradle test -Pbench --tests '*BlockListBenchmark'
+ */
+@EnabledIfSystemProperty(named = "bench", matches = "true")
+class BlockListBenchmark {
+
+    private static final long ROUND_TRIP_NANOS = TimeUnit.MICROSECONDS.toNanos(300);
+    private static final int USERS = 20_000;
+    private static final int PAIRS = 100_000;
+    private static final int THREADS = 16;
+    private static final int DB_LOOKUPS = 20_000;
+    private static final int CACHE_LOOKUPS = 2_000_000;
+
+    private final Map<String, List<String>> blocked = new HashMap<>();
+    private final List<BlockPair> pairs = new ArrayList<>();
+    private final AtomicLong queries = new AtomicLong();
+
+    @Test
+    void lookupsPerSecond() throws Exception {
+        SplittableRandom random = new SplittableRandom(7);
+        Instant now = Instant.now();
+        while (pairs.size() < PAIRS) {
+            String user = "u" + random.nextInt(USERS);
+            String other = "u" + random.nextInt(USERS);
+            List<String> list = blocked.computeIfAbsent(user, k -> new ArrayList<>());
+            if (user.equals(other) || list.contains(other)) continue;
+            list.add(other);
+            pairs.add(pair(user, other, now));
+        }
+        BlockedUserRepository repo = repository();
+        BlockListCache cache = new BlockListCache(repo, mock(PlatformTransactionManager.class), PAIRS, 50_000, 120_000);
+        cache.load();
+
+        BiPredicate<String, String> perQuery = repo::isBlocked;
+        // Warm-up cho JIT, không in
+        run(cache::isBlocked, CACHE_LOOKUPS / 4);
+        run(perQuery, DB_LOOKUPS / 4);
+
+        System.out.printf("%-22s %14s %16s %10s%n", "mode", "lookups/s", "queries/lookup", "blocked");
+        report("query per check", perQuery, DB_LOOKUPS);
+        report("BlockListCache", cache::isBlocked, CACHE_LOOKUPS);
+    }
+
+    private void report(String name, BiPredicate<String, String> check, int lookups) throws Exception {
+        queries.set(0);
+        long start = System.nanoTime();
+        long hits = run(check, lookups);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-22s %14.0f %16.4f %10d%n", name, lookups / seconds, queries.get() / (double) lookups, hits);
+    }
+
+    // 1% lookup là cặp bị chặn thật, còn lại là cặp ngẫu nhiên (gần như chắc chắn không chặn)
+    private long run(BiPredicate<String, String> check, int lookups) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Long>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                // Seed khác seed sinh dữ liệu, nếu không thread đó tra lại đúng các cặp đã sinh
+                int seed = 1000 + t;
+                futures.add(pool.submit(() -> {
+                    SplittableRandom random = new SplittableRandom(seed);
+                    long hits = 0;
+                    for (int i = 0; i < lookups / THREADS; i++) {
+                        boolean isBlocked;
+                        if (random.nextInt(100) == 0) {
+                            BlockPair p = pairs.get(random.nextInt(pairs.size()));
+                            isBlocked = check.test(p.getUserId(), p.getBlockedUserId());
+                        } else {
+                            isBlocked = check.test("u" + random.nextInt(USERS), "u" + random.nextInt(USERS));
+                        }
+                        if (isBlocked) hits++;
+                    }
+                    return hits;
+                }));
+            }
+            long hits = 0;
+            for (Future<Long> f : futures) hits += f.get();
+            return hits;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private BlockedUserRepository repository() {
+        // stubOnly: không ghi lại từng lần gọi
+        BlockedUserRepository repo = mock(BlockedUserRepository.class, withSettings().stubOnly());
+        when(repo.count()).thenReturn((long) PAIRS);
+        when(repo.streamPairs()).thenAnswer(inv -> pairs.stream());
+        when(repo.existsByUserIdAndBlockedUserId(anyString(), anyString())).thenAnswer(inv -> {
+            roundTrip();
+            return blocked.getOrDefault(inv.<String>getArgument(0), List.of()).contains(inv.<String>getArgument(1));
+        });
+        when(repo.isBlocked(anyString(), anyString())).thenCallRealMethod();
+        when(repo.findBlockedUserIds(anyString())).thenAnswer(inv -> {
+            roundTrip();
+            return List.copyOf(blocked.getOrDefault(inv.<String>getArgument(0), List.of()));
+        });
+        return repo;
+    }
+
+    private void roundTrip() {
+        queries.incrementAndGet();
+        LockSupport.parkNanos(ROUND_TRIP_NANOS);
+    }
+
+    private static BlockPair pair(String userId, String blockedUserId, Instant at) {
+        return new BlockPair() {
+            @Override public String getUserId() { return userId; }
+            @Override public String getBlockedUserId() { return blockedUserId; }
+            @Override public Instant getBlockedAt() { return at; }
+        };
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.chat.service;
+
+import com.example.chat.repository.BlockedUserRepository;
+import com.example.chat.repository.BlockedUserRepository.BlockPair;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class BlockListCacheTest {
+
+    private static final Instant T0 = Instant.parse("2026-10-17T08:00:00Z");
+    private static final long OVERLAP_MS = 120_000;
+
+    private BlockedUserRepository repo;
+    private BlockListCache cache;
+
+    @BeforeEach
+    void setUp() {
+        repo = mock(BlockedUserRepository.class);
+        when(repo.findBlockedUserIds(any())).thenReturn(List.of());
+        cache = new BlockListCache(repo, mock(PlatformTransactionManager.class), 1000, 100, OVERLAP_MS);
+    }
+
+    @Test
+    void loadStreamsProjectionInsteadOfEntities() {
+        when(repo.count()).thenReturn(2L);
+        when(repo.streamPairs()).thenReturn(Stream.of(pair("alice", "bob", T0), pair("carol", "dave", T0)));
+
+        cache.load();
+
+        assertEquals(2, cache.entryCount());
+        verify(repo, never()).findAll();
+    }
+
+    @Test
+    void refreshRescansOverlapAndPicksUpLateCommit() {
+        when(repo.count()).thenReturn(1L);
+        when(repo.streamPairs()).thenReturn(Stream.of(pair("alice", "bob", T0)));
+        cache.load();
+
+        // Dòng có blocked_at trước watermark nhưng commit sau lần nạp
+        BlockPair late = pair("erin", "frank", T0.minusSeconds(30));
+        when(repo.findPairsSince(T0.minusMillis(OVERLAP_MS))).thenReturn(List.of(pair("alice", "bob", T0), late));
+
+        when(repo.findBlockedUserIds("erin")).thenReturn(List.of("frank"));
+        assertFalse(cache.isBlocked("erin", "frank"));
+
+        cache.refresh();
+
+        verify(repo).findPairsSince(T0.minusMillis(OVERLAP_MS));
+        // Bloom đã có cặp: tra tầng 2 thay vì trả "không chặn"
+        assertTrue(cache.isBlocked("erin", "frank"));
+        assertEquals(2, cache.entryCount());
+    }
+
+    @Test
+    void pairsSeenInEarlierRefreshAreNotCountedAgain() {
+        when(repo.count()).thenReturn(0L);
+        when(repo.streamPairs()).thenReturn(Stream.empty());
+        cache.load();
+
+        BlockPair first = pair("alice", "bob", T0);
+        BlockPair second = pair("carol", "dave", T0.plusSeconds(10));
+        when(repo.findPairsSince(any())).thenReturn(List.of(first)).thenReturn(List.of(first, second));
+
+        cache.refresh();
+        cache.refresh();
+
+        assertEquals(2, cache.entryCount());
+    }
+
+    private static BlockPair pair(String userId, String blockedUserId, Instant at) {
+        return new BlockPair() {
+            @Override public String getUserId() { return userId; }
+            @Override public String getBlockedUserId() { return blockedUserId; }
+            @Override public Instant getBlockedAt() { return at; }
+        };
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.chat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.SetOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ClusterRouterTest {
+
+    private StringRedisTemplate redis;
+    private SetOperations<String, String> sets;
+    private HashOperations<String, Object, Object> hash;
+    private SimpMessagingTemplate messaging;
+    private ClusterRouter router;
+    private final Map<Object, Object> nodes = new HashMap<>();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redis = mock(StringRedisTemplate.class);
+        sets = mock(SetOperations.class);
+        hash = mock(HashOperations.class);
+        messaging = mock(SimpMessagingTemplate.class);
+        when(redis.opsForSet()).thenReturn(sets);
+        when(redis.<Object, Object>opsForHash()).thenReturn(hash);
+        when(hash.entries("chat:nodes")).thenAnswer(inv -> new HashMap<>(nodes));
+        when(hash.delete(eq("chat:nodes"), any())).thenReturn(1L);
+        router = new ClusterRouter(redis, new ObjectMapper(), messaging, "node-a");
+    }
+
+    @Test
+    void routesToLocalAndLivePeersOnly() {
+        long now = System.currentTimeMillis();
+        nodes.put("node-a", Long.toString(now));
+        nodes.put("node-b", Long.toString(now));
+        router.heartbeat();
+        when(sets.members("chat:route:user:u1")).thenReturn(Set.of("node-a", "node-b", "node-gone"));
+
+        router.toUser("u1", "/queue/messages", Map.of("id", "m1"));
+
+        verify(messaging).convertAndSendToUser(eq("u1"), eq("/queue/messages"), any());
+        verify(redis).convertAndSend(eq("chat:node:node-b"), anyString());
+        verify(redis, never()).convertAndSend(eq("chat:node:node-gone"), anyString());
+        verify(sets, never()).remove(startsWith("chat:route:"), any());
+    }
+
+    @Test
+    void withoutHeartbeatSnapshotPublishesToAllAndNeverPrunes() {
+        when(sets.members("chat:route:dest:/topic/messages.g1")).thenReturn(Set.of("node-b", "node-c"));
+
+        router.toTopic("/topic/messages.g1", Map.of("id", "m1"));
+
+        verify(redis).convertAndSend(eq("chat:node:node-b"), anyString());
+        verify(redis).convertAndSend(eq("chat:node:node-c"), anyString());
+        verify(sets, never()).remove(anyString(), any());
+    }
+
+    @Test
+    void failedHeartbeatKeepsRoutes() {
+        when(hash.entries("chat:nodes")).thenThrow(new IllegalStateException("redis down"));
+        router.heartbeat();
+        when(sets.members("chat:route:user:u1")).thenReturn(Set.of("node-b"));
+
+        router.toUser("u1", "/queue/messages", Map.of("id", "m1"));
+
+        verify(redis).convertAndSend(eq("chat:node:node-b"), anyString());
+        verify(sets, never()).remove(anyString(), any());
+    }
+
+    @Test
+    void heartbeatPurgesExpiredNodeRoutes() {
+        nodes.put("node-a", Long.toString(System.currentTimeMillis()));
+        nodes.put("node-dead", "0");
+        when(sets.members("chat:node-keys:node-dead")).thenReturn(Set.of("user:u1", "dest:/topic/x"));
+
+        router.heartbeat();
+
+        verify(sets).remove("chat:route:user:u1", "node-dead");
+        verify(sets).remove("chat:route:dest:/topic/x", "node-dead");
+        verify(redis).delete("chat:node-keys:node-dead");
+        verify(sets, never()).remove(anyString(), eq("node-a"));
+    }
+
+    @Test
+    void expiredNodeAlreadyClaimedByAnotherNodeIsNotPurgedTwice() {
+        nodes.put("node-dead", "0");
+        when(hash.delete(eq("chat:nodes"), eq("node-dead"))).thenReturn(0L);
+
+        router.heartbeat();
+
+        verify(sets, never()).members("chat:node-keys:node-dead");
+    }
+}
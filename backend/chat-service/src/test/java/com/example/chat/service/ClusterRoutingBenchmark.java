@@ -0,0 +1,134 @@
+package com.example.chat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.SetOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.messaging.SessionConnectEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * N node ClusterRouter trong một JVM, Redis giả lập bằng map trong bộ nhớ (pub/sub gọi
+ * thẳng onMessage của node đích). So sánh route theo registry với flood mọi node:
+ * số publish liên node, số lần giao cho broker local và tin/giây (user-006).
+ * Chạy: gradle test -Pbench --tests '*ClusterRoutingBenchmark'
+ */
+@EnabledIfSystemProperty(named = "bench", matches = "true")
+class ClusterRoutingBenchmark {
+
+    private static final int USERS = 10_000;
+    private static final int MESSAGES = 100_000;
+
+    @Test
+    void targetedRoutingVsFlood() {
+        // Vòng warm-up cho JIT, không in
+        run(4, false, false);
+        run(4, true, false);
+        System.out.printf("%-8s %-10s %12s %14s %14s%n", "nodes", "mode", "msgs/s", "publishes/msg", "deliveries/msg");
+        for (int n : new int[]{2, 4, 8, 16}) {
+            run(n, false, true);
+            run(n, true, true);
+        }
+    }
+
+    private static void run(int nodeCount, boolean flood, boolean report) {
+        FakeRedis redis = new FakeRedis();
+        AtomicLong deliveries = new AtomicLong();
+        List<ClusterRouter> nodes = new ArrayList<>();
+        for (int i = 0; i < nodeCount; i++) {
+            SimpMessagingTemplate messaging = new SimpMessagingTemplate((message, timeout) -> {
+                deliveries.incrementAndGet();
+                return true;
+            });
+            ClusterRouter router = new ClusterRouter(redis.template, new ObjectMapper(), messaging, "node-" + i);
+            redis.nodes.put(router.channel(), router);
+            nodes.add(router);
+        }
+        // Vòng đầu mỗi node ghi danh, vòng hai mới thấy đủ các node còn sống
+        nodes.forEach(ClusterRouter::heartbeat);
+        nodes.forEach(ClusterRouter::heartbeat);
+
+        // Mỗi user có một session trên một node
+        for (int u = 0; u < USERS; u++) {
+            nodes.get(u % nodeCount).onConnect(connect("s" + u, "u" + u));
+        }
+        if (flood) {
+            // Flood = mọi node có mặt trong mọi route (giống broadcast cả cluster)
+            redis.sets.values().forEach(members -> nodes.forEach(r -> members.add(r.getNodeId())));
+        }
+
+        Map<String, String> payload = Map.of("id", "m", "content", "hello");
+        Random senders = new Random(42);
+        long start = System.nanoTime();
+        for (int i = 0; i < MESSAGES; i++) {
+            // Người gửi ở node ngẫu nhiên, không phụ thuộc node của người nhận
+            nodes.get(senders.nextInt(nodeCount)).toUser("u" + ((i * 7) % USERS), "/queue/messages", payload);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        if (!report) return;
+        System.out.printf("%-8d %-10s %12.0f %14.2f %14.2f%n", nodeCount, flood ? "flood" : "targeted",
+                MESSAGES / seconds, redis.publishes.get() / (double) MESSAGES, deliveries.get() / (double) MESSAGES);
+    }
+
+    private static SessionConnectEvent connect(String sessionId, String userId) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+        accessor.setSessionId(sessionId);
+        accessor.setNativeHeader("userId", userId);
+        return new SessionConnectEvent(ClusterRoutingBenchmark.class,
+                MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()));
+    }
+
+    /** Set, hash chat:nodes và pub/sub của Redis, đủ cho ClusterRouter. */
+    @SuppressWarnings("unchecked")
+    private static class FakeRedis {
+        final StringRedisTemplate template = mock(StringRedisTemplate.class, withSettings().stubOnly());
+        final Map<String, Set<String>> sets = new ConcurrentHashMap<>();
+        final Map<Object, Object> hash = new ConcurrentHashMap<>();
+        final Map<String, ClusterRouter> nodes = new ConcurrentHashMap<>();
+        final AtomicLong publishes = new AtomicLong();
+
+        FakeRedis() {
+            // stubOnly: mock không ghi lại từng lần gọi (hàng triệu lần gọi trong benchmark)
+            SetOperations<String, String> setOps = mock(SetOperations.class, withSettings().stubOnly());
+            HashOperations<String, Object, Object> hashOps = mock(HashOperations.class, withSettings().stubOnly());
+            when(template.opsForSet()).thenReturn(setOps);
+            when(template.<Object, Object>opsForHash()).thenReturn(hashOps);
+            when(setOps.members(anyString())).thenAnswer(inv -> sets.get(inv.<String>getArgument(0)));
+            when(setOps.add(anyString(), any(String[].class))).thenAnswer(inv -> {
+                sets.computeIfAbsent(inv.getArgument(0), k -> ConcurrentHashMap.newKeySet()).add(inv.getArgument(1));
+                return 1L;
+            });
+            doAnswer(inv -> {
+                hash.put(inv.getArgument(1), inv.getArgument(2));
+                return null;
+            }).when(hashOps).put(anyString(), any(), any());
+            when(hashOps.entries(anyString())).thenAnswer(inv -> Map.copyOf(hash));
+            when(template.convertAndSend(anyString(), any())).thenAnswer(inv -> {
+                publishes.incrementAndGet();
+                String channel = inv.getArgument(0);
+                byte[] body = inv.<String>getArgument(1).getBytes(StandardCharsets.UTF_8);
+                nodes.get(channel).onMessage(new DefaultMessage(channel.getBytes(StandardCharsets.UTF_8), body), null);
+                return 1L;
+            });
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.chat.service;
+
+import com.example.chat.model.Conversation;
+import com.example.chat.model.Message;
+import com.example.chat.model.Participant;
+import com.example.chat.repository.ConversationRepository;
+import com.example.chat.repository.InboxEntryRepository;
+import com.example.chat.repository.ParticipantRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ConversationServiceTest {
+
+    private static final String DIRECT = "alice-bob-chat";
+    private static final String GROUP = ConversationService.GROUP_PREFIX + "abc";
+
+    private ConversationRepository conversationRepo;
+    private ParticipantRepository participantRepo;
+    private InboxEntryRepository inboxRepo;
+    private ConversationService service;
+
+    @BeforeEach
+    void setUp() {
+        conversationRepo = mock(ConversationRepository.class);
+        participantRepo = mock(ParticipantRepository.class);
+        inboxRepo = mock(InboxEntryRepository.class);
+        service = new ConversationService(conversationRepo, participantRepo, inboxRepo,
+                mock(PlatformTransactionManager.class), 100, 60);
+    }
+
+    @Test
+    void participantsOfLegacyDirectConversationAreDerivedWithoutWriting() {
+        assertEquals(List.of("alice", "bob"), service.participants(DIRECT));
+
+        verify(conversationRepo, never()).insertIfAbsent(any(), anyBoolean(), any(), any());
+        verify(participantRepo, never()).insertIfAbsent(any(), any(), any());
+    }
+
+    @Test
+    void firstMessageCreatesDirectConversationForMemberSender() {
+        assertEquals(List.of("alice", "bob"), service.ensureForMessage(message(DIRECT, "alice")));
+
+        verify(conversationRepo).insertIfAbsent(DIRECT, false, null, null);
+        verify(participantRepo).insertIfAbsent(DIRECT, "alice", Participant.MEMBER);
+        verify(participantRepo).insertIfAbsent(DIRECT, "bob", Participant.MEMBER);
+    }
+
+    @Test
+    void senderOutsideDerivedPairCannotCreateConversation() {
+        assertThrows(IllegalArgumentException.class, () -> service.ensureForMessage(message(DIRECT, "mallory")));
+
+        verify(conversationRepo, never()).insertIfAbsent(any(), anyBoolean(), any(), any());
+    }
+
+    @Test
+    void unknownGroupIsNeverAutoCreated() {
+        assertThrows(IllegalArgumentException.class, () -> service.ensureForMessage(message(GROUP, "alice")));
+
+        verify(conversationRepo, never()).insertIfAbsent(any(), anyBoolean(), any(), any());
+        verify(participantRepo, never()).insertIfAbsent(any(), any(), any());
+    }
+
+    @Test
+    void removeParticipantDropsInboxEntryAndNotifiesPeers() {
+        Conversation group = new Conversation();
+        group.setId(GROUP);
+        group.setGroup(true);
+        when(conversationRepo.findById(GROUP)).thenReturn(Optional.of(group));
+        List<String> notified = new ArrayList<>();
+        service.setPeerNotifier(notified::add);
+
+        service.removeParticipant(GROUP, "bob");
+
+        verify(participantRepo).deleteMember(GROUP, "bob");
+        verify(inboxRepo).deleteEntry("bob", GROUP);
+        assertEquals(List.of(GROUP), notified);
+    }
+
+    @Test
+    void peerEvictionForcesReload() {
+        when(participantRepo.findByConversationIdIn(List.of(GROUP)))
+                .thenReturn(List.of(participant(GROUP, "alice")))
+                .thenReturn(List.of(participant(GROUP, "alice"), participant(GROUP, "carol")));
+        assertEquals(List.of("alice"), service.participants(GROUP));
+        assertEquals(List.of("alice"), service.participants(GROUP));
+
+        service.evictFromPeer(GROUP);
+
+        assertEquals(List.of("alice", "carol"), service.participants(GROUP));
+        verify(participantRepo, times(2)).findByConversationIdIn(List.of(GROUP));
+    }
+
+    private static Message message(String conversationId, String senderId) {
+        Message m = new Message();
+        m.setConversationId(conversationId);
+        m.setSenderId(senderId);
+        return m;
+    }
+
+    private static Participant participant(String conversationId, String userId) {
+        Participant p = new Participant();
+        p.setConversationId(conversationId);
+        p.setUserId(userId);
+        return p;
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.chat.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CursorTest {
+
+    @Test
+    void encodeDecodeRoundTrip() {
+        Cursor c = new Cursor(Instant.parse("2026-10-17T08:15:30.123456789Z"), "a|b-ừ");
+        String token = c.encode();
+        assertFalse(token.contains("="), "không padding");
+        assertFalse(token.contains("+") || token.contains("/"), "base64url");
+        assertEquals(c, Cursor.decode(token));
+    }
+
+    @Test
+    void decodeRejectsGarbage() {
+        assertThrows(IllegalArgumentException.class, () -> Cursor.decode("!!!"));
+        assertThrows(IllegalArgumentException.class, () -> Cursor.decode(b64("no-separator")));
+        assertThrows(IllegalArgumentException.class, () -> Cursor.decode(b64("|id")));
+        assertThrows(IllegalArgumentException.class, () -> Cursor.decode(b64("2026-10-17T08:15:30Z|")));
+        assertThrows(IllegalArgumentException.class, () -> Cursor.decode(b64("not-a-time|id")));
+    }
+
+    private static String b64(String raw) {
+        return java.util.Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes());
+    }
+}
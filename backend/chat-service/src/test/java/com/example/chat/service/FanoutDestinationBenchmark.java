@@ -0,0 +1,173 @@
+package com.example.chat.service;
+
+import com.example.chat.model.Message;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.user.DefaultUserDestinationResolver;
+import org.springframework.messaging.simp.user.UserDestinationMessageHandler;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.messaging.DefaultSimpUserRegistry;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+
+import java.security.Principal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * Thu hồi / xoá tin với 10k session trên simple broker thật (UserDestinationMessageHandler +
+ * SimpleBrokerMessageHandler, encode qua WireCodec ở outbound): topic toàn cục
+ * /topic/message.recalled trước user-023 so với queue theo thành viên / topic của hội thoại.
+ * In số frame gửi ra mỗi sự kiện, số frame tới session không thuộc hội thoại, byte mỗi sự kiện
+ * và sự kiện/giây theo kích thước hội thoại.
+ * Chạy: gradle test -Pbench --tests '*FanoutDestinationBenchmark'
+ */
+@EnabledIfSystemProperty(named = "bench", matches = "true")
+class FanoutDestinationBenchmark {
+
+    private static final int SESSIONS = 10_000;
+    private static final int THRESHOLD = 20;
+    private static final long BUDGET_FRAMES = 2_000_000;
+
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong wasted = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private volatile Set<String> memberSessions = Set.of();
+
+    @Test
+    void recallDeliveryCost() {
+        WireCodec codec = new WireCodec(JsonMapper.builder().findAndAddModules()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS).build());
+        MessageChannel outbound = (message, timeout) -> {
+            var encoded = codec.onOutbound(message);
+            String sessionId = SimpMessageHeaderAccessor.getSessionId(encoded.getHeaders());
+            frames.incrementAndGet();
+            bytes.addAndGet(((byte[]) encoded.getPayload()).length);
+            if (!memberSessions.contains(sessionId)) wasted.incrementAndGet();
+            return true;
+        };
+        // Kênh đồng bộ (không executor): thời gian đo gồm cả phần broker + encode
+        ExecutorSubscribableChannel inbound = new ExecutorSubscribableChannel();
+        ExecutorSubscribableChannel brokerChannel = new ExecutorSubscribableChannel();
+        SimpleBrokerMessageHandler broker = new SimpleBrokerMessageHandler(inbound, outbound, brokerChannel,
+                List.of("/topic", "/queue"));
+        DefaultSimpUserRegistry registry = new DefaultSimpUserRegistry();
+        UserDestinationMessageHandler userHandler = new UserDestinationMessageHandler(inbound, brokerChannel,
+                new DefaultUserDestinationResolver(registry));
+        broker.start();
+        userHandler.start();
+
+        SimpMessagingTemplate template = new SimpMessagingTemplate(brokerChannel);
+        template.setMessageConverter(codec.messageConverter());
+
+        ConversationService conversations = mock(ConversationService.class, withSettings().stubOnly());
+        BlockListCache blocks = mock(BlockListCache.class, withSettings().stubOnly());
+        MessageFanoutService fanout = new MessageFanoutService(template, null, conversations, blocks, THRESHOLD);
+
+        int[] sizes = {2, 20, 200, 2000};
+        // Mỗi user một session; subscribe như client: queue riêng, topic toàn cục cũ, topic các hội thoại lớn
+        for (int u = 0; u < SESSIONS; u++) {
+            String user = "u" + u;
+            String session = "s" + u;
+            connect(inbound, registry, user, session);
+            subscribe(inbound, user, session, "/user/queue/message.recalled");
+            subscribe(inbound, user, session, "/topic/message.recalled");
+            for (int size : sizes) {
+                if (u < size && size - 1 > THRESHOLD) subscribe(inbound, user, session, "/topic/message.recalled.g" + size);
+            }
+        }
+        for (int size : sizes) {
+            List<String> members = new ArrayList<>();
+            for (int u = 0; u < size; u++) members.add("u" + u);
+            when(conversations.participants("g" + size)).thenReturn(members);
+        }
+
+        // Warm-up cho JIT, không in
+        run("g20", 20, () -> template.convertAndSend("/topic/message.recalled", change("g20")), 200);
+        run("g20", 20, () -> fanout.messageRecalled(message("g20")), 2000);
+
+        System.out.printf("%-8s %-28s %12s %14s %12s %12s%n",
+                "members", "destination", "frames/evt", "non-member/evt", "bytes/evt", "events/s");
+        for (int size : sizes) {
+            String conv = "g" + size;
+            report(size, "global topic (before)", run(conv, size,
+                    () -> template.convertAndSend("/topic/message.recalled", change(conv)), events(SESSIONS)));
+            String dest = size - 1 > THRESHOLD ? "conversation topic" : "member queues";
+            report(size, dest, run(conv, size, () -> fanout.messageRecalled(message(conv)), events(size)));
+        }
+    }
+
+    private record Result(int events, double seconds) {}
+
+    private Result run(String conv, int size, Runnable send, int events) {
+        Set<String> members = new HashSet<>();
+        for (int u = 0; u < size; u++) members.add("s" + u);
+        memberSessions = members;
+        frames.set(0);
+        wasted.set(0);
+        bytes.set(0);
+        long start = System.nanoTime();
+        for (int i = 0; i < events; i++) send.run();
+        return new Result(events, (System.nanoTime() - start) / 1e9);
+    }
+
+    private void report(int size, String name, Result r) {
+        System.out.printf("%-8d %-28s %12.0f %14.0f %12.0f %12.0f%n", size, name,
+                frames.get() / (double) r.events(), wasted.get() / (double) r.events(),
+                bytes.get() / (double) r.events(), r.events() / r.seconds());
+    }
+
+    // Số sự kiện sao cho mỗi chế độ gửi ra khoảng BUDGET_FRAMES frame
+    private static int events(int framesPerEvent) {
+        return (int) Math.max(200, Math.min(200_000, BUDGET_FRAMES / framesPerEvent));
+    }
+
+    // CONNECT cho broker (chỉ gửi tới session đã kết nối) và registry (resolve /user/...)
+    private static void connect(MessageChannel inbound, DefaultSimpUserRegistry registry, String user, String session) {
+        Principal principal = () -> user;
+        SimpMessageHeaderAccessor connect = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT);
+        connect.setSessionId(session);
+        connect.setUser(principal);
+        inbound.send(MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders()));
+
+        SimpMessageHeaderAccessor ack = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT_ACK);
+        ack.setSessionId(session);
+        registry.onApplicationEvent(new SessionConnectedEvent(FanoutDestinationBenchmark.class,
+                MessageBuilder.createMessage(new byte[0], ack.getMessageHeaders()), principal));
+    }
+
+    private static void subscribe(MessageChannel inbound, String user, String session, String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        accessor.setSessionId(session);
+        accessor.setSubscriptionId(destination);
+        accessor.setDestination(destination);
+        accessor.setUser(() -> user);
+        inbound.send(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()));
+    }
+
+    private static MessageFanoutService.MessageChange change(String conv) {
+        return new MessageFanoutService.MessageChange("m1", conv, Instant.now());
+    }
+
+    private static Message message(String conv) {
+        Message m = new Message();
+        m.setId("m1");
+        m.setConversationId(conv);
+        m.setSenderId("u0");
+        m.setRecalledAt(Instant.now());
+        return m;
+    }
+}
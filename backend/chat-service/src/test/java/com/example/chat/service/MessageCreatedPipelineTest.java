@@ -0,0 +1,183 @@
+package com.example.chat.service;
+
+import com.example.chat.config.KafkaConsumerConfig;
+import com.example.chat.config.WireEventDeserializer;
+import com.example.chat.config.WireEventSerializer;
+import com.example.chat.model.Message;
+import com.example.chat.model.MessageCreatedEvent;
+import com.example.chat.repository.ProcessedMessageRepository;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.kafka.annotation.EnableKafka;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * Pipeline message.created chạy trên broker Kafka nhúng: batch listener của
+ * KafkaConsumerConfig, ErrorHandlingDeserializer với poison pill và claim processed_messages.
+ */
+@SpringJUnitConfig
+@EmbeddedKafka(topics = MessageService.TOPIC_MESSAGE_CREATED, partitions = 3)
+@TestPropertySource(properties = {
+        "chat.pipeline.mode=kafka",
+        "chat.cluster.node-id=node-a"
+})
+class MessageCreatedPipelineTest {
+
+    private static final long TIMEOUT_MS = 15_000;
+
+    @Configuration
+    @EnableKafka
+    @Import({KafkaConsumerConfig.class, MessageCreatedProjector.class, MessageCreatedFanout.class})
+    static class Config {
+
+        // processed_messages giả lập trong bộ nhớ: 1 = claim lần đầu, 0 = đã xử lý
+        final Set<String> processed = ConcurrentHashMap.newKeySet();
+
+        @Bean
+        ConsumerFactory<Object, Object> consumerFactory(@Value("${spring.embedded.kafka.brokers}") String brokers) {
+            // Giống cấu hình consumer trong application.properties
+            return new DefaultKafkaConsumerFactory<>(Map.of(
+                    ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, brokers,
+                    ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest",
+                    ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class,
+                    ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ErrorHandlingDeserializer.class,
+                    ErrorHandlingDeserializer.VALUE_DESERIALIZER_CLASS, WireEventDeserializer.class));
+        }
+
+        @Bean
+        KafkaTemplate<String, Object> eventTemplate(@Value("${spring.embedded.kafka.brokers}") String brokers) {
+            return new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(Map.of(
+                    ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, brokers,
+                    ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class,
+                    ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, WireEventSerializer.class)));
+        }
+
+        @Bean
+        KafkaTemplate<String, byte[]> rawTemplate(@Value("${spring.embedded.kafka.brokers}") String brokers) {
+            return new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(Map.of(
+                    ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, brokers,
+                    ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class,
+                    ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class)));
+        }
+
+        @Bean
+        ProcessedMessageRepository processedRepo() {
+            ProcessedMessageRepository repo = mock(ProcessedMessageRepository.class);
+            when(repo.claim(any())).thenAnswer(inv -> processed.add(inv.getArgument(0)) ? 1 : 0);
+            return repo;
+        }
+
+        @Bean
+        InboxService inboxService() { return mock(InboxService.class); }
+
+        @Bean
+        MessageFanoutService fanoutService() { return mock(MessageFanoutService.class); }
+
+        @Bean
+        RecentMessageCache recentCache() { return mock(RecentMessageCache.class); }
+
+        @Bean
+        PlatformTransactionManager txManager() { return mock(PlatformTransactionManager.class); }
+    }
+
+    @Autowired KafkaTemplate<String, Object> eventTemplate;
+    @Autowired KafkaTemplate<String, byte[]> rawTemplate;
+    @Autowired KafkaListenerEndpointRegistry registry;
+    @Autowired InboxService inboxService;
+    @Autowired MessageFanoutService fanoutService;
+    @Autowired MessageCreatedFanout fanout;
+
+    @BeforeEach
+    void waitForPartitions() {
+        // Group fan-out đọc từ latest: phải được gán partition trước khi gửi
+        registry.getListenerContainers().forEach(c -> ContainerTestUtils.waitForAssignment(c, 3));
+    }
+
+    @Test
+    void batchListenerUpdatesInboxAndPushesEveryMessage() {
+        for (int i = 0; i < 20; i++) {
+            send(event("batch-" + i, "conv-" + (i % 4)));
+        }
+
+        verify(inboxService, timeout(TIMEOUT_MS).times(20)).onMessageSaved(argThat(m -> m.getId().startsWith("batch-")));
+        verify(fanoutService, timeout(TIMEOUT_MS).times(20)).messageCreated(argThat(m -> m.getId().startsWith("batch-")));
+    }
+
+    @Test
+    void poisonPillIsSkippedWithoutBlockingThePartition() {
+        // Bytes không giải mã được: ErrorHandlingDeserializer trả value null thay vì ném lỗi mãi ở poll
+        rawTemplate.send(MessageService.TOPIC_MESSAGE_CREATED, "conv-poison",
+                "{not json".getBytes(StandardCharsets.UTF_8));
+        send(event("after-poison", "conv-poison"));
+
+        verify(inboxService, timeout(TIMEOUT_MS)).onMessageSaved(argThat(m -> m.getId().equals("after-poison")));
+        verify(fanoutService, timeout(TIMEOUT_MS)).messageCreated(argThat(m -> m.getId().equals("after-poison")));
+    }
+
+    @Test
+    void redeliveredMessageIsAppliedOnce() {
+        send(event("dup-1", "conv-dup"));
+        send(event("dup-1", "conv-dup"));
+        // Cùng partition: khi marker đã được xử lý thì cả hai bản dup-1 cũng đã qua
+        send(event("dup-marker", "conv-dup"));
+
+        verify(inboxService, timeout(TIMEOUT_MS)).onMessageSaved(argThat(m -> m.getId().equals("dup-marker")));
+        verify(fanoutService, timeout(TIMEOUT_MS)).messageCreated(argThat(m -> m.getId().equals("dup-marker")));
+        verify(inboxService, times(1)).onMessageSaved(argThat(m -> m.getId().equals("dup-1")));
+        verify(fanoutService, times(1)).messageCreated(argThat(m -> m.getId().equals("dup-1")));
+    }
+
+    @Test
+    void fanoutGroupIsDerivedFromNodeId() {
+        assertEquals("chat-service-fanout-node-a", fanout.getGroupId());
+        assertTrue(registry.getListenerContainers().stream()
+                .anyMatch(c -> "chat-service-fanout-node-a".equals(c.getGroupId())));
+    }
+
+    private void send(MessageCreatedEvent event) {
+        eventTemplate.send(MessageService.TOPIC_MESSAGE_CREATED, event.conversationId(), event).join();
+    }
+
+    private static MessageCreatedEvent event(String id, String conversationId) {
+        Message m = new Message();
+        m.setId(id);
+        m.setConversationId(conversationId);
+        m.setSenderId("alice");
+        m.setReceiverId("bob");
+        m.setType("text");
+        m.setContent("hi");
+        m.setCreatedAt(Instant.now());
+        return MessageCreatedEvent.of(m);
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.chat.service;
+
+import com.example.chat.model.Message;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class MessageFanoutServiceTest {
+
+    private static final int THRESHOLD = 3;
+
+    private SimpMessagingTemplate messaging;
+    private ConversationService conversations;
+    private BlockListCache blocks;
+    private MessageFanoutService fanout;
+
+    @BeforeEach
+    void setUp() {
+        messaging = mock(SimpMessagingTemplate.class);
+        conversations = mock(ConversationService.class);
+        blocks = mock(BlockListCache.class);
+        fanout = new MessageFanoutService(messaging, null, conversations, blocks, THRESHOLD);
+    }
+
+    @Test
+    void smallGroupGoesPerUserSkippingSenderAndBlockers() {
+        members("g1", 3);
+        when(blocks.isBlocked("u2", "u0")).thenReturn(true);
+
+        fanout.messageCreated(message("g1", "u0"));
+
+        verify(messaging).convertAndSendToUser(eq("u1"), eq("/queue/messages"), any());
+        verify(messaging, never()).convertAndSendToUser(eq("u2"), anyString(), any());
+        verify(messaging, never()).convertAndSendToUser(eq("u0"), anyString(), any());
+        verify(messaging, never()).convertAndSend(anyString(), any(Object.class));
+    }
+
+    @Test
+    void largeGroupGoesToTopic() {
+        members("g1", THRESHOLD + 2);
+
+        fanout.messageCreated(message("g1", "u0"));
+
+        verify(messaging).convertAndSend(eq("/topic/messages.g1"), any(Object.class));
+        verify(messaging, never()).convertAndSendToUser(anyString(), anyString(), any());
+    }
+
+    @Test
+    void largeGroupWithBlockerFallsBackToPerUser() {
+        members("g1", THRESHOLD + 2);
+        when(blocks.isBlocked("u3", "u0")).thenReturn(true);
+
+        fanout.messageCreated(message("g1", "u0"));
+
+        verify(messaging, never()).convertAndSend(anyString(), any(Object.class));
+        verify(messaging, never()).convertAndSendToUser(eq("u3"), anyString(), any());
+        verify(messaging, times(THRESHOLD)).convertAndSendToUser(anyString(), eq("/queue/messages"), any());
+    }
+
+    @Test
+    void recallFollowsSameSplitAsNewMessages() {
+        // threshold + 1 thành viên: tin mới theo user (threshold người nhận) nên thu hồi cũng theo user
+        members("g1", THRESHOLD + 1);
+
+        fanout.messageCreated(message("g1", "u0"));
+        fanout.messageRecalled(message("g1", "u0"));
+
+        verify(messaging, never()).convertAndSend(anyString(), any(Object.class));
+        verify(messaging, times(THRESHOLD + 1)).convertAndSendToUser(anyString(), eq("/queue/message.recalled"), any());
+    }
+
+    @Test
+    void deleteGoesToTopicAboveThreshold() {
+        members("g1", THRESHOLD + 2);
+
+        fanout.messageDeleted(message("g1", "u0"));
+
+        verify(messaging).convertAndSend(eq("/topic/message.deleted.g1"), any(Object.class));
+        verify(messaging, never()).convertAndSendToUser(anyString(), anyString(), any());
+    }
+
+    @Test
+    void unknownMembersFallBackToTopicForEveryEvent() {
+        when(conversations.participants("legacy")).thenReturn(List.of());
+
+        fanout.messageCreated(message("legacy", "u0"));
+        fanout.messageRecalled(message("legacy", "u0"));
+
+        verify(messaging).convertAndSend(eq("/topic/messages.legacy"), any(Object.class));
+        verify(messaging).convertAndSend(eq("/topic/message.recalled.legacy"), any(Object.class));
+    }
+
+    private void members(String conversationId, int count) {
+        List<String> members = new ArrayList<>();
+        for (int i = 0; i < count; i++) members.add("u" + i);
+        when(conversations.participants(conversationId)).thenReturn(members);
+    }
+
+    static Message message(String conversationId, String senderId) {
+        Message m = new Message();
+        m.setId("m1");
+        m.setConversationId(conversationId);
+        m.setSenderId(senderId);
+        m.setContent("hi");
+        return m;
+    }
+}
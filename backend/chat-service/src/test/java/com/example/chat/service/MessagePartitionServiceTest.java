@@ -0,0 +1,127 @@
+package com.example.chat.service;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class MessagePartitionServiceTest {
+
+    @Test
+    void monthStartIsUtcFirstOfMonth() {
+        Instant t = Instant.parse("2026-10-17T08:15:30Z");
+        assertEquals(Instant.parse("2026-10-01T00:00:00Z"), MessagePartitionService.monthStart(t, 0));
+        assertEquals(Instant.parse("2026-08-01T00:00:00Z"), MessagePartitionService.monthStart(t, 2));
+        // monthsBack âm = tháng tới (cận trên partition)
+        assertEquals(Instant.parse("2026-11-01T00:00:00Z"), MessagePartitionService.monthStart(t, -1));
+    }
+
+    @Test
+    void monthStartCrossesYearBoundary() {
+        Instant t = Instant.parse("2026-01-31T23:59:59Z");
+        assertEquals(Instant.parse("2025-12-01T00:00:00Z"), MessagePartitionService.monthStart(t, 1));
+        assertEquals(Instant.parse("2027-01-01T00:00:00Z"),
+                MessagePartitionService.monthStart(Instant.parse("2026-12-15T00:00:00Z"), -1));
+    }
+
+    @Test
+    void monthStartOfExactBoundaryIsItself() {
+        Instant boundary = Instant.parse("2026-03-01T00:00:00Z");
+        assertEquals(boundary, MessagePartitionService.monthStart(boundary, 0));
+    }
+
+    @Test
+    void uniqueIndexGetsPartitionKeyAppended() {
+        assertEquals("CREATE UNIQUE INDEX uk ON public.messages USING btree (sender_id, client_temp_id, created_at)",
+                MessagePartitionService.withPartitionKey(
+                        "CREATE UNIQUE INDEX uk ON public.messages USING btree (sender_id, client_temp_id)"));
+    }
+
+    @Test
+    void indexAlreadyContainingPartitionKeyIsKept() {
+        String def = "CREATE UNIQUE INDEX uk ON public.messages USING btree (conversation_id, created_at)";
+        assertEquals(def, MessagePartitionService.withPartitionKey(def));
+    }
+
+    @Test
+    void partialOrIncludeIndexesAreNotRecreated() {
+        assertNull(MessagePartitionService.withPartitionKey(
+                "CREATE UNIQUE INDEX uk ON public.messages USING btree (sender_id) WHERE (client_temp_id IS NOT NULL)"));
+        assertNull(MessagePartitionService.withPartitionKey(
+                "CREATE UNIQUE INDEX uk ON public.messages USING btree (sender_id) INCLUDE (id)"));
+    }
+
+    @Test
+    void legacyTableIsValidatedBeforeTheExclusiveLockAndAttach() {
+        JdbcTemplate jdbc = mock(JdbcTemplate.class);
+        when(jdbc.queryForList(contains("relkind::text"), eq(String.class))).thenReturn(List.of("r"));
+        when(jdbc.queryForObject(contains("pg_try_advisory_xact_lock"), eq(Boolean.class), any())).thenReturn(true);
+        when(jdbc.queryForObject(contains("GREATEST"), eq(Timestamp.class)))
+                .thenReturn(Timestamp.from(Instant.parse("2026-10-17T08:00:00Z")));
+        when(jdbc.queryForList(contains("pg_get_constraintdef"), eq(Timestamp.class)))
+                .thenReturn(List.of(Timestamp.from(Instant.parse("2026-11-01T00:00:00Z"))));
+
+        service(jdbc).init();
+
+        List<String> sql = executed(jdbc);
+        int addCheck = indexOf(sql, "ADD CONSTRAINT messages_created_at_bound CHECK (created_at IS NOT NULL " +
+                "AND created_at < '2026-11-01T00:00:00Z') NOT VALID");
+        int validate = indexOf(sql, "VALIDATE CONSTRAINT messages_created_at_bound");
+        int lock = indexOf(sql, "LOCK TABLE messages IN ACCESS EXCLUSIVE MODE");
+        int notNull = indexOf(sql, "SET NOT NULL");
+        int attach = indexOf(sql, "ATTACH PARTITION messages_legacy FOR VALUES FROM (MINVALUE) TO ('2026-11-01T00:00:00Z')");
+        int dropCheck = indexOf(sql, "ALTER TABLE messages_legacy DROP CONSTRAINT messages_created_at_bound");
+        assertTrue(addCheck < validate && validate < lock && lock < notNull && notNull < attach && attach < dropCheck, sql.toString());
+    }
+
+    @Test
+    void futureDatedRowsInDefaultAreMovedBeforeAttaching() {
+        JdbcTemplate jdbc = mock(JdbcTemplate.class);
+        when(jdbc.queryForList(contains("relkind::text"), eq(String.class))).thenReturn(List.of("p"));
+        when(jdbc.queryForObject(contains("pg_try_advisory_xact_lock"), eq(Boolean.class), any())).thenReturn(true);
+        when(jdbc.queryForObject(contains("to_regclass(?) IS NOT NULL"), eq(Boolean.class), any())).thenReturn(false);
+        // Chỉ tháng đầu tiên có dòng nằm trong default
+        when(jdbc.queryForObject(contains("FROM messages_default"), eq(Boolean.class), any(), any()))
+                .thenReturn(true, false);
+        when(jdbc.queryForObject(contains("pg_attribute"), eq(String.class))).thenReturn("id, created_at");
+
+        service(jdbc).maintain();
+
+        List<String> sql = executed(jdbc);
+        String month = MessagePartitionService.monthStart(Instant.now(), 0).toString().substring(0, 7).replace("-", "");
+        int create = indexOf(sql, "CREATE TABLE messages_p" + month + " (LIKE messages");
+        int attach = indexOf(sql, "ATTACH PARTITION messages_p" + month);
+        assertTrue(create < attach, sql.toString());
+        assertTrue(sql.stream().noneMatch(s -> s.startsWith("CREATE TABLE messages_p" + month + " PARTITION OF")));
+        verify(jdbc).update(startsWith("WITH moved AS (DELETE FROM messages_default"), any(Timestamp.class), any(Timestamp.class));
+        // Tháng sau không có dòng lạc: tạo thẳng PARTITION OF
+        String next = MessagePartitionService.monthStart(Instant.now(), -1).toString().substring(0, 7).replace("-", "");
+        indexOf(sql, "CREATE TABLE messages_p" + next + " PARTITION OF messages");
+    }
+
+    private static MessagePartitionService service(JdbcTemplate jdbc) {
+        return new MessagePartitionService(jdbc, mock(PlatformTransactionManager.class), null, 2, 0, false);
+    }
+
+    private static List<String> executed(JdbcTemplate jdbc) {
+        ArgumentCaptor<String> captor = ArgumentCaptor.forClass(String.class);
+        verify(jdbc, atLeastOnce()).execute(captor.capture());
+        return captor.getAllValues();
+    }
+
+    private static int indexOf(List<String> sql, String fragment) {
+        for (int i = 0; i < sql.size(); i++) {
+            if (sql.get(i).contains(fragment)) return i;
+        }
+        fail("No statement containing: " + fragment + " in " + sql);
+        return -1;
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.chat.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageSearchServiceTest {
+
+    @Test
+    void buildsPrefixConjunction() {
+        assertEquals("xin:* & chao:* & ban:*", MessageSearchService.toPrefixQuery("Xin  chao, BAN"));
+    }
+
+    @Test
+    void keepsUnicodeLettersAndDigits() {
+        assertEquals("chào:* & bạn:* & 2026:*", MessageSearchService.toPrefixQuery("Chào bạn 2026!"));
+    }
+
+    @Test
+    void stripsTsqueryOperators() {
+        assertEquals("a:* & b:* & c:*", MessageSearchService.toPrefixQuery("a & !b | (c:*)"));
+        assertEquals("x:*", MessageSearchService.toPrefixQuery("'x' <-> "));
+    }
+
+    @Test
+    void emptyOrOperatorOnlyQueryIsRejected() {
+        assertNull(MessageSearchService.toPrefixQuery(null));
+        assertNull(MessageSearchService.toPrefixQuery(""));
+        assertNull(MessageSearchService.toPrefixQuery(" &|!:*() "));
+    }
+
+    @Test
+    void limitsNumberOfTerms() {
+        String query = MessageSearchService.toPrefixQuery("a b c d e f g h i j k l m n o p q r s t u v w x y z");
+        assertEquals(8, query.split(" & ").length);
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.chat.service;
+
+import com.example.chat.model.Message;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+
+import java.nio.file.Path;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageWriteBehindTest {
+
+    @Test
+    void onlyRowsActuallyInsertedArePostProcessed() {
+        List<Message> batch = List.of(message("m1"), message("m2"), message("m3"), message("m4"));
+        // Hai chunk JDBC; m2 trùng (ON CONFLICT DO NOTHING -> 0), m4 driver không báo số dòng
+        int[][] counts = {{1, 0}, {1, Statement.SUCCESS_NO_INFO}};
+
+        List<Message> inserted = MessageWriteBehind.inserted(batch, counts);
+
+        assertEquals(List.of("m1", "m3", "m4"), inserted.stream().map(Message::getId).toList());
+    }
+
+    @Test
+    void replayedDuplicatesAreSkipped() {
+        List<Message> batch = List.of(message("m1"), message("m2"));
+
+        assertTrue(MessageWriteBehind.inserted(batch, new int[][]{{0, 0}}).isEmpty());
+    }
+
+    @Test
+    void submittedMessageStaysPendingUntilTheWriterFlushes(@TempDir Path spool) throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        JdbcTemplate jdbc = new JdbcTemplate() {
+            @Override
+            public <T> int[][] batchUpdate(String sql, Collection<T> batchArgs, int batchSize,
+                                           ParameterizedPreparedStatementSetter<T> pss) {
+                try {
+                    gate.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                int[] counts = new int[batchArgs.size()];
+                Arrays.fill(counts, 1);
+                return new int[][]{counts};
+            }
+        };
+        MessageWriteBehind writeBehind = new MessageWriteBehind(jdbc, null, JsonMapper.builder().findAndAddModules().build(),
+                10, 10, 1, 50, spool.toString(), "kafka");
+        writeBehind.start();
+        try {
+            Message m = writeBehind.prepare(new Message());
+            writeBehind.submit(m);
+
+            assertTrue(writeBehind.isPending(m.getId()));
+            assertFalse(writeBehind.awaitPersisted(m.getId(), 50));
+
+            gate.countDown();
+
+            assertTrue(writeBehind.awaitPersisted(m.getId(), 5000));
+            assertFalse(writeBehind.isPending(m.getId()));
+            // Id không qua write-behind: không có gì để chờ
+            assertTrue(writeBehind.awaitPersisted("unknown", 0));
+        } finally {
+            gate.countDown();
+            writeBehind.stop();
+        }
+    }
+
+    private static Message message(String id) {
+        Message m = new Message();
+        m.setId(id);
+        return m;
+    }
+}
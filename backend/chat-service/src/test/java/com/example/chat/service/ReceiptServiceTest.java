@@ -0,0 +1,126 @@
+package com.example.chat.service;
+
+import com.example.chat.model.Message;
+import com.example.chat.model.MessageStatus;
+import com.example.chat.repository.MessageRepository;
+import com.example.chat.repository.MessageStatusRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ReceiptServiceTest {
+
+    private static final String CONV = "alice-bob";
+    private static final Instant T1 = Instant.parse("2026-10-17T08:00:00Z");
+    private static final Instant T2 = Instant.parse("2026-10-17T08:05:00Z");
+
+    private MessageRepository messageRepo;
+    private JdbcTemplate jdbc;
+    private MessageFanoutService fanout;
+    private ReceiptService service;
+
+    @BeforeEach
+    void setUp() {
+        messageRepo = mock(MessageRepository.class);
+        jdbc = mock(JdbcTemplate.class);
+        fanout = mock(MessageFanoutService.class);
+        ConversationService conversations = mock(ConversationService.class);
+        when(conversations.participants(CONV)).thenReturn(List.of("alice", "bob"));
+        service = new ReceiptService(messageRepo, mock(MessageStatusRepository.class), jdbc, fanout, conversations);
+    }
+
+    @Test
+    void keepsHighestMarkPerKey() {
+        ackReturns("m2", T2);
+        service.ack(CONV, "bob", MessageStatus.DELIVERED, List.of("m2"));
+        ackReturns("m1", T1);
+        service.ack(CONV, "bob", MessageStatus.DELIVERED, List.of("m1"));
+
+        service.flush();
+
+        List<Object[]> upserts = captureBatch(0);
+        assertEquals(1, upserts.size());
+        assertEquals("m2", upserts.get(0)[3]);
+        assertEquals(Timestamp.from(T2), upserts.get(0)[4]);
+    }
+
+    @Test
+    void sameTimeTieBrokenByMessageId() {
+        ackReturns("m-a", T1);
+        service.ack(CONV, "bob", MessageStatus.DELIVERED, List.of("m-a"));
+        ackReturns("m-b", T1);
+        service.ack(CONV, "bob", MessageStatus.DELIVERED, List.of("m-b"));
+        ackReturns("m-a", T1);
+        service.ack(CONV, "bob", MessageStatus.DELIVERED, List.of("m-a"));
+
+        service.flush();
+
+        assertEquals("m-b", captureBatch(0).get(0)[3]);
+    }
+
+    @Test
+    void readImpliesDeliveredAndResetsUnreadUpToMark() {
+        ackReturns("m2", T2);
+        service.ack(CONV, "bob", MessageStatus.READ, List.of("m2"));
+
+        service.flush();
+
+        List<Object[]> upserts = captureBatch(0);
+        assertEquals(2, upserts.size());
+        assertTrue(upserts.stream().anyMatch(r -> MessageStatus.DELIVERED.equals(r[2]) && "m2".equals(r[3])));
+        List<Object[]> resets = captureBatch(1);
+        assertArrayEquals(new Object[]{Timestamp.from(T2), Timestamp.from(T2), "m2", "bob", CONV}, resets.get(0));
+        // delivered đi kèm read: chỉ đẩy một sự kiện cho alice
+        verify(fanout, times(1)).toUser(eq("alice"), eq("/queue/message_status"), any());
+        verify(fanout, never()).toUser(eq("bob"), anyString(), any());
+    }
+
+    @Test
+    void rejectsNonParticipant() {
+        assertThrows(IllegalArgumentException.class,
+                () -> service.ack(CONV, "mallory", MessageStatus.READ, null));
+        assertThrows(IllegalArgumentException.class,
+                () -> service.ack(CONV, null, MessageStatus.READ, null));
+        verifyNoInteractions(messageRepo);
+    }
+
+    @Test
+    void failedFlushRequeuesMarks() {
+        ackReturns("m1", T1);
+        service.ack(CONV, "bob", MessageStatus.DELIVERED, List.of("m1"));
+        when(jdbc.batchUpdate(anyString(), anyList())).thenThrow(new IllegalStateException("db down"))
+                .thenReturn(new int[]{1});
+
+        service.flush();
+        service.flush();
+
+        verify(jdbc, times(2)).batchUpdate(anyString(), anyList());
+        verify(fanout, times(1)).toUser(eq("alice"), anyString(), any());
+    }
+
+    private void ackReturns(String id, Instant time) {
+        Message m = new Message();
+        m.setId(id);
+        m.setConversationId(CONV);
+        m.setCreatedAt(time);
+        when(messageRepo.findLatestAmong(eq(CONV), anyList(), any())).thenReturn(List.of(m));
+        when(messageRepo.findFirstByConversationIdOrderByCreatedAtDesc(CONV)).thenReturn(Optional.of(m));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object[]> captureBatch(int call) {
+        ArgumentCaptor<List<Object[]>> captor = ArgumentCaptor.forClass(List.class);
+        verify(jdbc, atLeast(call + 1)).batchUpdate(anyString(), captor.capture());
+        return captor.getAllValues().get(call);
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.chat.service;
+
+import com.example.chat.model.Message;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecentMessageCacheTest {
+
+    private static final String CONV = "alice-bob";
+    private static final Instant T0 = Instant.parse("2026-10-17T08:00:00Z");
+
+    @Test
+    void missUntilLoadedThenServesNewestFirst() {
+        RecentMessageCache cache = new RecentMessageCache(5, 100, 1 << 20, 300);
+        assertNull(cache.latest(CONV, 2));
+
+        load(cache, newestFirst(3), 10);
+
+        assertEquals(List.of("m2", "m1"), ids(cache.latest(CONV, 2)));
+        // Hội thoại chỉ có 3 tin (ít hơn số đã xin) nên buffer đầy đủ: trả được cả khi xin nhiều hơn
+        assertEquals(List.of("m2", "m1", "m0"), ids(cache.latest(CONV, 10)));
+    }
+
+    @Test
+    void incompleteBufferMissesWhenTooFewMessages() {
+        RecentMessageCache cache = new RecentMessageCache(3, 100, 1 << 20, 300);
+        // DB trả đủ số đã xin: có thể còn tin cũ hơn
+        load(cache, newestFirst(3), 3);
+
+        assertNotNull(cache.latest(CONV, 3));
+        assertNull(cache.latest(CONV, 4));
+    }
+
+    @Test
+    void insertKeepsOrderAndEvictsOldestWhenFull() {
+        RecentMessageCache cache = new RecentMessageCache(3, 100, 1 << 20, 300);
+        load(cache, newestFirst(2), 10);
+
+        cache.onSaved(message("m5", 5));
+        cache.onSaved(message("m3", 3)); // đến muộn, chèn giữa
+        cache.onSaved(message("m5", 5)); // trùng id: bỏ qua
+
+        assertEquals(List.of("m5", "m3", "m1"), ids(cache.latest(CONV, 3)));
+        // m0 bị đẩy ra nên buffer không còn đầy đủ
+        assertNull(cache.latest(CONV, 4));
+    }
+
+    @Test
+    void olderThanEverythingInFullBufferIsIgnored() {
+        RecentMessageCache cache = new RecentMessageCache(2, 100, 1 << 20, 300);
+        load(cache, List.of(message("m9", 9), message("m8", 8)), 2);
+
+        cache.onSaved(message("m1", 1));
+
+        assertEquals(List.of("m9", "m8"), ids(cache.latest(CONV, 2)));
+    }
+
+    @Test
+    void recallAndDeleteAreApplied() {
+        RecentMessageCache cache = new RecentMessageCache(5, 100, 1 << 20, 300);
+        load(cache, newestFirst(3), 10);
+
+        Message recalled = message("m1", 1);
+        recalled.setRecalled(true);
+        cache.onRecalled(recalled);
+        cache.onDeleted(message("m2", 2));
+
+        List<Message> page = cache.latest(CONV, 10);
+        assertEquals(List.of("m1", "m0"), ids(page));
+        assertTrue(page.get(0).isRecalled());
+    }
+
+    @Test
+    void deleteFromIncompleteBufferDropsIt() {
+        RecentMessageCache cache = new RecentMessageCache(3, 100, 1 << 20, 300);
+        load(cache, newestFirst(3), 3);
+
+        cache.onDeleted(message("m1", 1));
+
+        assertNull(cache.latest(CONV, 1));
+    }
+
+    @Test
+    void loadRacingWithWriteIsDiscarded() {
+        RecentMessageCache cache = new RecentMessageCache(5, 100, 1 << 20, 300);
+        long token = cache.loadToken(CONV);
+        cache.onSaved(message("m9", 9));
+
+        cache.load(CONV, token, newestFirst(3), 10);
+
+        assertNull(cache.latest(CONV, 1));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedConversation() {
+        RecentMessageCache cache = new RecentMessageCache(5, 2, 1 << 20, 300);
+        load(cache, "c1", 10);
+        load(cache, "c2", 10);
+        cache.latest("c1", 1);
+        load(cache, "c3", 10);
+
+        assertNotNull(cache.latest("c1", 1));
+        assertNull(cache.latest("c2", 1));
+        assertEquals(1L, cache.getStats().get("evictions"));
+    }
+
+    @Test
+    void peersAreNotifiedOfWritesButNotOfPeerEvictions() {
+        RecentMessageCache cache = new RecentMessageCache(5, 100, 1 << 20, 300);
+        List<String> notified = new ArrayList<>();
+        cache.setPeerNotifier(notified::add);
+        load(cache, newestFirst(2), 10);
+
+        cache.onSaved(message("m5", 5));
+        cache.onDeleted(message("m0", 0));
+        cache.evictFromPeer(CONV);
+
+        assertEquals(List.of(CONV, CONV), notified);
+        assertNull(cache.latest(CONV, 1));
+    }
+
+    @Test
+    void expiresAfterTtlWithoutWrites() throws InterruptedException {
+        RecentMessageCache cache = new RecentMessageCache(5, 100, 1 << 20, 0);
+        load(cache, newestFirst(2), 10);
+        Thread.sleep(5);
+
+        assertNull(cache.latest(CONV, 1));
+    }
+
+    private static void load(RecentMessageCache cache, List<Message> newestFirst, int requested) {
+        cache.load(CONV, cache.loadToken(CONV), newestFirst, requested);
+    }
+
+    private static void load(RecentMessageCache cache, String conversationId, int requested) {
+        Message m = message("x-" + conversationId, 1);
+        m.setConversationId(conversationId);
+        cache.load(conversationId, cache.loadToken(conversationId), List.of(m), requested);
+    }
+
+    // m{n-1}, ..., m0
+    private static List<Message> newestFirst(int n) {
+        List<Message> out = new ArrayList<>();
+        for (int i = n - 1; i >= 0; i--) out.add(message("m" + i, i));
+        return out;
+    }
+
+    private static Message message(String id, int minute) {
+        Message m = new Message();
+        m.setId(id);
+        m.setConversationId(CONV);
+        m.setSenderId("alice");
+        m.setContent("hello " + id);
+        m.setType("text");
+        m.setCreatedAt(T0.plusSeconds(60L * minute));
+        return m;
+    }
+
+    private static List<String> ids(List<Message> messages) {
+        return messages.stream().map(Message::getId).toList();
+    }
+}
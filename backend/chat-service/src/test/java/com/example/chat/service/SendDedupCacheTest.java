@@ -0,0 +1,51 @@
+package com.example.chat.service;
+
+import com.example.chat.model.Message;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SendDedupCacheTest {
+
+    @Test
+    void returnsCachedMessageWithinTtl() {
+        SendDedupCache cache = new SendDedupCache(100, 600);
+        Message m = message("m1");
+
+        assertNull(cache.putIfAbsent("alice", "tmp-1", m));
+        assertSame(m, cache.get("alice", "tmp-1"));
+        // Request trùng chạy song song nhận lại tin đã ghi
+        assertSame(m, cache.putIfAbsent("alice", "tmp-1", message("m2")));
+        assertNull(cache.get("bob", "tmp-1"));
+    }
+
+    @Test
+    void expiredEntryIsMissAndCanBeReplaced() throws InterruptedException {
+        SendDedupCache cache = new SendDedupCache(100, 0);
+        cache.putIfAbsent("alice", "tmp-1", message("m1"));
+        Thread.sleep(5);
+
+        assertNull(cache.get("alice", "tmp-1"));
+        Message fresh = message("m2");
+        assertNull(cache.putIfAbsent("alice", "tmp-1", fresh));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedBeyondMaxSize() {
+        SendDedupCache cache = new SendDedupCache(2, 600);
+        cache.putIfAbsent("alice", "t1", message("m1"));
+        cache.putIfAbsent("alice", "t2", message("m2"));
+        cache.get("alice", "t1");
+        cache.putIfAbsent("alice", "t3", message("m3"));
+
+        assertNotNull(cache.get("alice", "t1"));
+        assertNull(cache.get("alice", "t2"));
+        assertNotNull(cache.get("alice", "t3"));
+    }
+
+    private static Message message(String id) {
+        Message m = new Message();
+        m.setId(id);
+        return m;
+    }
+}
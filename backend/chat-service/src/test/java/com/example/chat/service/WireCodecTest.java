@@ -0,0 +1,155 @@
+package com.example.chat.service;
+
+import com.example.chat.model.Message;
+import com.example.chat.model.MessageCreatedEvent;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WireCodecTest {
+
+    static final Instant CREATED = Instant.parse("2026-10-17T08:15:30.123456Z");
+
+    private WireCodec codec;
+
+    @BeforeEach
+    void setUp() {
+        // Mapper của Spring Boot là JsonMapper: codec không được phụ thuộc vào copyWith()
+        ObjectMapper boot = JsonMapper.builder().findAndAddModules()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS).build();
+        codec = new WireCodec(boot);
+    }
+
+    @Test
+    void jsonRoundTrip() throws Exception {
+        MessageCreatedEvent event = sampleEvent();
+        byte[] json = codec.encode(event, WireCodec.Format.JSON);
+
+        assertTrue(new String(json).contains("\"createdAt\":\"2026-10-17T08:15:30.123456Z\""));
+        ObjectMapper reader = JsonMapper.builder().findAndAddModules().build();
+        assertEquals(event, reader.readValue(json, MessageCreatedEvent.class));
+    }
+
+    @Test
+    void cborRoundTripWithMillisTimestamps() throws Exception {
+        MessageCreatedEvent event = sampleEvent();
+        byte[] cbor = codec.encode(event, WireCodec.Format.CBOR);
+
+        // Client đọc số nguyên là epoch millis
+        MessageCreatedEvent decoded = CBORMapper.builder().findAndAddModules()
+                .disable(DeserializationFeature.READ_DATE_TIMESTAMPS_AS_NANOSECONDS).build()
+                .readValue(cbor, MessageCreatedEvent.class);
+        // STOMP CBOR gửi epoch millis cho client
+        MessageCreatedEvent expected = withCreatedAt(event, CREATED.truncatedTo(ChronoUnit.MILLIS));
+        assertEquals(expected, decoded);
+        assertTrue(cbor.length < codec.encode(event, WireCodec.Format.JSON).length);
+    }
+
+    @Test
+    void nullFieldsAreOmittedInCbor() throws Exception {
+        byte[] cbor = codec.encode(sampleEvent(), WireCodec.Format.CBOR);
+        Map<?, ?> fields = CBORMapper.builder().build().readValue(cbor, Map.class);
+        assertFalse(fields.containsKey("attachmentUrl"));
+    }
+
+    @Test
+    void sessionNegotiatesCborOnlyOnBinaryEndpoint() {
+        codec.onInbound(connect("binary", true, "cbor"));
+        codec.onInbound(connect("sockjs", false, "cbor"));
+        codec.onInbound(connect("plain", true, null));
+
+        Object payload = codec.messageConverter().toMessage(sampleEvent(), null).getPayload();
+        assertInstanceOf(WireCodec.WirePayload.class, payload);
+
+        var binary = codec.onOutbound(outbound(payload, "binary"));
+        var sockjs = codec.onOutbound(outbound(payload, "sockjs"));
+        var plain = codec.onOutbound(outbound(payload, "plain"));
+
+        assertEquals(MimeTypeUtils.APPLICATION_OCTET_STREAM, contentType(binary));
+        assertEquals("cbor", StompHeaderAccessor.wrap(binary).getFirstNativeHeader(WireCodec.FORMAT_HEADER));
+        assertEquals(MimeTypeUtils.APPLICATION_JSON, contentType(sockjs));
+        // Mỗi định dạng encode một lần cho mọi session
+        assertSame(sockjs.getPayload(), plain.getPayload());
+        assertNotSame(binary.getPayload(), plain.getPayload());
+    }
+
+    @Test
+    void disconnectForgetsSessionFormat() {
+        codec.onInbound(connect("s1", true, "cbor"));
+        codec.onDisconnect(new org.springframework.web.socket.messaging.SessionDisconnectEvent(
+                this, MessageBuilder.withPayload(new byte[0]).build(), "s1",
+                org.springframework.web.socket.CloseStatus.NORMAL));
+
+        Object payload = codec.messageConverter().toMessage(sampleEvent(), null).getPayload();
+        var out = codec.onOutbound(outbound(payload, "s1"));
+        assertEquals(MimeTypeUtils.APPLICATION_JSON, contentType(out));
+    }
+
+    @Test
+    void stringAndBytePayloadsAreLeftToDefaultConverters() {
+        assertNull(codec.messageConverter().toMessage("text", null));
+        assertNull(codec.messageConverter().toMessage(new byte[]{1}, null));
+    }
+
+    private static org.springframework.util.MimeType contentType(org.springframework.messaging.Message<?> message) {
+        return SimpMessageHeaderAccessor.wrap(message).getContentType();
+    }
+
+    private static org.springframework.messaging.Message<byte[]> connect(String sessionId, boolean binary, String format) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+        accessor.setSessionId(sessionId);
+        Map<String, Object> attributes = new HashMap<>();
+        if (binary) attributes.put(WireCodec.BINARY_ATTRIBUTE, true);
+        accessor.setSessionAttributes(attributes);
+        if (format != null) accessor.setNativeHeader(WireCodec.FORMAT_HEADER, format);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static org.springframework.messaging.Message<Object> outbound(Object payload, String sessionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setDestination("/user/queue/messages");
+        return MessageBuilder.createMessage(payload, accessor.getMessageHeaders());
+    }
+
+    static Message sampleMessage() {
+        Message m = new Message();
+        m.setId("8f14e45f-ceea-467f-a0e6-1f1e5a9d2c31");
+        m.setConversationId("user_123-user_456");
+        m.setSenderId("user_123");
+        m.setReceiverId("user_456");
+        m.setType("text");
+        m.setContent("Chào bạn, tối nay đi ăn không?");
+        m.setStatus("sent");
+        m.setClientTempId("tmp-1729152930123");
+        m.setCreatedAt(CREATED);
+        m.setRecalled(false);
+        return m;
+    }
+
+    static MessageCreatedEvent sampleEvent() {
+        return MessageCreatedEvent.of(sampleMessage());
+    }
+
+    private static MessageCreatedEvent withCreatedAt(MessageCreatedEvent e, Instant createdAt) {
+        return new MessageCreatedEvent(e.v(), e.id(), e.conversationId(), e.senderId(), e.receiverId(), e.type(),
+                e.content(), e.attachmentUrl(), e.status(), e.clientTempId(), createdAt);
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.chat.service;
+
+import com.example.chat.config.WireEventDeserializer;
+import com.example.chat.config.WireEventSerializer;
+import com.example.chat.model.Message;
+import com.example.chat.model.MessageCreatedEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Bytes/tin và ns/op của các định dạng message.created (số liệu trong commit user-025).
+ * Bỏ qua khi chạy test thường; chạy: gradle test -Pbench --tests '*WireFormatBenchmark'
+ */
+@EnabledIfSystemProperty(named = "bench", matches = "true")
+class WireFormatBenchmark {
+
+    private static final int ITERATIONS = 200_000;
+    private static final int ROUNDS = 5;
+
+    @Test
+    void bytesAndNanosPerMessage() {
+        ObjectMapper boot = JsonMapper.builder().findAndAddModules()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS).build();
+        WireCodec codec = new WireCodec(boot);
+        Message entity = WireCodecTest.sampleMessage();
+        MessageCreatedEvent event = MessageCreatedEvent.of(entity);
+
+        WireEventSerializer kafkaJson = new WireEventSerializer();
+        kafkaJson.configure(Map.of(), false);
+        WireEventSerializer kafkaCbor = new WireEventSerializer();
+        kafkaCbor.configure(Map.of(WireEventSerializer.FORMAT_CONFIG, "cbor"), false);
+        WireEventDeserializer deserializer = new WireEventDeserializer();
+        RecordHeaders jsonHeaders = new RecordHeaders();
+        RecordHeaders cborHeaders = new RecordHeaders();
+        byte[] jsonRecord = kafkaJson.serialize("t", jsonHeaders, event);
+        byte[] cborRecord = kafkaCbor.serialize("t", cborHeaders, event);
+
+        System.out.printf("%-24s %8s %12s%n", "format", "bytes", "ns/op");
+        report("entity JSON (before)", () -> unchecked(() -> boot.writeValueAsBytes(entity)));
+        report("event JSON (STOMP)", () -> codec.encode(event, WireCodec.Format.JSON));
+        report("event CBOR (STOMP)", () -> codec.encode(event, WireCodec.Format.CBOR));
+        report("event JSON (Kafka)", () -> kafkaJson.serialize("t", new RecordHeaders(), event));
+        report("event CBOR (Kafka)", () -> kafkaCbor.serialize("t", new RecordHeaders(), event));
+        decode("decode JSON (Kafka)", jsonRecord.length, () -> deserializer.deserialize("t", jsonHeaders, jsonRecord));
+        decode("decode CBOR (Kafka)", cborRecord.length, () -> deserializer.deserialize("t", cborHeaders, cborRecord));
+    }
+
+    private static void report(String name, Supplier<byte[]> encode) {
+        int bytes = encode.get().length;
+        System.out.printf("%-24s %8d %12d%n", name, bytes, bestNanos(encode));
+    }
+
+    private static void decode(String name, int bytes, Supplier<?> decode) {
+        System.out.printf("%-24s %8d %12d%n", name, bytes, bestNanos(decode));
+    }
+
+    // Thời gian tốt nhất qua nhiều vòng (vòng đầu là warm-up cho JIT)
+    private static long bestNanos(Supplier<?> op) {
+        long best = Long.MAX_VALUE;
+        Object sink = null;
+        for (int r = 0; r < ROUNDS; r++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) sink = op.get();
+            best = Math.min(best, (System.nanoTime() - start) / ITERATIONS);
+        }
+        if (sink == null) throw new IllegalStateException();
+        return best;
+    }
+
+    private interface Encode {
+        byte[] run() throws Exception;
+    }
+
+    private static byte[] unchecked(Encode encode) {
+        try {
+            return encode.run();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
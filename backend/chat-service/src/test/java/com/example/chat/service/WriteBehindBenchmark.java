@@ -0,0 +1,109 @@
+package com.example.chat.service;
+
+import com.example.chat.model.Message;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends/giây của MessageService.save: insert đồng bộ từng tin vs write-behind gom batch.
+ * Postgres được giả lập bằng độ trễ mỗi round trip + chi phí mỗi dòng, nên số liệu chỉ
+ * so sánh tương đối giữa hai chế độ (user-004), không phải throughput thật của DB.
+ * Chạy: gradle test -Pbench --tests '*WriteBehindBenchmark'
+ */
+@EnabledIfSystemProperty(named = "bench", matches = "true")
+class WriteBehindBenchmark {
+
+    private static final long ROUND_TRIP_NANOS = TimeUnit.MICROSECONDS.toNanos(500);
+    private static final long PER_ROW_NANOS = TimeUnit.MICROSECONDS.toNanos(5);
+    private static final int SENDERS = 16;
+    private static final int MESSAGES = 20_000;
+
+    @Test
+    void sendsPerSecond() throws Exception {
+        System.out.printf("%-28s %12s %12s%n", "mode", "sends/s", "round trips");
+
+        SimulatedJdbc syncJdbc = new SimulatedJdbc();
+        // Đồng bộ (repo.save): mỗi send chờ một round trip insert trên request thread
+        double sync = run(m -> syncJdbc.batchUpdate("INSERT", List.of(m), 1, (ps, row) -> { }), () -> { });
+        System.out.printf("%-28s %12.0f %12d%n", "sync insert", sync, syncJdbc.roundTrips);
+
+        for (int batchSize : new int[]{50, 200}) {
+            SimulatedJdbc jdbc = new SimulatedJdbc();
+            MessageWriteBehind writeBehind = writer(jdbc, batchSize, 20);
+            writeBehind.start();
+            // Tính tới khi mọi tin đã xuống "DB", không chỉ tới lúc ack
+            double rate = run(writeBehind::submit, () -> {
+                while (writeBehind.getPersisted() < MESSAGES) LockSupport.parkNanos(100_000);
+            });
+            writeBehind.stop();
+            System.out.printf("%-28s %12.0f %12d%n", "write-behind batch=" + batchSize, rate, jdbc.roundTrips);
+        }
+    }
+
+    private static MessageWriteBehind writer(JdbcTemplate jdbc, int batchSize, long maxDelayMs) {
+        // pipeline kafka: không cập nhật inbox, chỉ đo đường ghi
+        return new MessageWriteBehind(jdbc, null, JsonMapper.builder().findAndAddModules().build(),
+                MESSAGES, batchSize, maxDelayMs, 1000, "build/bench-spool", "kafka");
+    }
+
+    private interface Send {
+        void send(Message m);
+    }
+
+    private static double run(Send send, Runnable drain) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(SENDERS);
+        CountDownLatch done = new CountDownLatch(MESSAGES);
+        long start = System.nanoTime();
+        for (int i = 0; i < MESSAGES; i++) {
+            int n = i;
+            pool.execute(() -> {
+                send.send(message(n));
+                done.countDown();
+            });
+        }
+        done.await();
+        drain.run();
+        long elapsed = System.nanoTime() - start;
+        pool.shutdown();
+        return MESSAGES / (elapsed / 1e9);
+    }
+
+    private static Message message(int n) {
+        Message m = new Message();
+        m.setConversationId("alice_bob");
+        m.setSenderId("alice");
+        m.setReceiverId("bob");
+        m.setContent("hello " + n);
+        m.setType("text");
+        m.prePersist();
+        return m;
+    }
+
+    private static class SimulatedJdbc extends JdbcTemplate {
+        volatile long roundTrips;
+
+        @Override
+        public <T> int[][] batchUpdate(String sql, Collection<T> batchArgs, int batchSize,
+                                       ParameterizedPreparedStatementSetter<T> pss) {
+            synchronized (this) {
+                roundTrips++;
+            }
+            LockSupport.parkNanos(ROUND_TRIP_NANOS + PER_ROW_NANOS * batchArgs.size());
+            int[] counts = new int[batchArgs.size()];
+            Arrays.fill(counts, 1);
+            return new int[][]{counts};
+        }
+    }
+}
@@ -11,16 +11,21 @@ CREATE TABLE IF NOT EXISTS users (
 CREATE TABLE IF NOT EXISTS conversations (
   id varchar PRIMARY KEY,
   is_group boolean DEFAULT false,
+  name varchar,
+  created_by varchar,
   created_at timestamptz DEFAULT now()
 );
 
 CREATE TABLE IF NOT EXISTS participants (
   conversation_id varchar REFERENCES conversations(id),
   user_id varchar REFERENCES users(id),
-  role varchar,
+  role varchar, -- owner, member
+  joined_at timestamptz DEFAULT now(),
   PRIMARY KEY(conversation_id, user_id)
 );
 
+CREATE INDEX IF NOT EXISTS idx_participants_user ON participants(user_id);
+
 -- ✅ messages (đã thêm receiver_id)
 CREATE TABLE IF NOT EXISTS messages (
   id varchar PRIMARY KEY,
@@ -43,11 +48,40 @@ CREATE TABLE blocked_users (
 
 CREATE INDEX idx_messages_conv_created ON messages(conversation_id, created_at);
 
--- message_status: per recipient
+-- Tìm kiếm full-text: cột nullable + trigger, DB đã có dữ liệu thì MessageSearchMigration
+-- thêm cột, backfill theo lô rồi build index CONCURRENTLY
+ALTER TABLE messages ADD COLUMN IF NOT EXISTS recalled boolean DEFAULT false;
+ALTER TABLE messages ADD COLUMN IF NOT EXISTS search_vector tsvector;
+CREATE OR REPLACE FUNCTION messages_search_vector() RETURNS trigger AS $$ BEGIN
+  NEW.search_vector := to_tsvector('simple',
+    CASE WHEN COALESCE(NEW.recalled, false) THEN '' ELSE COALESCE(NEW.content, '') END);
+  RETURN NEW;
+END $$ LANGUAGE plpgsql;
+CREATE TRIGGER trg_messages_search_vector BEFORE INSERT OR UPDATE OF content, recalled ON messages
+  FOR EACH ROW EXECUTE FUNCTION messages_search_vector();
+CREATE INDEX IF NOT EXISTS idx_messages_search_vector ON messages USING GIN (search_vector);
+
+-- chat.partitioning.enabled=true: messages thành bảng phân vùng RANGE (created_at) theo tháng
+-- (MessagePartitionService tự chuyển đổi và tạo trước partition), tương đương:
+--   CREATE TABLE messages (... , PRIMARY KEY (id, created_at)) PARTITION BY RANGE (created_at);
+--   CREATE TABLE messages_legacy ... FOR VALUES FROM (MINVALUE) TO ('<đầu tháng sau lần bật>');
+--   CREATE TABLE messages_p202611 PARTITION OF messages FOR VALUES FROM ('2026-11-01') TO ('2026-12-01');
+--   CREATE TABLE messages_default PARTITION OF messages DEFAULT;
+--   CREATE UNIQUE INDEX uk_messages_sender_temp_id ON messages(sender_id, client_temp_id, created_at);
+-- FK trỏ vào messages(id) từ bảng khác bị bỏ vì PK phải chứa created_at.
+
+-- message_status: mốc (high-water mark) theo từng người nhận trong hội thoại
+-- mọi tin có (created_at, id) <= (message_time, message_id) đã ở trạng thái status
 CREATE TABLE IF NOT EXISTS message_status (
   id serial PRIMARY KEY,
-  message_id varchar REFERENCES messages(id),
+  conversation_id varchar REFERENCES conversations(id),
+  -- không FK: mốc vẫn có nghĩa (so sánh theo (message_time, message_id)) khi chính tin đó bị xoá
+  message_id varchar,
   user_id varchar REFERENCES users(id),
-  status varchar, -- sent, delivered, read
-  updated_at timestamptz DEFAULT now()
+  status varchar, -- delivered, read
+  message_time timestamptz,
+  updated_at timestamptz DEFAULT now(),
+  UNIQUE(conversation_id, user_id, status)
 );
+-- DB tạo từ bản schema cũ: FK này làm DELETE tin đang là mốc (xoá một tin, purge hội thoại) lỗi
+ALTER TABLE message_status DROP CONSTRAINT IF EXISTS message_status_message_id_fkey;
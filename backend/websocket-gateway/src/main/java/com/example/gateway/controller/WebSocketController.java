@@ -1,22 +1,23 @@
 package com.example.gateway.controller;
 
-import com.example.chat.model.Message;
-import org.springframework.beans.factory.annotation.Autowired;
+import com.example.gateway.dto.ChatSendFrame;
+import com.example.gateway.service.SendBatcher;
 import org.springframework.messaging.handler.annotation.*;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
 
 @Controller
-public class WebsocketController {
+public class WebSocketController {
 
-    @Autowired
-    private SimpMessagingTemplate messagingTemplate;
+    private final SendBatcher sendBatcher;
+
+    public WebSocketController(SendBatcher sendBatcher) {
+        this.sendBatcher = sendBatcher;
+    }
 
     // client sends to /app/chat.send
     @MessageMapping("/chat.send")
-    public void sendMessage(@Payload Message message, @Header("simpSessionId") String sessionId) {
-        // In real: persist via Chat service (call REST endpoint) then broadcast
-        // For demo: broadcast directly
-        messagingTemplate.convertAndSend("/topic/conversation." + message.getConversationId(), message);
+    public void sendMessage(@Payload ChatSendFrame message, @Header("simpSessionId") String sessionId) {
+        // Persist via chat-service (gom batch) -> ack /user/queue/ack theo tempId -> broadcast /topic/conversation.{id}
+        sendBatcher.submit(message, sessionId);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,14 @@
+package com.example.gateway.dto;
+
+/**
+ * Frame client gửi lên /app/chat.send (xem send_message trong websocket-events.json).
+ */
+public record ChatSendFrame(
+        String tempId,
+        String conversationId,
+        String senderId,
+        String receiverId,
+        String type,
+        String content,
+        String attachmentUrl
+) {}
@@ -0,0 +1,90 @@
+package com.example.gateway.service;
+
+import com.example.gateway.dto.ChatSendFrame;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+
+/**
+ * Client tới chat-service: một HttpClient dùng chung (pool keep-alive, chạy trên virtual thread),
+ * mỗi lô frame là một POST /api/messages/batch, nhiều lô có thể bay song song.
+ */
+@Component
+public class ChatServiceClient {
+
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper;
+    private final URI batchUri;
+    private final Duration requestTimeout;
+
+    public ChatServiceClient(ObjectMapper objectMapper,
+                             @Value("${gateway.chat-service.url:http://localhost:8081}") String baseUrl,
+                             @Value("${gateway.chat-service.timeout-ms:5000}") long timeoutMs) {
+        this.objectMapper = objectMapper;
+        this.batchUri = URI.create(baseUrl + "/api/messages/batch");
+        this.requestTimeout = Duration.ofMillis(timeoutMs);
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(2))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+    }
+
+    /**
+     * @return kết quả theo đúng thứ tự frame: {tempId, success, message | error}
+     */
+    public CompletableFuture<List<JsonNode>> sendBatch(List<ChatSendFrame> frames) {
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(frames.stream().map(ChatServiceClient::toSendRequest).toList());
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        HttpRequest request = HttpRequest.newBuilder(batchUri)
+                .timeout(requestTimeout)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> {
+                    if (response.statusCode() != 200) {
+                        throw new IllegalStateException("chat-service returned " + response.statusCode());
+                    }
+                    try {
+                        return objectMapper.readValue(response.body(), new TypeReference<List<JsonNode>>() {});
+                    } catch (Exception e) {
+                        throw new IllegalStateException("Invalid batch response from chat-service", e);
+                    }
+                });
+    }
+
+    private static Map<String, Object> toSendRequest(ChatSendFrame frame) {
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("conversationId", frame.conversationId());
+        message.put("senderId", frame.senderId());
+        message.put("receiverId", frame.receiverId());
+        message.put("type", frame.type());
+        message.put("content", frame.content());
+        message.put("attachmentUrl", frame.attachmentUrl());
+
+        Map<String, Object> request = new LinkedHashMap<>();
+        request.put("tempId", frame.tempId());
+        request.put("message", message);
+        return request;
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.gateway.service;
+
+import com.example.gateway.dto.ChatSendFrame;
+import com.fasterxml.jackson.databind.JsonNode;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Gom các frame /app/chat.send trong một cửa sổ ngắn (window-ms) hoặc tới khi đủ max-size,
+ * chuyển cả lô sang chat-service rồi ack từng sender theo tempId và broadcast tin đã lưu.
+ */
+@Component
+public class SendBatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(SendBatcher.class);
+
+    private record Pending(ChatSendFrame frame, String sessionId) {}
+
+    private final ChatServiceClient chatServiceClient;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final long windowMs;
+    private final int maxSize;
+    private final int maxInFlight;
+    private final long shutdownTimeoutMs;
+    private final Semaphore inFlight;
+
+    private final ConcurrentLinkedQueue<Pending> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("send-batcher").factory());
+
+    public SendBatcher(ChatServiceClient chatServiceClient,
+                       SimpMessagingTemplate messagingTemplate,
+                       @Value("${gateway.batch.window-ms:10}") long windowMs,
+                       @Value("${gateway.batch.max-size:100}") int maxSize,
+                       @Value("${gateway.batch.max-in-flight:16}") int maxInFlight,
+                       @Value("${gateway.batch.shutdown-timeout-ms:5000}") long shutdownTimeoutMs) {
+        this.chatServiceClient = chatServiceClient;
+        this.messagingTemplate = messagingTemplate;
+        this.windowMs = windowMs;
+        this.maxSize = maxSize;
+        this.maxInFlight = maxInFlight;
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    @PostConstruct
+    public void start() {
+        logger.info("Send batcher: window={}ms, maxSize={}, maxInFlight={}",
+                windowMs, maxSize, inFlight.availablePermits());
+    }
+
+    @PreDestroy
+    public void stop() {
+        long deadline = System.currentTimeMillis() + shutdownTimeoutMs;
+        // Flush đã hẹn vẫn chạy sau shutdown(); chờ chúng rồi gửi nốt phần còn lại
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(shutdownTimeoutMs, TimeUnit.MILLISECONDS);
+            flush();
+            // Lấy hết permit = mọi lô đang gửi đã nhận kết quả và ack xong
+            long left = Math.max(0, deadline - System.currentTimeMillis());
+            if (!inFlight.tryAcquire(maxInFlight, left, TimeUnit.MILLISECONDS)) {
+                logger.warn("Send batcher stopped with {} batches still in flight",
+                        maxInFlight - inFlight.availablePermits());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void submit(ChatSendFrame frame, String sessionId) {
+        queue.add(new Pending(frame, sessionId));
+        if (queued.incrementAndGet() >= maxSize) {
+            scheduler.execute(this::flush);
+        } else if (flushScheduled.compareAndSet(false, true)) {
+            // Frame đầu tiên của cửa sổ: hẹn flush sau windowMs
+            scheduler.schedule(this::flush, windowMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flush() {
+        flushScheduled.set(false);
+        while (true) {
+            List<Pending> batch = new ArrayList<>(maxSize);
+            Pending p;
+            while (batch.size() < maxSize && (p = queue.poll()) != null) {
+                batch.add(p);
+            }
+            if (batch.isEmpty()) return;
+            queued.addAndGet(-batch.size());
+            forward(batch);
+            if (batch.size() < maxSize) return;
+        }
+    }
+
+    private void forward(List<Pending> batch) {
+        // Giới hạn số lô đang chờ chat-service: khi đầy thì thread flush chờ (backpressure)
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            batch.forEach(p -> ackError(p, "Gateway shutting down"));
+            return;
+        }
+
+        chatServiceClient.sendBatch(batch.stream().map(Pending::frame).toList())
+                .whenComplete((results, ex) -> {
+                    inFlight.release();
+                    if (ex != null) {
+                        logger.error("Forward batch of {} failed: {}", batch.size(), ex.toString());
+                        batch.forEach(p -> ackError(p, "Chat service unavailable"));
+                        return;
+                    }
+                    for (int i = 0; i < batch.size(); i++) {
+                        JsonNode result = i < results.size() ? results.get(i) : null;
+                        handleResult(batch.get(i), result);
+                    }
+                });
+    }
+
+    private void handleResult(Pending pending, JsonNode result) {
+        if (result == null || !result.path("success").asBoolean(false)) {
+            ackError(pending, result != null ? result.path("error").asText("Send failed") : "Missing result");
+            return;
+        }
+
+        JsonNode message = result.get("message");
+        // message_created: {tempId, message}
+        Map<String, Object> ack = new LinkedHashMap<>();
+        ack.put("tempId", result.path("tempId").asText(pending.frame().tempId()));
+        ack.put("message", message);
+        sendToSession(pending.sessionId(), ack);
+
+        messagingTemplate.convertAndSend("/topic/conversation." + pending.frame().conversationId(), message);
+    }
+
+    private void ackError(Pending pending, String error) {
+        Map<String, Object> ack = new LinkedHashMap<>();
+        ack.put("tempId", pending.frame().tempId());
+        ack.put("error", error);
+        sendToSession(pending.sessionId(), ack);
+    }
+
+    private void sendToSession(String sessionId, Object payload) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setSessionId(sessionId);
+        headers.setLeaveMutable(true);
+        messagingTemplate.convertAndSendToUser(sessionId, "/queue/ack", payload, headers.getMessageHeaders());
+    }
+}
@@ -3,7 +3,7 @@ package com.example.websocket_gateway;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
-@SpringBootApplication
+@SpringBootApplication(scanBasePackages = {"com.example.websocket_gateway", "com.example.gateway"})
 public class WebsocketGatewayApplication {
 
 	public static void main(String[] args) {